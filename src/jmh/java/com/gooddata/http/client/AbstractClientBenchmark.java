@@ -0,0 +1,76 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/**
+ * Shared state of benchmarks running {@link GoodDataHttpClient} against {@link GoodDataStubServer}.
+ */
+abstract class AbstractClientBenchmark {
+
+    /** Enough connections for the highest benchmarked number of threads. */
+    private static final int MAX_CONNECTIONS = 512;
+
+    private GoodDataStubServer server;
+    private CloseableHttpClient httpClient;
+    private GoodDataHttpClient client;
+    private HttpHost host;
+
+    void start(final int responseSize, final boolean streamResponses) throws IOException {
+        server = new GoodDataStubServer(responseSize);
+        host = server.getHost();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(MAX_CONNECTIONS)
+                        .setMaxConnPerRoute(MAX_CONNECTIONS)
+                        .build())
+                .build();
+        client = GoodDataHttpClientBuilder.create()
+                .setHttpClient(httpClient)
+                .setAuthHost(host)
+                .setSstStrategy(new SimpleSSTRetrievalStrategy(GoodDataStubServer.SST))
+                .setStreamResponses(streamResponses)
+                .build();
+        // obtain TT, so that the measurement starts authenticated
+        get(null);
+    }
+
+    GoodDataStubServer getServer() {
+        return server;
+    }
+
+    /**
+     * Gets the stub resource, reading the whole response body.
+     */
+    int get(final Blackhole blackhole) throws IOException {
+        try (ClassicHttpResponse response = client.execute(host, new HttpGet(GoodDataStubServer.RESOURCE_PATH),
+                (HttpContext) null)) {
+            final byte[] body = EntityUtils.toByteArray(response.getEntity());
+            if (blackhole != null) {
+                blackhole.consume(body);
+            }
+            return response.getCode();
+        }
+    }
+
+    @TearDown
+    public void stop() throws IOException {
+        httpClient.close();
+        server.close();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticated GET of a 1 KiB body served by an in-memory {@link org.apache.hc.client5.http.classic.HttpClient},
+ * so that only the work of {@link GoodDataHttpClient} itself is measured. {@link ExecuteBenchmark} includes
+ * the connection and the stub server running in the same JVM, which hide the client's own allocations.
+ * Run with {@code -prof gc} to see the allocation per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ClientOverheadBenchmark {
+
+    private static final HttpHost HOST = new HttpHost("http", "localhost", 80);
+
+    private GoodDataHttpClient client;
+
+    @Setup
+    public void setUp() {
+        client = GoodDataHttpClientBuilder.create()
+                .setHttpClient(new InMemoryHttpClient(1024))
+                .setAuthHost(HOST)
+                .setSstStrategy(new SimpleSSTRetrievalStrategy(GoodDataStubServer.SST))
+                .build();
+    }
+
+    @Benchmark
+    public int get(final Blackhole blackhole) throws IOException {
+        try (ClassicHttpResponse response = client.execute(HOST, new HttpGet(GoodDataStubServer.RESOURCE_PATH),
+                (HttpContext) null)) {
+            blackhole.consume(EntityUtils.toByteArray(response.getEntity()));
+            return response.getCode();
+        }
+    }
+
+    /**
+     * Issues TT for any SST and serves the body to any request carrying it.
+     */
+    private static final class InMemoryHttpClient extends CloseableHttpClient {
+
+        private final byte[] body;
+
+        private InMemoryHttpClient(final int responseSize) {
+            body = new byte[responseSize];
+            Arrays.fill(body, (byte) 'x');
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute(final HttpHost target, final ClassicHttpRequest request,
+                                                  final HttpContext context) {
+            final BasicClassicHttpResponse response;
+            if (GoodDataHttpClient.TOKEN_URL.equals(request.getRequestUri())) {
+                response = new BasicClassicHttpResponse(200);
+                response.addHeader(GoodDataHttpClient.TT_HEADER, "TT");
+            } else if (request.containsHeader(GoodDataHttpClient.TT_HEADER)) {
+                response = new BasicClassicHttpResponse(200);
+                response.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+            } else {
+                response = new BasicClassicHttpResponse(401);
+                response.addHeader("WWW-Authenticate", "GoodData realm=\"GoodData API\" cookie=GDCAuthTT");
+            }
+            return CloseableHttpResponse.adapt(response);
+        }
+
+        @Override
+        public void close(final CloseMode closeMode) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
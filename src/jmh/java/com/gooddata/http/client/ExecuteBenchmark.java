@@ -0,0 +1,51 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticated GET by a single thread, scaling the response size, with buffered and streamed responses.
+ * Run with {@code -prof gc} to see the allocation rate per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExecuteBenchmark extends AbstractClientBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    private int responseSize;
+
+    @Param({"false", "true"})
+    private boolean streamResponses;
+
+    @Setup
+    public void setUp() throws IOException {
+        start(responseSize, streamResponses);
+    }
+
+    @Benchmark
+    public int get(final Blackhole blackhole) throws IOException {
+        return super.get(blackhole);
+    }
+}
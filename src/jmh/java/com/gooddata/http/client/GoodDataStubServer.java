@@ -0,0 +1,108 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.core5.http.HttpHost;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stub of the GoodData API for benchmarks. Serves {@value #RESOURCE_PATH} authenticated by TT and issues
+ * TT for SST {@value #SST}. The valid TT can be rotated to simulate TT expiry.
+ */
+final class GoodDataStubServer implements AutoCloseable {
+
+    static final String SST = "SST";
+    static final String RESOURCE_PATH = "/gdc/projects";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] body;
+    private final AtomicLong ttGeneration = new AtomicLong();
+    private volatile String validTt = "TT0";
+
+    /**
+     * Starts the server on a random local port.
+     * @param responseSize size of the resource body
+     */
+    GoodDataStubServer(final int responseSize) throws IOException {
+        body = new byte[responseSize];
+        Arrays.fill(body, (byte) 'x');
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "stub-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(GoodDataHttpClient.TOKEN_URL, this::token);
+        server.createContext(RESOURCE_PATH, this::resource);
+        server.start();
+    }
+
+    HttpHost getHost() {
+        return new HttpHost("http", "localhost", server.getAddress().getPort());
+    }
+
+    /**
+     * Invalidates the current TT, following requests with it are challenged.
+     */
+    void expireTt() {
+        validTt = "TT" + ttGeneration.incrementAndGet();
+    }
+
+    private void token(final HttpExchange exchange) throws IOException {
+        drain(exchange);
+        if (SST.equals(exchange.getRequestHeaders().getFirst(GoodDataHttpClient.SST_HEADER))) {
+            exchange.getResponseHeaders().add(GoodDataHttpClient.TT_HEADER, validTt);
+            exchange.sendResponseHeaders(200, -1);
+        } else {
+            challenge(exchange, "GDCAuthSST");
+        }
+        exchange.close();
+    }
+
+    private void resource(final HttpExchange exchange) throws IOException {
+        drain(exchange);
+        if (validTt.equals(exchange.getRequestHeaders().getFirst(GoodDataHttpClient.TT_HEADER))) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } else {
+            challenge(exchange, "GDCAuthTT");
+        }
+        exchange.close();
+    }
+
+    private static void challenge(final HttpExchange exchange, final String cookie) throws IOException {
+        exchange.getResponseHeaders().add("WWW-Authenticate", "GoodData realm=\"GoodData API\" cookie=" + cookie);
+        exchange.sendResponseHeaders(401, -1);
+    }
+
+    private static void drain(final HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
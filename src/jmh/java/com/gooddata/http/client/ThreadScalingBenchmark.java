@@ -0,0 +1,66 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticated GET of a small buffered response by 1 to 256 threads sharing one client, showing contention
+ * on the request path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ThreadScalingBenchmark extends AbstractClientBenchmark {
+
+    private static final int RESPONSE_SIZE = 1024;
+
+    @Setup
+    public void setUp() throws IOException {
+        start(RESPONSE_SIZE, false);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int threads001(final Blackhole blackhole) throws IOException {
+        return get(blackhole);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int threads016(final Blackhole blackhole) throws IOException {
+        return get(blackhole);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int threads064(final Blackhole blackhole) throws IOException {
+        return get(blackhole);
+    }
+
+    @Benchmark
+    @Threads(256)
+    public int threads256(final Blackhole blackhole) throws IOException {
+        return get(blackhole);
+    }
+}
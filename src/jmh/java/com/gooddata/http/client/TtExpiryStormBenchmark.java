@@ -0,0 +1,58 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many threads hitting TT expiry at once. The stub server expires TT every {@code requestsPerTt} requests, so all
+ * in-flight requests are challenged and must share a single TT refresh before being retried.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(64)
+@Fork(1)
+public class TtExpiryStormBenchmark extends AbstractClientBenchmark {
+
+    private static final int RESPONSE_SIZE = 1024;
+
+    @Param({"100", "10000"})
+    private long requestsPerTt;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    @Setup
+    public void setUp() throws IOException {
+        start(RESPONSE_SIZE, false);
+    }
+
+    @Benchmark
+    public int get(final Blackhole blackhole) throws IOException {
+        if (requests.incrementAndGet() % requestsPerTt == 0) {
+            getServer().expireTt();
+        }
+        return super.get(blackhole);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.http.HttpHost;
+import java.util.concurrent.CompletableFuture;
+/**
+ * Non-blocking counterpart of {@link SSTRetrievalStrategy} used by {@link GoodDataHttpAsyncClient}.
+ * Implementations must not block the calling thread, which may be an I/O reactor thread.
+ */
+public interface AsyncSSTRetrievalStrategy {
+
+    /**
+     * Obtains SST using given HTTP client and host.
+     * @param httpClient started async HTTP client
+     * @param httpHost HTTP host
+     * @return future completed with SST or failed with {@link GoodDataAuthException}
+     */
+    CompletableFuture<String> obtainSst(final CloseableHttpAsyncClient httpClient, final HttpHost httpHost);
+
+    /**
+     * Obtains SST and possibly also TT using given HTTP client and host.
+     * By default completed with just SST obtained by {@link #obtainSst(CloseableHttpAsyncClient, HttpHost)}.
+     * @param httpClient started async HTTP client
+     * @param httpHost HTTP host
+     * @return future completed with tokens or failed with {@link GoodDataAuthException}
+     * @see SSTRetrievalStrategy#obtainTokens
+     */
+    default CompletableFuture<TokenBundle> obtainTokens(final CloseableHttpAsyncClient httpClient, final HttpHost httpHost) {
+        return obtainSst(httpClient, httpHost).thenApply(TokenBundle::new);
+    }
+
+    /**
+     * Performs the logout using given HTTP client, host and logout parameters.
+     *
+     * @param httpClient started async HTTP client
+     * @param httpHost HTTP host
+     * @param url url for logout
+     * @param sst SST
+     * @param tt TT
+     * @return future completed when logged out or failed with {@link GoodDataLogoutException}
+     */
+    CompletableFuture<Void> logout(final CloseableHttpAsyncClient httpClient, final HttpHost httpHost, final String url,
+                                   final String sst, final String tt);
+}
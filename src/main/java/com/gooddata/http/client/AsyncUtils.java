@@ -0,0 +1,51 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+/**
+ * Internal helpers bridging async HTTP client callbacks and {@link CompletableFuture}.
+ */
+class AsyncUtils {
+    private AsyncUtils() {}
+
+    /**
+     * Executes the request, the returned future is completed from the I/O reactor thread.
+     */
+    static CompletableFuture<SimpleHttpResponse> execute(final CloseableHttpAsyncClient httpClient,
+                                                         final SimpleHttpRequest request, final HttpContext context) {
+        final CompletableFuture<SimpleHttpResponse> result = new CompletableFuture<>();
+        httpClient.execute(request, context, new FutureCallback<SimpleHttpResponse>() {
+            @Override
+            public void completed(final SimpleHttpResponse response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void failed(final Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Unwraps the failure of a dependent stage to the original exception.
+     */
+    static Throwable unwrap(final Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+}
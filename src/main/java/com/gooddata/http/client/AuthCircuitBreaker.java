@@ -0,0 +1,149 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Circuit breaker around SST and TT retrieval of a principal.
+ * <p>
+ * After the given number of consecutive failures the circuit opens and token retrievals fail fast with
+ * {@link GoodDataAuthCircuitOpenException} carrying the last failure. Once the backoff elapses, a single retrieval
+ * is let through; its success closes the circuit, its failure opens it again for twice as long, up to the max backoff.
+ * Backoffs are randomized by up to a half, so that clients failing together don't retry together.
+ */
+final class AuthCircuitBreaker {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final int failureThreshold;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final Consumer<AuthCircuitState> stateListener;
+    private final Lock lock = new ReentrantLock();
+    private volatile AuthCircuitState state = AuthCircuitState.CLOSED;
+    private int failures;
+    private long backoffNanos;
+    private long openUntil;
+    private boolean probing;
+    private Throwable lastFailure;
+
+    /**
+     * Construct object.
+     * @param failureThreshold number of consecutive failures opening the circuit, 0 disables the breaker
+     * @param initialBackoff how long the circuit stays open for the first time
+     * @param maxBackoff max time the circuit stays open
+     * @param stateListener notified about state changes
+     */
+    AuthCircuitBreaker(final int failureThreshold, final Duration initialBackoff, final Duration maxBackoff,
+                       final Consumer<AuthCircuitState> stateListener) {
+        isTrue(failureThreshold >= 0, "failure threshold can't be negative");
+        this.failureThreshold = failureThreshold;
+        this.initialBackoffNanos = notNull(initialBackoff, "initial backoff can't be null").toNanos();
+        this.maxBackoffNanos = Math.max(notNull(maxBackoff, "max backoff can't be null").toNanos(), initialBackoffNanos);
+        this.stateListener = notNull(stateListener, "state listener can't be null");
+    }
+
+    AuthCircuitState getState() {
+        return state;
+    }
+
+    /**
+     * Checks whether a token retrieval may be attempted.
+     * @throws GoodDataAuthCircuitOpenException when the circuit is open or another retrieval is probing it
+     */
+    void acquire() {
+        if (state == AuthCircuitState.CLOSED) {
+            return;
+        }
+        lock.lock();
+        try {
+            final long now = System.nanoTime();
+            if (state == AuthCircuitState.OPEN && now - openUntil >= 0) {
+                changeState(AuthCircuitState.HALF_OPEN);
+            }
+            if (state == AuthCircuitState.HALF_OPEN && !probing) {
+                probing = true;
+                return;
+            }
+            if (state != AuthCircuitState.CLOSED) {
+                throw new GoodDataAuthCircuitOpenException(Duration.ofNanos(Math.max(openUntil - now, 0)),
+                        lastFailure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records successful token retrieval.
+     */
+    void succeeded() {
+        lock.lock();
+        try {
+            failures = 0;
+            backoffNanos = 0;
+            probing = false;
+            lastFailure = null;
+            changeState(AuthCircuitState.CLOSED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records token retrieval which ended without an outcome, so that another one may probe the circuit.
+     */
+    void abandoned() {
+        lock.lock();
+        try {
+            probing = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records failed token retrieval.
+     */
+    void failed(final Throwable failure) {
+        if (failureThreshold == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            lastFailure = failure;
+            failures++;
+            if (state == AuthCircuitState.HALF_OPEN || failures >= failureThreshold) {
+                backoffNanos = backoffNanos == 0 ? initialBackoffNanos : Math.min(backoffNanos * 2, maxBackoffNanos);
+                final long jittered = backoffNanos / 2 + ThreadLocalRandom.current().nextLong(backoffNanos / 2 + 1);
+                openUntil = System.nanoTime() + jittered;
+                probing = false;
+                log.warn("Authentication failed {} times, not retried for {} ms", failures,
+                        Duration.ofNanos(jittered).toMillis(), failure);
+                changeState(AuthCircuitState.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void changeState(final AuthCircuitState newState) {
+        if (state != newState) {
+            state = newState;
+            stateListener.accept(newState);
+        }
+    }
+}
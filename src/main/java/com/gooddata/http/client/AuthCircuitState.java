@@ -0,0 +1,18 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+/**
+ * State of the circuit breaker guarding SST and TT retrieval of a principal.
+ */
+public enum AuthCircuitState {
+    /** Tokens are obtained normally. */
+    CLOSED,
+    /** Recent token retrievals failed, new ones fail fast until the backoff elapses. */
+    OPEN,
+    /** The backoff elapsed, a single retrieval probes whether the authentication works again. */
+    HALF_OPEN
+}
@@ -0,0 +1,75 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.message.BasicHeader;
+
+import java.time.Duration;
+
+/**
+ * Immutable snapshot of the SST and TT tokens currently used by {@link GoodDataHttpClient}.
+ * Requests read the snapshot without locking, token refresh and logout replace it as a whole.
+ * <p>
+ * Every installed snapshot gets a new generation, so a request failing with a token which has already been
+ * replaced can be told apart from a request failing with the current one.
+ */
+final class AuthTokens {
+
+    static final AuthTokens EMPTY = new AuthTokens(null, null);
+
+    private final String sst;
+    private final String tt;
+    private final Duration ttLifetime;
+    private final long generation;
+    private final Header ttHeader;
+
+    AuthTokens(final String sst, final String tt) {
+        this(sst, tt, null, 0);
+    }
+
+    /**
+     * @param ttLifetime TT lifetime reported when the TT was obtained, null when unknown
+     */
+    AuthTokens(final String sst, final String tt, final Duration ttLifetime) {
+        this(sst, tt, ttLifetime, 0);
+    }
+
+    private AuthTokens(final String sst, final String tt, final Duration ttLifetime, final long generation) {
+        this.sst = sst;
+        this.tt = tt;
+        this.ttLifetime = ttLifetime;
+        this.generation = generation;
+        this.ttHeader = tt != null ? new BasicHeader(GoodDataHttpClient.TT_HEADER, tt) : null;
+    }
+
+    String getSst() {
+        return sst;
+    }
+
+    String getTt() {
+        return tt;
+    }
+
+    /**
+     * @return TT header shared by all requests of this generation, null when there's no TT
+     */
+    Header getTtHeader() {
+        return ttHeader;
+    }
+
+    Duration getTtLifetime() {
+        return ttLifetime;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    AuthTokens withGeneration(final long generation) {
+        return new AuthTokens(sst, tt, ttLifetime, generation);
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+import org.apache.hc.client5.http.config.Configurable;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.concurrent.CancellableDependency;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ProtocolException;
+import org.apache.hc.core5.http.ProtocolVersion;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.message.HeaderGroup;
+import org.apache.hc.core5.net.URIAuthority;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Request sent instead of the caller's one, adding TT and other headers of the client without modifying
+ * the caller's request. The caller's request may thus be reused or sent by many threads at once.
+ * <p>
+ * Headers, entity, scheme and authority set on this request are kept by it, the caller's request is only read.
+ * The path can't be changed; the underlying {@link org.apache.hc.client5.http.classic.HttpClient} only fills
+ * the missing scheme and authority and sends a copy of the request. Cancelling the caller's request aborts
+ * this one as well, and the caller's {@link RequestConfig} applies to it.
+ */
+final class AuthenticatedRequest implements ClassicHttpRequest, CancellableDependency, Configurable {
+
+    private static final Header[] NO_HEADERS = new Header[0];
+
+    private final ClassicHttpRequest original;
+    private Header[] added;
+    private int addedCount;
+    /** All headers once any of the caller's ones were removed or replaced, the caller's request is ignored then. */
+    private HeaderGroup replaced;
+    private HttpEntity entity;
+    private boolean entitySet;
+    private String scheme;
+    private URIAuthority authority;
+
+    /**
+     * @param original caller's request
+     * @param tt TT header to add, null to add none
+     */
+    AuthenticatedRequest(final ClassicHttpRequest original, final Header tt) {
+        this.original = notNull(original, "request can't be null");
+        this.added = tt != null ? new Header[] {tt} : NO_HEADERS;
+        this.addedCount = added.length;
+        if (tt != null && original.containsHeader(tt.getName())) {
+            // don't send the TT the caller set by itself next to the current one
+            replaceHeaders();
+            replaced.removeHeaders(tt.getName());
+            replaced.addHeader(tt);
+        }
+    }
+
+    /**
+     * Creates a request of the same caller's request with the same added headers and entity, but different TT.
+     * @param tt TT header, replaces the current one, null to keep the headers as they are
+     */
+    AuthenticatedRequest withTt(final Header tt) {
+        final AuthenticatedRequest copy = new AuthenticatedRequest(original, tt);
+        if (replaced != null) {
+            copy.setHeaders(replaced.getHeaders());
+            if (tt != null) {
+                copy.removeHeaders(tt.getName());
+                copy.addHeader(tt);
+            }
+        } else {
+            for (int i = 0; i < addedCount; i++) {
+                if (tt == null || !added[i].getName().equalsIgnoreCase(tt.getName())) {
+                    copy.addHeader(added[i]);
+                }
+            }
+        }
+        if (entitySet) {
+            copy.setEntity(entity);
+        }
+        copy.scheme = scheme;
+        copy.authority = authority;
+        return copy;
+    }
+
+    ClassicHttpRequest getOriginal() {
+        return original;
+    }
+
+    @Override
+    public HttpEntity getEntity() {
+        return entitySet ? entity : original.getEntity();
+    }
+
+    @Override
+    public void setEntity(final HttpEntity entity) {
+        this.entity = entity;
+        this.entitySet = true;
+    }
+
+    @Override
+    public String getMethod() {
+        return original.getMethod();
+    }
+
+    @Override
+    public String getPath() {
+        return original.getPath();
+    }
+
+    @Override
+    public String getScheme() {
+        return scheme != null ? scheme : original.getScheme();
+    }
+
+    @Override
+    public URIAuthority getAuthority() {
+        return authority != null ? authority : original.getAuthority();
+    }
+
+    @Override
+    public String getRequestUri() {
+        return original.getRequestUri();
+    }
+
+    @Override
+    public URI getUri() throws URISyntaxException {
+        if (scheme == null && authority == null) {
+            return original.getUri();
+        }
+        return new BasicHttpRequest(getMethod(), getScheme(), getAuthority(), getPath()).getUri();
+    }
+
+    @Override
+    public ProtocolVersion getVersion() {
+        return original.getVersion();
+    }
+
+    @Override
+    public void setPath(final String path) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setScheme(final String scheme) {
+        this.scheme = scheme;
+    }
+
+    @Override
+    public void setAuthority(final URIAuthority authority) {
+        this.authority = authority;
+    }
+
+    @Override
+    public void setUri(final URI requestUri) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setVersion(final ProtocolVersion version) {
+        throw unsupported();
+    }
+
+    @Override
+    public void addHeader(final Header header) {
+        if (replaced != null) {
+            replaced.addHeader(header);
+            return;
+        }
+        if (addedCount == added.length) {
+            added = Arrays.copyOf(added, Math.max(2, addedCount * 2));
+        }
+        added[addedCount++] = header;
+    }
+
+    @Override
+    public void addHeader(final String name, final Object value) {
+        addHeader(new BasicHeader(name, value));
+    }
+
+    @Override
+    public void setHeader(final Header header) {
+        replaceHeaders();
+        replaced.setHeader(header);
+    }
+
+    @Override
+    public void setHeader(final String name, final Object value) {
+        setHeader(new BasicHeader(name, value));
+    }
+
+    @Override
+    public void setHeaders(final Header... headers) {
+        replaceHeaders();
+        replaced.setHeaders(headers);
+    }
+
+    @Override
+    public boolean removeHeader(final Header header) {
+        replaceHeaders();
+        return replaced.removeHeader(header);
+    }
+
+    @Override
+    public boolean removeHeaders(final String name) {
+        replaceHeaders();
+        return replaced.removeHeaders(name);
+    }
+
+    @Override
+    public boolean containsHeader(final String name) {
+        if (replaced != null) {
+            return replaced.containsHeader(name);
+        }
+        return original.containsHeader(name) || indexOfAdded(name, 0) >= 0;
+    }
+
+    @Override
+    public int countHeaders(final String name) {
+        if (replaced != null) {
+            return replaced.countHeaders(name);
+        }
+        int count = original.countHeaders(name);
+        for (int i = indexOfAdded(name, 0); i >= 0; i = indexOfAdded(name, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public Header getFirstHeader(final String name) {
+        if (replaced != null) {
+            return replaced.getFirstHeader(name);
+        }
+        final Header header = original.getFirstHeader(name);
+        if (header != null) {
+            return header;
+        }
+        final int index = indexOfAdded(name, 0);
+        return index >= 0 ? added[index] : null;
+    }
+
+    @Override
+    public Header getHeader(final String name) throws ProtocolException {
+        if (replaced != null) {
+            return replaced.getHeader(name);
+        }
+        if (countHeaders(name) > 1) {
+            throw new ProtocolException("multiple '%s' headers found", name);
+        }
+        return getFirstHeader(name);
+    }
+
+    @Override
+    public Header[] getHeaders() {
+        if (replaced != null) {
+            return replaced.getHeaders();
+        }
+        final Header[] headers = original.getHeaders();
+        if (addedCount == 0) {
+            return headers;
+        }
+        final Header[] all = Arrays.copyOf(headers, headers.length + addedCount);
+        System.arraycopy(added, 0, all, headers.length, addedCount);
+        return all;
+    }
+
+    @Override
+    public Header[] getHeaders(final String name) {
+        if (replaced != null) {
+            return replaced.getHeaders(name);
+        }
+        final Header[] headers = original.getHeaders(name);
+        final int first = indexOfAdded(name, 0);
+        if (first < 0) {
+            return headers;
+        }
+        Header[] all = Arrays.copyOf(headers, headers.length + addedCount);
+        int count = headers.length;
+        for (int i = first; i >= 0; i = indexOfAdded(name, i + 1)) {
+            all[count++] = added[i];
+        }
+        return count == all.length ? all : Arrays.copyOf(all, count);
+    }
+
+    @Override
+    public Header getLastHeader(final String name) {
+        if (replaced != null) {
+            return replaced.getLastHeader(name);
+        }
+        for (int i = addedCount - 1; i >= 0; i--) {
+            if (added[i].getName().equalsIgnoreCase(name)) {
+                return added[i];
+            }
+        }
+        return original.getLastHeader(name);
+    }
+
+    @Override
+    public Iterator<Header> headerIterator() {
+        return Arrays.asList(getHeaders()).iterator();
+    }
+
+    @Override
+    public Iterator<Header> headerIterator(final String name) {
+        return Arrays.asList(getHeaders(name)).iterator();
+    }
+
+    @Override
+    public void setDependency(final Cancellable cancellable) {
+        if (original instanceof CancellableDependency) {
+            ((CancellableDependency) original).setDependency(cancellable);
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return original instanceof CancellableDependency && ((CancellableDependency) original).isCancelled();
+    }
+
+    @Override
+    public boolean cancel() {
+        return original instanceof CancellableDependency && ((CancellableDependency) original).cancel();
+    }
+
+    @Override
+    public RequestConfig getConfig() {
+        return original instanceof Configurable ? ((Configurable) original).getConfig() : null;
+    }
+
+    @Override
+    public String toString() {
+        return getMethod() + " " + getRequestUri();
+    }
+
+    private int indexOfAdded(final String name, final int from) {
+        for (int i = from; i < addedCount; i++) {
+            if (added[i].getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Takes over all headers, so that the caller's ones can be removed or replaced without modifying its request.
+     */
+    private void replaceHeaders() {
+        if (replaced == null) {
+            final HeaderGroup headers = new HeaderGroup();
+            headers.setHeaders(getHeaders());
+            replaced = headers;
+        }
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Path of the caller's request can't be changed");
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of heap or direct byte buffers in size classes, backing bodies buffered in memory (see {@link PooledBuffer}).
+ * <p>
+ * A body is stored in chunks of growing size classes, so that a small body takes a small buffer and no buffer is
+ * larger than the largest class, below the humongous object threshold of G1. Buffers are returned to the pool when
+ * the body is released. The pool never allocates more buffers than its budget; a body which doesn't fit is spilled
+ * to a temporary file instead. Bodies which are never released are detected once garbage collected, their buffers
+ * are returned to the pool then and the leak is reported.
+ */
+final class BufferPool {
+
+    /** Sizes of the pooled buffers, a body takes one buffer of each class and then the largest ones. */
+    static final int[] SIZE_CLASSES = {4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024};
+
+    static final Cleaner CLEANER = Cleaner.create();
+
+    private static final Logger log = LoggerFactory.getLogger(BufferPool.class);
+
+    private final long maxBytes;
+    private final boolean direct;
+    private final Runnable leakListener;
+    private final Queue<ByteBuffer>[] free;
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong freeBytes = new AtomicLong();
+
+    /**
+     * Construct object.
+     * @param maxBytes max size of all buffers allocated by the pool
+     * @param direct whether to allocate direct buffers instead of heap ones
+     * @param leakListener called when a body was garbage collected without being released
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    BufferPool(final long maxBytes, final boolean direct, final Runnable leakListener) {
+        isTrue(maxBytes > 0, "pool size must be positive");
+        this.maxBytes = maxBytes;
+        this.direct = direct;
+        this.leakListener = notNull(leakListener, "leak listener can't be null");
+        this.free = new Queue[SIZE_CLASSES.length];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return size of all buffers allocated by the pool, both free and leased
+     */
+    long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return size of the buffers leased by bodies which have not been released yet
+     */
+    long getLeasedBytes() {
+        return allocatedBytes.get() - freeBytes.get();
+    }
+
+    /**
+     * @param sizeClass index of the size class
+     * @return empty buffer of the size class or null when the budget is exhausted
+     */
+    ByteBuffer acquire(final int sizeClass) {
+        final ByteBuffer pooled = free[sizeClass].poll();
+        if (pooled != null) {
+            freeBytes.addAndGet(-pooled.capacity());
+            pooled.clear();
+            return pooled;
+        }
+        final int size = SIZE_CLASSES[sizeClass];
+        if (!reserve(size)) {
+            trim(size);
+            if (!reserve(size)) {
+                return null;
+            }
+        }
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    /**
+     * Returns a buffer acquired from this pool.
+     */
+    void release(final ByteBuffer buffer) {
+        freeBytes.addAndGet(buffer.capacity());
+        free[sizeClass(buffer.capacity())].offer(buffer);
+    }
+
+    /**
+     * Reports a body garbage collected without being released.
+     */
+    void leaked(final long bytes) {
+        log.warn("Buffered body of {} bytes was not released, close the responses returned by the client", bytes);
+        leakListener.run();
+    }
+
+    private boolean reserve(final int size) {
+        long allocated;
+        do {
+            allocated = allocatedBytes.get();
+            if (allocated + size > maxBytes) {
+                return false;
+            }
+        } while (!allocatedBytes.compareAndSet(allocated, allocated + size));
+        return true;
+    }
+
+    /**
+     * Drops free buffers, so that the budget they take can be used by another size class.
+     */
+    private void trim(final int size) {
+        long trimmed = 0;
+        for (int i = free.length - 1; i >= 0 && trimmed < size; i--) {
+            ByteBuffer buffer;
+            while (trimmed < size && (buffer = free[i].poll()) != null) {
+                freeBytes.addAndGet(-buffer.capacity());
+                allocatedBytes.addAndGet(-buffer.capacity());
+                trimmed += buffer.capacity();
+            }
+        }
+    }
+
+    private static int sizeClass(final int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (SIZE_CLASSES[i] == capacity) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Buffer of " + capacity + " bytes doesn't come from the pool");
+    }
+}
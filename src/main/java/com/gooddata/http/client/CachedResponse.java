@@ -0,0 +1,224 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpMessage;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Immutable copy of a GET response kept by {@link ResponseCache}, together with its validators and freshness.
+ * Also shares a single response among coalesced requests (see {@link RequestCoalescer}).
+ */
+final class CachedResponse {
+
+    /** Approximate memory overhead of an entry besides its body and headers. */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final int code;
+    private final String reasonPhrase;
+    private final Header[] headers;
+    private final byte[] body;
+    private final String contentType;
+    private final String contentEncoding;
+    private final long storedAt;
+    private final long maxAgeNanos;
+    private final long staleWhileRevalidateNanos;
+    private final AtomicBoolean revalidating = new AtomicBoolean();
+
+    private CachedResponse(final int code, final String reasonPhrase, final Header[] headers, final byte[] body,
+                           final String contentType, final String contentEncoding) {
+        this.code = code;
+        this.reasonPhrase = reasonPhrase;
+        this.headers = headers;
+        this.body = body;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.storedAt = System.nanoTime();
+        final Map<String, String> cacheControl = parseCacheControl(headers);
+        this.maxAgeNanos = cacheControl.containsKey("no-cache") ? 0 : seconds(cacheControl.get("max-age"));
+        this.staleWhileRevalidateNanos = seconds(cacheControl.get("stale-while-revalidate"));
+    }
+
+    /**
+     * Creates an entry of a response, unless the response must not be cached. Responses varying by a request header
+     * which is not part of the cache key (see {@link ResponseCache#isKeyHeader(String)}) are not cached either.
+     * @param response response with its entity buffered
+     * @param body response body
+     * @return entry or null when the response is not cacheable
+     */
+    static CachedResponse of(final ClassicHttpResponse response, final byte[] body) {
+        final Map<String, String> cacheControl = parseCacheControl(response.getHeaders(HttpHeaders.CACHE_CONTROL));
+        if (cacheControl.containsKey("no-store") || !variesByKeyHeaders(response)) {
+            return null;
+        }
+        final CachedResponse entry = new CachedResponse(response.getCode(), response.getReasonPhrase(),
+                response.getHeaders(), body, response.getEntity().getContentType(),
+                response.getEntity().getContentEncoding());
+        // nothing to reuse without freshness or validators
+        return entry.maxAgeNanos > 0 || entry.getETag() != null || entry.getLastModified() != null ? entry : null;
+    }
+
+    /**
+     * Creates a copy of any response.
+     * @param response response with its entity buffered
+     * @param body response body, null when the response has no entity
+     */
+    static CachedResponse copyOf(final ClassicHttpResponse response, final byte[] body) {
+        final HttpEntity entity = response.getEntity();
+        return new CachedResponse(response.getCode(), response.getReasonPhrase(), response.getHeaders(), body,
+                entity != null ? entity.getContentType() : null, entity != null ? entity.getContentEncoding() : null);
+    }
+
+    /**
+     * Creates an entry with the body of this one and headers updated by the 304 response, fresh again.
+     */
+    CachedResponse revalidated(final ClassicHttpResponse notModified) {
+        final List<Header> updated = new ArrayList<>();
+        for (Header header : headers) {
+            if (!notModified.containsHeader(header.getName())) {
+                updated.add(header);
+            }
+        }
+        for (Header header : notModified.getHeaders()) {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getName())) {
+                updated.add(header);
+            }
+        }
+        return new CachedResponse(code, reasonPhrase, updated.toArray(new Header[0]), body, contentType,
+                contentEncoding);
+    }
+
+    String getETag() {
+        return getHeader(HttpHeaders.ETAG);
+    }
+
+    String getLastModified() {
+        return getHeader(HttpHeaders.LAST_MODIFIED);
+    }
+
+    /**
+     * @return whether the entry can be used without revalidation
+     */
+    boolean isFresh(final long now) {
+        return now - storedAt < maxAgeNanos;
+    }
+
+    /**
+     * @return whether the stale entry can be used while it is revalidated in the background
+     */
+    boolean isStaleUsable(final long now) {
+        return now - storedAt < maxAgeNanos + staleWhileRevalidateNanos;
+    }
+
+    /**
+     * Marks the entry as being revalidated in the background.
+     * @return false when another revalidation is running already
+     */
+    boolean startRevalidation() {
+        return revalidating.compareAndSet(false, true);
+    }
+
+    void revalidationFailed() {
+        revalidating.set(false);
+    }
+
+    /**
+     * @return approximate memory occupied by the entry
+     */
+    long size() {
+        long size = ENTRY_OVERHEAD + (body != null ? body.length : 0);
+        for (Header header : headers) {
+            size += 2L * (header.getName().length() + header.getValue().length());
+        }
+        return size;
+    }
+
+    /**
+     * @return new response with the cached headers and body
+     */
+    ClassicHttpResponse toResponse() {
+        final BasicClassicHttpResponse response = new BasicClassicHttpResponse(code, reasonPhrase);
+        response.setHeaders(headers);
+        if (body != null) {
+            response.setEntity(new ByteArrayEntity(body,
+                    contentType != null ? ContentType.parseLenient(contentType) : null, contentEncoding));
+        }
+        return response;
+    }
+
+    private String getHeader(final String name) {
+        for (Header header : headers) {
+            if (name.equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return directives of the {@code Cache-Control} headers of the message, with their values or empty strings
+     */
+    /**
+     * @return true when all the request headers the response varies by are part of the cache key
+     */
+    private static boolean variesByKeyHeaders(final HttpMessage response) {
+        for (Header vary : response.getHeaders(HttpHeaders.VARY)) {
+            for (String name : vary.getValue().split(",")) {
+                if (!name.isBlank() && !ResponseCache.isKeyHeader(name.trim())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    static Map<String, String> parseCacheControl(final HttpMessage message) {
+        return parseCacheControl(message.getHeaders(HttpHeaders.CACHE_CONTROL));
+    }
+
+    private static Map<String, String> parseCacheControl(final Header[] headers) {
+        final Map<String, String> directives = new HashMap<>();
+        for (Header header : headers) {
+            if (!HttpHeaders.CACHE_CONTROL.equalsIgnoreCase(header.getName())) {
+                continue;
+            }
+            for (String directive : header.getValue().split(",")) {
+                final int eq = directive.indexOf('=');
+                final String name = (eq < 0 ? directive : directive.substring(0, eq)).trim().toLowerCase(Locale.ROOT);
+                final String value = eq < 0 ? "" : directive.substring(eq + 1).trim().replace("\"", "");
+                if (!name.isEmpty()) {
+                    directives.put(name, value);
+                }
+            }
+        }
+        return directives;
+    }
+
+    private static long seconds(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(Long.parseLong(value), 0));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Running fan-out of {@link FanOutExecutor}. Iterates over results of all submitted requests in their completion
+ * order, {@link #next()} blocks until another request completes. Every request gets exactly one result.
+ * <p>
+ * Once cancelled or past its deadline, requests not started yet fail immediately and requests in flight are aborted.
+ * The deadline is checked before each request is started and while waiting for results. Requests which don't stop
+ * shortly after being aborted, e.g. ones waiting for a rate limit or a token refresh, are reported as failed, their
+ * late outcome is dropped.
+ * @param <T> type of the handled response
+ */
+public final class FanOutExecution<T> implements Iterator<FanOutResult<T>>, AutoCloseable {
+
+    /** How long aborted requests are waited for, and how often a fan-out without deadline checks it was stopped. */
+    static final long ABORT_GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final List<ClassicHttpRequest> requests;
+    private final RequestCall<T> call;
+    private final Supplier<? extends HttpContext> contexts;
+    private final long deadline;
+    private final boolean hasDeadline;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicReferenceArray<ClassicHttpRequest> inFlight;
+    private final AtomicReference<Throwable> stopped = new AtomicReference<>();
+    private final AtomicIntegerArray reported;
+    private final BlockingQueue<FanOutResult<T>> results = new LinkedBlockingQueue<>();
+    private int delivered;
+
+    FanOutExecution(final List<ClassicHttpRequest> requests, final RequestCall<T> call,
+                    final Supplier<? extends HttpContext> contexts, final Duration timeout) {
+        this.requests = requests;
+        this.call = call;
+        this.contexts = contexts;
+        this.hasDeadline = timeout != null;
+        this.deadline = hasDeadline ? System.nanoTime() + timeout.toNanos() : 0;
+        this.inFlight = new AtomicReferenceArray<>(requests.size());
+        this.reported = new AtomicIntegerArray(requests.size());
+    }
+
+    void start(final Executor executor, final int parallelism) {
+        final int workers = Math.min(parallelism, requests.size());
+        for (int i = 0; i < workers; i++) {
+            try {
+                executor.execute(this::work);
+            } catch (RejectedExecutionException e) {
+                if (i == 0) {
+                    stop(e);
+                }
+                // requests are sent by the workers already started
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return delivered < requests.size();
+    }
+
+    /**
+     * Waits for the result of the next completed request.
+     * @throws CancellationException when the waiting thread is interrupted, the fan-out is then cancelled
+     */
+    @Override
+    public FanOutResult<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            final FanOutResult<T> result = awaitResult();
+            delivered++;
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new CancellationException("Interrupted while waiting for fan-out results");
+        }
+    }
+
+    /**
+     * Cancels the fan-out, remaining requests fail with {@link CancellationException}.
+     */
+    public void cancel() {
+        stop(new CancellationException("Fan-out cancelled"));
+    }
+
+    /**
+     * Cancels requests not completed yet.
+     */
+    @Override
+    public void close() {
+        if (hasNext()) {
+            cancel();
+        }
+    }
+
+    private FanOutResult<T> awaitResult() throws InterruptedException {
+        long abandonAt = 0;
+        boolean stopping = false;
+        while (true) {
+            final long now = System.nanoTime();
+            final long wait;
+            if (stopped.get() == null) {
+                if (hasDeadline && now - deadline >= 0) {
+                    stop(new TimeoutException("Fan-out deadline exceeded"));
+                    continue;
+                }
+                wait = hasDeadline ? Math.min(deadline - now, ABORT_GRACE_NANOS) : ABORT_GRACE_NANOS;
+            } else {
+                if (!stopping) {
+                    stopping = true;
+                    abandonAt = now + ABORT_GRACE_NANOS;
+                }
+                if (now - abandonAt >= 0) {
+                    // all the remaining results are queued now
+                    abandon();
+                }
+                wait = Math.max(abandonAt - now, 0);
+            }
+            final FanOutResult<T> result = results.poll(wait, TimeUnit.NANOSECONDS);
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+
+    private void work() {
+        while (stopped.get() == null) {
+            if (hasDeadline && System.nanoTime() - deadline >= 0) {
+                stop(new TimeoutException("Fan-out deadline exceeded"));
+                return;
+            }
+            final int index = nextIndex.getAndIncrement();
+            if (index >= requests.size()) {
+                return;
+            }
+            send(index);
+        }
+    }
+
+    private void send(final int index) {
+        final ClassicHttpRequest request = requests.get(index);
+        inFlight.set(index, request);
+        // stopped while the request was being claimed, abort it like the other ones in flight
+        if (stopped.get() != null) {
+            abort(request);
+        }
+        T value = null;
+        Throwable failure = null;
+        try {
+            value = call.execute(request, contexts.get());
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            inFlight.set(index, null);
+        }
+        final Throwable reason = stopped.get();
+        if (failure != null && reason != null) {
+            // report why the request was aborted rather than how the transport failed
+            final Throwable aborted = failureOf(reason);
+            aborted.addSuppressed(failure);
+            failure = aborted;
+        }
+        report(index, value, failure);
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    private void stop(final Throwable reason) {
+        if (!stopped.compareAndSet(null, reason)) {
+            return;
+        }
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < requests.size()) {
+            report(index, null, failureOf(reason));
+        }
+        for (int i = 0; i < inFlight.length(); i++) {
+            final ClassicHttpRequest request = inFlight.get(i);
+            if (request != null) {
+                abort(request);
+            }
+        }
+    }
+
+    /**
+     * Fails the requests which have not reported their result yet.
+     */
+    private void abandon() {
+        final Throwable reason = stopped.get();
+        for (int i = 0; i < requests.size(); i++) {
+            if (reported.get(i) == 0) {
+                report(i, null, failureOf(reason));
+            }
+        }
+    }
+
+    /**
+     * Queues the result of a request unless it has already been reported.
+     */
+    private void report(final int index, final T value, final Throwable failure) {
+        if (reported.compareAndSet(index, 0, 1)) {
+            results.add(new FanOutResult<>(index, requests.get(index), value, failure));
+        }
+    }
+
+    /**
+     * @return new exception for a request failed because the fan-out was stopped, every result gets its own one
+     */
+    private static Throwable failureOf(final Throwable reason) {
+        if (reason instanceof TimeoutException) {
+            return new TimeoutException(reason.getMessage());
+        }
+        if (reason instanceof CancellationException) {
+            return new CancellationException(reason.getMessage());
+        }
+        return new RejectedExecutionException(reason.getMessage(), reason);
+    }
+
+    private static void abort(final ClassicHttpRequest request) {
+        if (request instanceof Cancellable) {
+            ((Cancellable) request).cancel();
+        }
+    }
+
+    /**
+     * Sends a single request and handles its response.
+     */
+    @FunctionalInterface
+    interface RequestCall<T> {
+        T execute(ClassicHttpRequest request, HttpContext context) throws Exception;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.noNullElements;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Sends many requests, e.g. the same query to many workspaces, through one {@link GoodDataHttpClient} with bounded
+ * parallelism. All requests share the client's tokens, so an expired TT is refreshed once for all of them.
+ * <pre>
+ * FanOutExecutor fanOut = new FanOutExecutor(client, executor, 16);
+ * try (FanOutExecution&lt;String&gt; execution = fanOut.execute(host, requests, new BasicHttpClientResponseHandler(),
+ *         Duration.ofMinutes(10))) {
+ *     while (execution.hasNext()) {
+ *         FanOutResult&lt;String&gt; result = execution.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class FanOutExecutor {
+
+    private final GoodDataHttpClient client;
+    private final Executor executor;
+    private final int parallelism;
+
+    /**
+     * Construct object.
+     * @param client client sending the requests
+     * @param executor executor running the requests, must be able to run {@code parallelism} tasks concurrently
+     * @param parallelism max number of requests of a single fan-out in flight
+     */
+    public FanOutExecutor(final GoodDataHttpClient client, final Executor executor, final int parallelism) {
+        this.client = notNull(client, "client can't be null");
+        this.executor = notNull(executor, "executor can't be null");
+        isTrue(parallelism > 0, "parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Starts sending the requests, each with a new {@link HttpContext}.
+     * @see #execute(HttpHost, Collection, HttpClientResponseHandler, Duration, Supplier)
+     */
+    public <T> FanOutExecution<T> execute(final HttpHost target, final Collection<? extends ClassicHttpRequest> requests,
+                                          final HttpClientResponseHandler<? extends T> handler,
+                                          final Duration timeout) {
+        return execute(target, requests, handler, timeout, () -> null);
+    }
+
+    /**
+     * Starts sending the requests. Results are available in completion order from the returned execution, failure
+     * of one request doesn't affect the others.
+     * @param target target host
+     * @param requests requests to send, each must be sent at most once
+     * @param handler handles responses, called concurrently
+     * @param timeout overall deadline, requests not completed until then fail with
+     *                {@link java.util.concurrent.TimeoutException}, null for no deadline
+     * @param contexts supplies context of every request, e.g. with {@link GoodDataHttpClient#PRINCIPAL} attribute
+     * @return running execution
+     */
+    public <T> FanOutExecution<T> execute(final HttpHost target, final Collection<? extends ClassicHttpRequest> requests,
+                                          final HttpClientResponseHandler<? extends T> handler,
+                                          final Duration timeout, final Supplier<? extends HttpContext> contexts) {
+        notNull(requests, "requests can't be null");
+        noNullElements(requests, "requests can't contain null");
+        notNull(handler, "handler can't be null");
+        notNull(contexts, "contexts can't be null");
+        isTrue(timeout == null || !timeout.isNegative(), "timeout can't be negative");
+        final FanOutExecution<T> execution = new FanOutExecution<>(new ArrayList<>(requests),
+                (request, context) -> client.execute(target, request, context, handler), contexts, timeout);
+        execution.start(executor, parallelism);
+        return execution;
+    }
+}
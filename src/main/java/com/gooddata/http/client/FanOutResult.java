@@ -0,0 +1,62 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.core5.http.ClassicHttpRequest;
+
+/**
+ * Result of a single request of {@link FanOutExecution}, either the value produced by the response handler
+ * or the failure of the request.
+ * @param <T> type of the handled response
+ */
+public final class FanOutResult<T> {
+
+    private final int index;
+    private final ClassicHttpRequest request;
+    private final T value;
+    private final Throwable failure;
+
+    FanOutResult(final int index, final ClassicHttpRequest request, final T value, final Throwable failure) {
+        this.index = index;
+        this.request = request;
+        this.value = value;
+        this.failure = failure;
+    }
+
+    /**
+     * @return index of the request in the submitted list
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public ClassicHttpRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return whether the request was executed and its response handled without failure
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * @return value produced by the response handler, null when failed
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return failure of the request, {@link java.util.concurrent.CancellationException} when the fan-out was
+     * cancelled and {@link java.util.concurrent.TimeoutException} when its deadline passed before the request
+     * completed, null on success
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Repeatable entity backed by a temporary file, which is deleted when the entity is closed.
+ */
+final class FileBufferedEntity extends AbstractHttpEntity {
+
+    private final Path file;
+    private final long length;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    FileBufferedEntity(final Path file, final long length, final ContentType contentType, final String contentEncoding) {
+        super(contentType, contentEncoding);
+        this.file = file;
+        this.length = length;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return Channels.newInputStream(open());
+    }
+
+    @Override
+    public void writeTo(final OutputStream outStream) throws IOException {
+        try (FileChannel channel = open()) {
+            ReplayableEntity.transfer(channel, file, length, outStream);
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        if (released.get()) {
+            throw new IOException("Buffered content has already been released");
+        }
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (released.compareAndSet(false, true)) {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import java.time.Duration;
+
+/**
+ * Thrown instead of obtaining tokens while recent attempts failed, so that a failing authentication service isn't
+ * hammered by every challenged request. The cause is the last failure of the token retrieval.
+ */
+public class GoodDataAuthCircuitOpenException extends GoodDataAuthException {
+
+    private static final long serialVersionUID = 2938562054174856612L;
+
+    private final Duration retryAfter;
+
+    public GoodDataAuthCircuitOpenException(final Duration retryAfter, final Throwable cause) {
+        super("Authentication failing, not retried for " + retryAfter.toMillis() + " ms", cause);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return time until the token retrieval is attempted again
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
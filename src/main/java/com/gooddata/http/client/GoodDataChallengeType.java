@@ -0,0 +1,40 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static com.gooddata.http.client.GoodDataHttpClient.COOKIE_GDC_AUTH_SST;
+import static com.gooddata.http.client.GoodDataHttpClient.COOKIE_GDC_AUTH_TT;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+
+/**
+ * Type of GoodData authentication challenge, shared by the blocking and the async client.
+ */
+public enum GoodDataChallengeType {
+    SST, TT, UNKNOWN;
+
+    /**
+     * Identify the type of GoodData authentication challenge from the response.
+     */
+    static GoodDataChallengeType identify(final HttpResponse response) {
+        if (response.getCode() == HttpStatus.SC_UNAUTHORIZED) {
+            Header[] headers = response.getHeaders("WWW-Authenticate");
+            if (headers != null) {
+                for (Header header : headers) {
+                    final String challenge = header.getValue();
+                    if (challenge.contains(COOKIE_GDC_AUTH_SST)) {
+                        return SST;
+                    } else if (challenge.contains(COOKIE_GDC_AUTH_TT)) {
+                        return TT;
+                    }
+                }
+            }
+        }
+        return UNKNOWN;
+    }
+}
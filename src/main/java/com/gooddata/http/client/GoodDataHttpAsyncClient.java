@@ -0,0 +1,233 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static com.gooddata.http.client.GoodDataHttpClient.SST_HEADER;
+import static com.gooddata.http.client.GoodDataHttpClient.TOKEN_URL;
+import static com.gooddata.http.client.GoodDataHttpClient.TT_HEADER;
+import static com.gooddata.http.client.LoginSSTRetrievalStrategy.LOGIN_URL;
+import static org.apache.commons.lang3.Validate.notNull;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.Closeable;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Async http client with ability to handle GoodData authentication.
+ * <p>
+ * Counterpart of {@link GoodDataHttpClient} built on {@link CloseableHttpAsyncClient}. Requests are completed
+ * without blocking any thread - TT is injected into every request, GoodData authentication challenges trigger
+ * a non-blocking SST login and/or TT refresh shared by all requests failing with the same tokens, and the failed
+ * request is retried with the new TT.
+ * <p>
+ * The underlying client must be started by the caller, it is not closed by this class.
+ * <p>
+ * Use {@link #createHttp2(HttpHost, AsyncSSTRetrievalStrategy)} to run all requests to a host as multiplexed
+ * streams of a single HTTP/2 connection. TT injection and retry on authentication challenge work per stream,
+ * exactly as with HTTP/1.1.
+ */
+public class GoodDataHttpAsyncClient implements Closeable {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final CloseableHttpAsyncClient httpClient;
+    private final HttpHost authHost;
+    private final AsyncSSTRetrievalStrategy sstStrategy;
+    private final boolean ownsHttpClient;
+    private final TokenRefreshCoordinator coordinator = new TokenRefreshCoordinator();
+
+    /**
+     * Construct object.
+     * @param httpClient started async HTTP client
+     * @param authHost host used to obtain SST and TT
+     * @param sstStrategy non-blocking strategy to obtain SST
+     */
+    public GoodDataHttpAsyncClient(final CloseableHttpAsyncClient httpClient, final HttpHost authHost,
+                                   final AsyncSSTRetrievalStrategy sstStrategy) {
+        this(httpClient, authHost, sstStrategy, false);
+    }
+
+    private GoodDataHttpAsyncClient(final CloseableHttpAsyncClient httpClient, final HttpHost authHost,
+                                    final AsyncSSTRetrievalStrategy sstStrategy, final boolean ownsHttpClient) {
+        notNull(httpClient);
+        notNull(authHost, "HTTP host cannot be null");
+        notNull(sstStrategy);
+        this.httpClient = httpClient;
+        this.authHost = authHost;
+        this.sstStrategy = sstStrategy;
+        this.ownsHttpClient = ownsHttpClient;
+    }
+
+    /**
+     * Creates client sending all requests over HTTP/2 with default settings.
+     * @see #createHttp2(HttpHost, AsyncSSTRetrievalStrategy, H2Config)
+     */
+    public static GoodDataHttpAsyncClient createHttp2(final HttpHost authHost, final AsyncSSTRetrievalStrategy sstStrategy) {
+        return createHttp2(authHost, sstStrategy, H2Config.DEFAULT);
+    }
+
+    /**
+     * Creates client sending all requests over HTTP/2. Requests to the same host share a single connection
+     * (negotiated by ALPN for https, prior knowledge h2c for http), so concurrent requests and token refreshes
+     * don't open new connections or repeat TLS handshakes. The server must support HTTP/2.
+     * <p>
+     * The created underlying client is started and it is closed by {@link #close()}.
+     *
+     * @param authHost host used to obtain SST and TT
+     * @param sstStrategy non-blocking strategy to obtain SST
+     * @param h2Config HTTP/2 protocol settings, e.g. max concurrent streams
+     * @return started client
+     */
+    public static GoodDataHttpAsyncClient createHttp2(final HttpHost authHost, final AsyncSSTRetrievalStrategy sstStrategy,
+                                                      final H2Config h2Config) {
+        notNull(h2Config, "H2 config cannot be null");
+        final CloseableHttpAsyncClient httpClient = HttpAsyncClients.customHttp2()
+                .setH2Config(h2Config)
+                .build();
+        httpClient.start();
+        return new GoodDataHttpAsyncClient(httpClient, authHost, sstStrategy, true);
+    }
+
+    /**
+     * Executes the request with GoodData authentication.
+     * The request itself is not modified, TT is set on its copy.
+     *
+     * @param target target host
+     * @param request request with the whole body in memory, so it can be retried
+     * @param context HTTP context, may be null
+     * @return future completed with the response
+     */
+    public CompletableFuture<SimpleHttpResponse> execute(final HttpHost target, final SimpleHttpRequest request,
+                                                         final HttpContext context) {
+        notNull(target, "Target can't be null");
+        notNull(request, "Request can't be null");
+
+        if (isLogoutRequest(target, request)) {
+            return logout(target, request);
+        }
+
+        final AuthTokens tokens = coordinator.current();
+        return send(target, request, tokens.getTt(), context).thenCompose(response -> {
+            final GoodDataChallengeType challenge = GoodDataChallengeType.identify(response);
+            if (challenge == GoodDataChallengeType.UNKNOWN) {
+                return CompletableFuture.completedFuture(response);
+            }
+            return coordinator.refresh(tokens, current -> obtainTokens(current, challenge))
+                    .thenCompose(refreshed -> send(target, request, refreshed.getTt(), context));
+        });
+    }
+
+    public CompletableFuture<SimpleHttpResponse> execute(final HttpHost target, final SimpleHttpRequest request) {
+        return execute(target, request, null);
+    }
+
+    private CompletableFuture<SimpleHttpResponse> send(final HttpHost target, final SimpleHttpRequest request,
+                                                       final String tt, final HttpContext context) {
+        final SimpleRequestBuilder copy = SimpleRequestBuilder.copy(request).setHttpHost(target);
+        copy.removeHeaders(TT_HEADER);
+        if (tt != null) {
+            copy.addHeader(TT_HEADER, tt);
+        }
+        return AsyncUtils.execute(httpClient, copy.build(), context);
+    }
+
+    /**
+     * Obtains new tokens, reusing current SST when only TT expired.
+     */
+    private CompletableFuture<AuthTokens> obtainTokens(final AuthTokens current, final GoodDataChallengeType challenge) {
+        final CompletableFuture<String> refreshedTt = challenge == GoodDataChallengeType.TT && current.getSst() != null
+                ? refreshTt(current.getSst())
+                : CompletableFuture.completedFuture(null);
+        return refreshedTt.thenCompose(tt -> {
+            if (tt != null) {
+                return CompletableFuture.completedFuture(new AuthTokens(current.getSst(), tt));
+            }
+            return sstStrategy.obtainTokens(httpClient, authHost).thenCompose(bundle -> {
+                if (bundle.getTt() != null) {
+                    return CompletableFuture.completedFuture(new AuthTokens(bundle.getSst(), bundle.getTt()));
+                }
+                return refreshTt(bundle.getSst()).thenApply(newTt -> {
+                    if (newTt == null) {
+                        throw new GoodDataAuthException("Unable to obtain TT after successfully obtained SST");
+                    }
+                    return new AuthTokens(bundle.getSst(), newTt);
+                });
+            });
+        });
+    }
+
+    /**
+     * Obtains a new TT for the given SST.
+     * @return future completed with new TT or {@code null} when the SST is no longer valid
+     */
+    private CompletableFuture<String> refreshTt(final String sst) {
+        log.debug("Obtaining TT");
+        final SimpleHttpRequest request = SimpleRequestBuilder.get()
+                .setHttpHost(authHost)
+                .setPath(TOKEN_URL)
+                .addHeader(SST_HEADER, sst)
+                .build();
+        return AsyncUtils.execute(httpClient, request, null).thenApply(response -> {
+            final int status = response.getCode();
+            switch (status) {
+                case HttpStatus.SC_OK:
+                    return TokenUtils.extractTT(response);
+                case HttpStatus.SC_UNAUTHORIZED:
+                    return null;
+                default:
+                    throw new GoodDataAuthException("Unable to obtain TT, HTTP status: " + status);
+            }
+        });
+    }
+
+    /**
+     * Performs the logout and forgets current tokens.
+     */
+    private CompletableFuture<SimpleHttpResponse> logout(final HttpHost target, final SimpleHttpRequest request) {
+        final AuthTokens current = coordinator.current();
+        return sstStrategy.logout(httpClient, target, request.getRequestUri(), current.getSst(), current.getTt())
+                .handle((ignored, failure) -> {
+                    if (failure != null) {
+                        final Throwable cause = AsyncUtils.unwrap(failure);
+                        if (cause instanceof GoodDataLogoutException) {
+                            final GoodDataLogoutException e = (GoodDataLogoutException) cause;
+                            throw new GoodDataHttpStatusException(e.getStatusCode(), e.getStatusText());
+                        }
+                        throw failure instanceof CompletionException
+                                ? (CompletionException) failure : new CompletionException(failure);
+                    }
+                    coordinator.reset();
+                    return new SimpleHttpResponse(HttpStatus.SC_NO_CONTENT, "Logout successful");
+                });
+    }
+
+    private boolean isLogoutRequest(final HttpHost target, final SimpleHttpRequest request) {
+        return authHost.equals(target)
+                && "DELETE".equals(request.getMethod())
+                && URI.create(request.getRequestUri()).getPath().startsWith(LOGIN_URL);
+    }
+
+    /**
+     * Closes the underlying client when it was created by this class, otherwise does nothing.
+     */
+    @Override
+    public void close() {
+        if (ownsHttpClient) {
+            httpClient.close(CloseMode.GRACEFUL);
+        }
+    }
+}
@@ -8,269 +8,522 @@ import static com.gooddata.http.client.LoginSSTRetrievalStrategy.LOGIN_URL;
 import static org.apache.commons.lang3.Validate.notNull;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.entity.DecompressingEntity;
+import org.apache.hc.client5.http.entity.DeflateInputStreamFactory;
+import org.apache.hc.client5.http.entity.GZIPInputStreamFactory;
+import org.apache.hc.client5.http.entity.GzipCompressingEntity;
+import org.apache.hc.client5.http.entity.InputStreamFactory;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.utils.DateUtils;
 import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpHost;
 import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Method;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
-import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.message.BasicHeader;
 import org.apache.hc.core5.http.protocol.HttpContext;
 import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HeaderElements;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.io.Closer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 
 /**
  * Http client with ability to handle GoodData authentication.
  * Fully migrated to Apache HttpClient 5.x "response handler" style.
+ * <p>
+ * Requests read an immutable snapshot of the current SST/TT tokens and run in parallel, limited only by the
+ * underlying {@link HttpClient}. Only token refresh and logout are serialized. Concurrent authentication challenges
+ * caused by the same tokens share a single refresh; requests which failed with already replaced tokens are just
+ * retried with the current ones.
+ * <p>
+ * Responses are fully buffered in memory by default. In streaming mode (see
+ * {@link GoodDataHttpClientBuilder#setStreamResponses(boolean)} and {@link #STREAM_RESPONSE}) the returned response
+ * holds the live connection stream, which is released when the caller closes the response. Buffered bodies larger than
+ * the spill threshold (see {@link GoodDataHttpClientBuilder#setResponseSpillThreshold(long)} and
+ * {@link #RESPONSE_SPILL_THRESHOLD}) are kept in a temporary file deleted when the response is closed. Buffered bodies
+ * can be kept in pooled buffers returned to the pool when the response is closed (see
+ * {@link GoodDataHttpClientBuilder#setBufferPool(long, boolean)}).
+ * <p>
+ * One client can authenticate requests as many GoodData principals selected by {@link #PRINCIPAL} context attribute
+ * (see {@link GoodDataHttpClientBuilder#setPrincipalSstStrategies}). Every principal has its own tokens and refresh,
+ * all of them share the underlying {@link HttpClient}.
+ * <p>
+ * Requests of every principal to every host pass an adaptive rate limiter (see
+ * {@link GoodDataHttpClientBuilder#setRateLimit(double, int)}). Requests throttled by the server are queued again
+ * after the time the server asked for, and so are following requests of the principal to the host.
+ * <p>
+ * Buffered GET responses can be cached per principal (see {@link GoodDataHttpClientBuilder#setResponseCache}).
+ * Fresh responses are served from the cache, stale ones are revalidated with {@code If-None-Match} and
+ * {@code If-Modified-Since}, or served while revalidated in the background when the server allows that by
+ * {@code stale-while-revalidate}.
+ * <p>
+ * Identical buffered GETs of a principal running at the same time can be coalesced into a single request (see
+ * {@link GoodDataHttpClientBuilder#setCoalesceGets(boolean)}), every caller gets its own copy of the response.
+ * <p>
+ * The client should be closed once not used anymore, which closes the underlying {@link HttpClient} created by
+ * the client, including its connection pool and the connection eviction thread.
  */
-public class GoodDataHttpClient {
-    private static final String TOKEN_URL = "/gdc/account/token";
+public class GoodDataHttpClient implements Closeable {
+    static final String TOKEN_URL = "/gdc/account/token";
     public static final String COOKIE_GDC_AUTH_TT = "cookie=GDCAuthTT";
     public static final String COOKIE_GDC_AUTH_SST = "cookie=GDCAuthSST";
-    private volatile boolean tokenRefreshing = false;
-    private final Object tokenRefreshMonitor = new Object();
+    /**
+     * {@link HttpContext} attribute overriding the client's response streaming mode for a single request.
+     * Value is {@link Boolean}, {@code true} returns the live response stream, {@code false} buffers the response.
+     */
+    public static final String STREAM_RESPONSE = "gooddata.stream-response";
+    /**
+     * {@link HttpContext} attribute overriding the client's response spill threshold for a single request.
+     * Value is a {@link Number} of bytes of buffered response body kept in memory.
+     */
+    public static final String RESPONSE_SPILL_THRESHOLD = "gooddata.response-spill-threshold";
+    /**
+     * {@link HttpContext} attribute selecting the GoodData principal the request is authenticated as.
+     * Value is a {@link String} key of the principal, its SST strategy is resolved by the function set by
+     * {@link GoodDataHttpClientBuilder#setPrincipalSstStrategies}. Requests without the attribute use the client's
+     * default SST strategy.
+     */
+    public static final String PRINCIPAL = "gooddata.principal";
     static final String TT_HEADER = "X-GDC-AuthTT";
     static final String SST_HEADER = "X-GDC-AuthSST";
-    private enum GoodDataChallengeType {
-        SST, TT, UNKNOWN
-    }
+    /** Wait after HTTP 429 without {@code Retry-After}. */
+    static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+    private static final Header EXPECT_CONTINUE = new BasicHeader(HttpHeaders.EXPECT, HeaderElements.CONTINUE);
+    private static final Header ACCEPT_ENCODING = new BasicHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+    private static final Map<String, InputStreamFactory> DECODERS = Map.of(
+            "gzip", GZIPInputStreamFactory.getInstance(),
+            "x-gzip", GZIPInputStreamFactory.getInstance(),
+            "deflate", DeflateInputStreamFactory.getInstance());
 
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final HttpClient httpClient;
-    private final SSTRetrievalStrategy sstStrategy;
+    /** The underlying client created by this class, null when set by the caller. */
+    private final CloseableHttpClient ownedHttpClient;
     private final HttpHost authHost;
-    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
-    private String sst;
-    private String tt;
+    private final boolean streamResponses;
+    private final long responseSpillThreshold;
+    private final Path spillDirectory;
+    private final BufferPool bufferPool;
+    private final long requestReplayLimit;
+    private final long expectContinueThreshold;
+    private final long requestCompressionThreshold;
+    private final List<String> compressedPaths;
+    private final boolean decodeResponses;
+    private final double rateLimit;
+    private final int rateLimitBurst;
+    private final int throttledRetries;
+    private final Duration maxRetryAfter;
+    private final boolean retryThrottledNonIdempotent;
+    private final ResponseCache responseCache;
+    private final Executor revalidationExecutor;
+    private final RequestCoalescer requestCoalescer;
+    private volatile Map.Entry<String, ContentType> lastContentType;
+    private final TokenStore tokenStore;
+    private final GoodDataHttpClientListener listener;
+    private final Executor renewalRunner;
+    private final PrincipalSession defaultSession;
+    private final PrincipalRegistry principals;
     // Constructors remain unchanged (just update parameter types to HttpClient 5.x classes if needed)
     public GoodDataHttpClient(final HttpClient httpClient, final HttpHost authHost, final SSTRetrievalStrategy sstStrategy) {
-        notNull(httpClient);
-        notNull(authHost, "HTTP host cannot be null");
-        notNull(sstStrategy);
-        this.httpClient = httpClient;
-        this.authHost = authHost;
-        this.sstStrategy = sstStrategy;
+        this(GoodDataHttpClientBuilder.create()
+                .setHttpClient(notNull(httpClient))
+                .setAuthHost(authHost)
+                .setSstStrategy(sstStrategy));
     }
     
     public GoodDataHttpClient(final HttpHost authHost, final SSTRetrievalStrategy sstStrategy) {
-        this(org.apache.hc.client5.http.impl.classic.HttpClients.createDefault(), authHost, sstStrategy);
+        this(GoodDataHttpClientBuilder.create()
+                .setAuthHost(authHost)
+                .setSstStrategy(sstStrategy));
+    }
+
+    GoodDataHttpClient(final GoodDataHttpClientBuilder builder) {
+        notNull(builder.getAuthHost(), "HTTP host cannot be null");
+        notNull(builder.getSstStrategy());
+        this.ownedHttpClient = builder.getHttpClient() == null ? builder.buildHttpClient() : null;
+        this.httpClient = ownedHttpClient != null ? ownedHttpClient : builder.getHttpClient();
+        this.authHost = builder.getAuthHost();
+        this.streamResponses = builder.isStreamResponses();
+        this.responseSpillThreshold = builder.getResponseSpillThreshold();
+        this.spillDirectory = builder.getSpillDirectory();
+        this.bufferPool = builder.getBufferPoolSize() > 0
+                ? new BufferPool(builder.getBufferPoolSize(), builder.isDirectBuffers(),
+                        builder.getListener()::bufferLeaked)
+                : null;
+        this.requestReplayLimit = builder.getRequestReplayLimit();
+        this.expectContinueThreshold = builder.getExpectContinueThreshold();
+        this.requestCompressionThreshold = builder.getRequestCompressionThreshold();
+        this.compressedPaths = builder.getCompressedPaths();
+        // a client set by the caller decodes responses as configured by the caller
+        this.decodeResponses = builder.getHttpClient() == null;
+        this.rateLimit = builder.getRateLimit();
+        this.rateLimitBurst = builder.getRateLimitBurst();
+        this.throttledRetries = builder.getThrottledRetries();
+        this.maxRetryAfter = builder.getMaxRetryAfter();
+        this.retryThrottledNonIdempotent = builder.isRetryThrottledNonIdempotent();
+        this.responseCache = builder.getResponseCacheSize() > 0 ? new ResponseCache(builder.getResponseCacheSize()) : null;
+        this.revalidationExecutor = builder.getRevalidationExecutor();
+        this.requestCoalescer = builder.isCoalesceGets() ? new RequestCoalescer() : null;
+        this.tokenStore = builder.getTokenStore();
+        this.listener = builder.getListener();
+        this.renewalRunner = builder.isVirtualThreadRenewals() ? VirtualThreads.newVirtualThreadPerTaskExecutor() : null;
+        this.defaultSession = newSession(builder, null, builder.getSstStrategy());
+        final Function<String, ? extends SSTRetrievalStrategy> principalSstStrategies = builder.getPrincipalSstStrategies();
+        this.principals = principalSstStrategies != null
+                ? new PrincipalRegistry(principal -> newSession(builder, principal,
+                        notNull(principalSstStrategies.apply(principal), "No SST strategy for principal")),
+                        builder.getMaxPrincipals(), builder.getPrincipalIdleTimeout())
+                : null;
+    }
+
+    private PrincipalSession newSession(final GoodDataHttpClientBuilder builder, final String principal,
+                                        final SSTRetrievalStrategy sstStrategy) {
+        final AuthCircuitBreaker circuitBreaker = new AuthCircuitBreaker(builder.getAuthFailureThreshold(),
+                builder.getAuthInitialBackoff(), builder.getAuthMaxBackoff(),
+                state -> listener.authCircuitChanged(principal, state));
+        return new PrincipalSession(principal, sstStrategy, builder.getTokenRenewalExecutor(), renewalRunner,
+                builder.getTtLifetime(), builder.getTtRenewalMargin(), this::renewTt, circuitBreaker);
     }
 
     /**
-     * Identify the type of GoodData authentication challenge from the response.
+     * Returns session of the principal selected by {@link #PRINCIPAL} context attribute or the default one.
      */
-    private GoodDataChallengeType identifyGoodDataChallenge(final ClassicHttpResponse response) {
-        if (response.getCode() == HttpStatus.SC_UNAUTHORIZED) {
-            Header[] headers = response.getHeaders("WWW-Authenticate");
-            if (headers != null) {
-                for (Header header : headers) {
-                    final String challenge = header.getValue();
-                    if (challenge.contains(COOKIE_GDC_AUTH_SST)) {
-                        return GoodDataChallengeType.SST;
-                    } else if (challenge.contains(COOKIE_GDC_AUTH_TT)) {
-                        return GoodDataChallengeType.TT;
-                    }
-                }
-            }
+    private PrincipalSession getSession(final HttpContext context) {
+        final Object principal = context != null ? context.getAttribute(PRINCIPAL) : null;
+        if (principal == null) {
+            return defaultSession;
+        }
+        if (principals == null) {
+            throw new IllegalStateException("Principal set in the context, but no principal SST strategies configured");
         }
-        return GoodDataChallengeType.UNKNOWN;
+        return principals.get(principal.toString());
     }
 
     /**
      * Handles the authentication challenge and returns a refreshed response.
+     * @param session session of the principal the request is authenticated as
+     * @param usedTokens tokens the original request was sent with
+     * @param recording recorded non-repeatable body of the original request, may be null
      */
     private ClassicHttpResponse handleResponse(
         final HttpHost httpHost,
         final ClassicHttpRequest originalRequest,
         final ClassicHttpResponse originalResponse,
-        final HttpContext context) throws IOException, InterruptedException {
+        final HttpContext context,
+        final PrincipalSession session,
+        final AuthTokens usedTokens,
+        final RecordingEntity recording) throws IOException {
 
         if (originalResponse == null) {
             throw new IllegalStateException("httpClient.execute returned null! Check your mock configuration.");
         }
 
-        final GoodDataChallengeType challenge = identifyGoodDataChallenge(originalResponse);
+        final GoodDataChallengeType challenge = GoodDataChallengeType.identify(originalResponse);
+        listener.challenged(challenge);
 
         if (challenge == GoodDataChallengeType.UNKNOWN) {
             return originalResponse;
         }
 
+        // drain and release the challenge response, only the retried one is returned
         EntityUtils.consume(originalResponse.getEntity());
-        synchronized (tokenRefreshMonitor) {
-            if (tokenRefreshing) {
-                while (tokenRefreshing) {
-                    try {
-                        tokenRefreshMonitor.wait();
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Interrupted while waiting for token refresh", e);
-                    }
-                }
-                // After waiting, verify that tt was successfully obtained
-                if (tt == null) {
-                    throw new GoodDataAuthException("Token refresh completed but TT is still null");
-                }
-                final ClassicHttpRequest retryRequest = cloneRequestWithNewTT(originalRequest, tt);
-                return this.httpClient.execute(httpHost, retryRequest, context, response -> copyResponseEntity(response));
-            } else {
-                tokenRefreshing = true;
-            }
+        Closer.closeQuietly(originalResponse);
+
+        if (challenge == GoodDataChallengeType.TT && session.getRenewalScheduler() != null) {
+            session.getRenewalScheduler().ttRejected(usedTokens);
+        }
+
+        // either retries with tokens already refreshed by another thread, joins the running refresh or starts one
+        final long waitStart = System.nanoTime();
+        final AuthTokens refreshed = awaitTokens(refreshTokens(session, usedTokens, challenge));
+        listener.tokensAwaited(System.nanoTime() - waitStart);
+
+        final AuthenticatedRequest retryRequest = withTt(originalRequest, refreshed.getTtHeader());
+        if (recording != null) {
+            retryRequest.setEntity(recording.replay());
         }
+        return sendLimited(httpHost, retryRequest, context, session, null);
+    }
 
+    /**
+     * Obtains new tokens, adopting the ones from the token store when another client has refreshed them already.
+     * Serialized with logout of the same principal.
+     */
+    private AuthTokens obtainTokens(final PrincipalSession session, final AuthTokens current,
+                                    final GoodDataChallengeType challenge) throws IOException {
+        final Lock authLock = lockAuth(session);
         try {
-            final Lock writeLock = rwLock.writeLock();
-            writeLock.lock();
-            try {
-                boolean doSST = true;
-                if (challenge == GoodDataChallengeType.TT && sst != null) {
-                    boolean refreshed = refreshTt();
-                    if (refreshed) {
-                        doSST = false;
-                    }
-                }
-                if (doSST) {
-                    sst = sstStrategy.obtainSst(httpClient, authHost);
-                    if (!refreshTt()) {
-                        throw new GoodDataAuthException("Unable to obtain TT after successfully obtained SST");
-                    }
-                }
-            } finally {
-                writeLock.unlock();
+            final AuthTokens stored = loadNewerTokens(session, current);
+            if (stored != null) {
+                return stored;
             }
+            final AuthTokens obtained = obtainGuardedTokens(session, current, challenge);
+            storeTokens(session, obtained);
+            return obtained;
+        } finally {
+            authLock.unlock();
+        }
+    }
+
+    /**
+     * Acquires the authentication lock of the session, reporting the wait.
+     * @return the locked lock
+     */
+    private Lock lockAuth(final PrincipalSession session) {
+        final Lock authLock = session.getAuthLock();
+        final long start = System.nanoTime();
+        authLock.lock();
+        listener.authLockAwaited(System.nanoTime() - start);
+        return authLock;
+    }
+
+    /**
+     * Obtains new tokens unless recent attempts failed, in which case it fails fast.
+     */
+    private AuthTokens obtainGuardedTokens(final PrincipalSession session, final AuthTokens current,
+                                           final GoodDataChallengeType challenge) throws IOException {
+        final AuthCircuitBreaker circuitBreaker = session.getCircuitBreaker();
+        circuitBreaker.acquire();
+        boolean recorded = false;
+        try {
+            final AuthTokens obtained = obtainNewTokens(session, current, challenge);
+            circuitBreaker.succeeded();
+            recorded = true;
+            return obtained;
+        } catch (IOException | RuntimeException e) {
+            circuitBreaker.failed(e);
+            recorded = true;
+            throw e;
         } finally {
-            synchronized (tokenRefreshMonitor) {
-                tokenRefreshing = false;
-                tokenRefreshMonitor.notifyAll();
+            if (!recorded) {
+                // e.g. an Error, the retrieval must not keep probing the circuit forever
+                circuitBreaker.abandoned();
             }
         }
+    }
 
-        final ClassicHttpRequest retryRequest = cloneRequestWithNewTT(originalRequest, tt);
-        ClassicHttpResponse retryResponse = this.httpClient.execute(httpHost, retryRequest, context, response -> copyResponseEntity(response));
+    /**
+     * Obtains new tokens, reusing current SST when only TT expired.
+     */
+    private AuthTokens obtainNewTokens(final PrincipalSession session, final AuthTokens current,
+                                       final GoodDataChallengeType challenge) throws IOException {
+        String sst = current.getSst();
+        String tt = null;
+        // TT obtained for the same SST is valid as long as the one reported with the SST
+        Duration ttLifetime = current.getTtLifetime();
+        if (challenge == GoodDataChallengeType.TT && sst != null) {
+            tt = refreshTt(sst);
+        }
+        if (tt == null) {
+            final TokenBundle bundle = obtainSstTokens(session);
+            sst = bundle.getSst();
+            ttLifetime = bundle.getTtLifetime();
+            if (bundle.getTt() != null) {
+                return new AuthTokens(sst, bundle.getTt(), ttLifetime);
+            }
+            tt = refreshTt(sst);
+            if (tt == null) {
+                throw new GoodDataAuthException("Unable to obtain TT after successfully obtained SST");
+            }
+        }
+        return new AuthTokens(sst, tt, ttLifetime);
+    }
 
-        if (retryResponse.getCode() == HttpStatus.SC_UNAUTHORIZED &&
-            identifyGoodDataChallenge(retryResponse) != GoodDataChallengeType.UNKNOWN) {
-            return retryResponse;
+    private TokenBundle obtainSstTokens(final PrincipalSession session) throws IOException {
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final TokenBundle bundle = session.getSstStrategy().obtainTokens(httpClient, authHost);
+            success = true;
+            return bundle;
+        } finally {
+            listener.sstObtained(System.nanoTime() - start, success);
         }
-        return retryResponse;
     }
- 
-    private ClassicHttpRequest cloneRequestWithNewTT(ClassicHttpRequest original, String newTT) throws IOException {
-        ClassicHttpRequest copy;
-        
-        // Clone request based on method type
-        switch (original.getMethod()) {
-            case "GET":
-                copy = new HttpGet(original.getRequestUri());
-                break;
-            case "POST":
-                copy = cloneRequestWithEntity(
-                    new org.apache.hc.client5.http.classic.methods.HttpPost(original.getRequestUri()),
-                    original
-                );
-                break;
-            case "PUT":
-                copy = cloneRequestWithEntity(
-                    new org.apache.hc.client5.http.classic.methods.HttpPut(original.getRequestUri()),
-                    original
-                );
-                break;
-            case "PATCH":
-                copy = cloneRequestWithEntity(
-                    new org.apache.hc.client5.http.classic.methods.HttpPatch(original.getRequestUri()),
-                    original
-                );
-                break;
-            case "DELETE":
-                copy = new org.apache.hc.client5.http.classic.methods.HttpDelete(original.getRequestUri());
-                break;
-            case "HEAD":
-                copy = new org.apache.hc.client5.http.classic.methods.HttpHead(original.getRequestUri());
-                break;
-            case "OPTIONS":
-                copy = new org.apache.hc.client5.http.classic.methods.HttpOptions(original.getRequestUri());
-                break;
-            default:
-                throw new UnsupportedOperationException("Unsupported HTTP method: " + original.getMethod());
+
+    /**
+     * Loads tokens of the principal from the token store, once per session, so that it doesn't need to log in
+     * when another client has done that already.
+     */
+    private void loadStoredTokens(final PrincipalSession session) {
+        final Lock authLock = lockAuth(session);
+        try {
+            if (!session.isStoreLoaded()) {
+                final AuthTokens stored = loadNewerTokens(session, session.getCoordinator().current());
+                if (stored != null) {
+                    scheduleRenewal(session, session.getCoordinator().install(stored));
+                }
+                session.setStoreLoaded();
+            }
+        } finally {
+            authLock.unlock();
         }
-        
-        // Copy original headers
-        for (Header header : original.getHeaders()) {
-            copy.addHeader(header.getName(), header.getValue());
+    }
+
+    /**
+     * Returns tokens stored by another client when they differ from the current ones. Called under the auth lock.
+     * @return stored tokens or null when there are no newer ones
+     */
+    private AuthTokens loadNewerTokens(final PrincipalSession session, final AuthTokens current) {
+        if (tokenStore == null) {
+            return null;
+        }
+        try {
+            final StoredTokens stored = tokenStore.load(session.getStoreKey());
+            if (stored.getVersion() == session.getStoreVersion()) {
+                return null;
+            }
+            session.setStoreVersion(stored.getVersion());
+            final TokenBundle tokens = stored.getTokens();
+            if (tokens == null || tokens.getTt() == null || tokens.getTt().equals(current.getTt())) {
+                return null;
+            }
+            log.debug("Using tokens from the token store");
+            return new AuthTokens(tokens.getSst(), tokens.getTt(), tokens.getTtLifetime());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to load tokens from the token store", e);
+            return null;
         }
-        
-        // Set the new TT
-        copy.addHeader(TT_HEADER, newTT);
-        return copy;
     }
 
     /**
-     * Helper method to clone request entity safely, handling both repeatable and non-repeatable entities.
-     * For non-repeatable entities, buffers the content to allow reuse.
+     * Publishes tokens to the token store, unless another client has stored newer ones meanwhile.
+     * Called under the auth lock.
      */
-    private <T extends ClassicHttpRequest> T cloneRequestWithEntity(T target, ClassicHttpRequest source) throws IOException {
-        if (!(source instanceof org.apache.hc.core5.http.HttpEntityContainer)) {
-            return target;
+    private void storeTokens(final PrincipalSession session, final AuthTokens tokens) {
+        if (tokenStore == null) {
+            return;
         }
-        
-        org.apache.hc.core5.http.HttpEntity entity = 
-            ((org.apache.hc.core5.http.HttpEntityContainer) source).getEntity();
-        
-        if (entity == null) {
-            return target;
+        final TokenBundle bundle = tokens.getTt() != null
+                ? new TokenBundle(tokens.getSst(), tokens.getTt(), tokens.getTtLifetime())
+                : null;
+        try {
+            if (tokenStore.compareAndSet(session.getStoreKey(), session.getStoreVersion(), bundle)) {
+                session.setStoreVersion(session.getStoreVersion() + 1);
+            }
+            // otherwise keep own tokens, both are valid; the store version is left behind, so that
+            // the stored ones are seen as newer and adopted on the next refresh
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to store tokens to the token store", e);
         }
-        
-        // Check if entity is repeatable - if so, we can reuse it directly
-        if (entity.isRepeatable()) {
-            if (target instanceof org.apache.hc.core5.http.HttpEntityContainer) {
-                ((org.apache.hc.core5.http.HttpEntityContainer) target).setEntity(entity);
+    }
+
+    /**
+     * Obtains tokens newer than the given stale ones through the coordinator and schedules their renewal.
+     */
+    private CompletableFuture<AuthTokens> refreshTokens(final PrincipalSession session, final AuthTokens stale,
+                                                        final GoodDataChallengeType challenge) {
+        final CompletableFuture<AuthTokens> refresh = session.getCoordinator().refresh(stale, current -> {
+            try {
+                return CompletableFuture.completedFuture(obtainTokens(session, current, challenge));
+            } catch (IOException | RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
             }
-        } else {
-            // Entity is not repeatable - buffer it for reuse
-            log.debug("Buffering non-repeatable entity for retry");
-            byte[] content = EntityUtils.toByteArray(entity);
-            String contentTypeStr = entity.getContentType();
-            ContentType contentType = contentTypeStr != null ? 
-                ContentType.parseLenient(contentTypeStr) : ContentType.DEFAULT_BINARY;
-            
-            ByteArrayEntity bufferedEntity = new ByteArrayEntity(content, contentType);
-            if (target instanceof org.apache.hc.core5.http.HttpEntityContainer) {
-                ((org.apache.hc.core5.http.HttpEntityContainer) target).setEntity(bufferedEntity);
+        });
+        return refresh.thenApply(tokens -> {
+            scheduleRenewal(session, tokens);
+            return tokens;
+        });
+    }
+
+    /**
+     * Renews TT before it expires, called by the renewal scheduler. Requests keep using the old TT until
+     * the new one is installed. Idle principals are evicted instead.
+     */
+    private void renewTt(final PrincipalSession session, final AuthTokens tokens) {
+        if (session != defaultSession && principals.evictIfIdle(session)) {
+            return;
+        }
+        refreshTokens(session, tokens, GoodDataChallengeType.TT).whenComplete((renewed, failure) -> {
+            if (failure != null) {
+                log.warn("Unable to renew TT in advance, it will be refreshed on demand", failure);
             }
+        });
+    }
+
+    private static void scheduleRenewal(final PrincipalSession session, final AuthTokens tokens) {
+        if (session.getRenewalScheduler() != null) {
+            session.getRenewalScheduler().schedule(tokens);
+        }
+    }
+
+    /**
+     * Waits for the shared token refresh result, rethrowing its failure as is.
+     */
+    private static AuthTokens awaitTokens(final CompletableFuture<AuthTokens> refresh) throws IOException {
+        try {
+            return refresh.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for token refresh", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new GoodDataAuthException("Unable to refresh tokens", cause);
         }
-        
-        return target;
     }
 
-    private boolean refreshTt() throws IOException {
+    /**
+     * Obtains a new TT for the given SST.
+     * @return new TT or {@code null} when the SST is no longer valid
+     */
+    private String refreshTt(final String sst) throws IOException {
         log.debug("Obtaining TT");
         final HttpGet request = new HttpGet(TOKEN_URL);
+        final long start = System.nanoTime();
+        String tt = null;
         try {
 
             request.addHeader(SST_HEADER, sst);
 
-            return httpClient.execute(authHost, request, (HttpContext) null, response -> {
+            tt = httpClient.execute(authHost, request, (HttpContext) null, response -> {
                 int status = response.getCode();
 
                 switch (status) {
                     case HttpStatus.SC_OK:
-                        tt = TokenUtils.extractTT(response);
-                        return true;
+                        return TokenUtils.extractTT(response);
                     case HttpStatus.SC_UNAUTHORIZED:
-                        return false;
+                        return null;
                     default:
                         throw new GoodDataAuthException("Unable to obtain TT, HTTP status: " + status);
                 }
             });
+            return tt;
         } finally {
             request.reset();
+            listener.ttRefreshed(System.nanoTime() - start, tt != null);
         }
     }
 
@@ -279,50 +532,389 @@ public class GoodDataHttpClient {
      */
     public ClassicHttpResponse execute(HttpHost target, ClassicHttpRequest request, HttpContext context) throws IOException {
         notNull(request, "Request can't be null");
-        // Using write lock for all requests to prevent deadlock scenarios where:
-        // 1. Thread A holds read lock and calls handleResponse (needs write lock)
-        // 2. Thread B waits for write lock to refresh tokens
-        // 3. Deadlock occurs as Thread A can't upgrade from read to write lock
-        // Trade-off: Serializes all requests but ensures thread safety during token refresh
-        final Lock lock = rwLock.writeLock();
-        lock.lock();
+
+        // Always check logout even if TT is null, if it's a logout request
+        final PrincipalSession session = getSession(context);
+        if (tokenStore != null && !session.isStoreLoaded()) {
+            loadStoredTokens(session);
+        }
+        if (isLogoutRequest(target, request)) {
+            return logout(session, target, request);
+        }
+        if (isCoalescible(request, context)) {
+            return decode(request, requestCoalescer.execute(
+                    RequestCoalescer.key(session.getPrincipal(), target, request, TT_HEADER),
+                    getSpillThreshold(context), () -> executeGet(target, request, context, session),
+                    listener::requestCoalesced));
+        }
+        return decode(request, executeGet(target, request, context, session));
+    }
+
+    /**
+     * Sends the request, using the response cache for GETs when enabled.
+     */
+    private ClassicHttpResponse executeGet(final HttpHost target, final ClassicHttpRequest request,
+                                           final HttpContext context, final PrincipalSession session)
+            throws IOException {
+        if (isCacheable(request, context)) {
+            return executeCached(target, request, session, context, false);
+        }
+        return executeAuthenticated(target, request, context, session);
+    }
+
+    /**
+     * Sends the request with the principal's tokens, refreshing them and retrying the request when challenged.
+     */
+    private ClassicHttpResponse executeAuthenticated(final HttpHost target, final ClassicHttpRequest request,
+                                                     final HttpContext context, final PrincipalSession session)
+            throws IOException {
+        // No lock on the hot path - the token snapshot is immutable and replaced atomically on refresh
+        final AuthTokens tokens = session.getCoordinator().current();
+
+        // large body is sent only once the server accepts the tokens
+        final boolean expectContinue = isExpectContinue(request);
+        final boolean compress = isCompressible(request);
+        final HttpEntity entity = compress ? new GzipCompressingEntity(request.getEntity()) : request.getEntity();
+        // non-repeatable body is recorded while sent, so the request can be replayed after a challenge
+        final RecordingEntity recording = entity != null && !entity.isRepeatable()
+                ? new RecordingEntity(entity, requestReplayLimit, spillDirectory, bufferPool)
+                : null;
+        // compressed responses are decoded only once read from the buffered or streamed body
+        final boolean acceptEncoding = decodeResponses && !request.containsHeader(HttpHeaders.ACCEPT_ENCODING);
+
+        // the caller's request is never modified, the sent one adds TT and the rest on top of it
+        final ClassicHttpRequest sent = tokens.getTtHeader() != null || recording != null || expectContinue
+                || compress || acceptEncoding
+                ? withTt(request, tokens.getTtHeader())
+                : request;
+        if (recording != null || compress) {
+            sent.setEntity(recording != null ? recording : entity);
+        }
+        if (expectContinue) {
+            sent.addHeader(EXPECT_CONTINUE);
+        }
+        if (acceptEncoding) {
+            sent.addHeader(ACCEPT_ENCODING);
+        }
         try {
+            ClassicHttpResponse resp = sendLimited(target, sent, context, session, recording);
 
-            // --- PATCH: Always check logout even if TT is null, if it's a logout request ---
-            if (isLogoutRequest(target, request)) {
-                try {
+            if (resp.getCode() == HttpStatus.SC_UNAUTHORIZED) {
+                return handleResponse(target, sent, resp, context, session, tokens, recording);
+            }
 
-                    sstStrategy.logout(httpClient, target, request.getRequestUri(), sst, tt);
-                    tt = null;
-                    sst = null;
-                    // Return a dummy response for logout success
-                    return new BasicClassicHttpResponse(HttpStatus.SC_NO_CONTENT, "Logout successful");
-                } catch (GoodDataLogoutException e) {
-                    throw new GoodDataHttpStatusException(e.getStatusCode(), e.getStatusText());
-                }
+            return resp;
+        } finally {
+            if (recording != null) {
+                recording.release();
             }
-            // --- END PATCH ---
+        }
+    }
+
+    /**
+     * @return request adding given TT to the caller's request, or replacing TT of an already wrapped one
+     */
+    private static AuthenticatedRequest withTt(final ClassicHttpRequest request, final Header tt) {
+        return request instanceof AuthenticatedRequest
+                ? ((AuthenticatedRequest) request).withTt(tt)
+                : new AuthenticatedRequest(request, tt);
+    }
+
+    private boolean isCoalescible(final ClassicHttpRequest request, final HttpContext context) {
+        return requestCoalescer != null
+                && "GET".equals(request.getMethod())
+                && request.getEntity() == null
+                && !isStreamResponse(context);
+    }
 
-            if (tt != null) {
-                request.addHeader(TT_HEADER, tt);
+    private boolean isCacheable(final ClassicHttpRequest request, final HttpContext context) {
+        return responseCache != null
+                && "GET".equals(request.getMethod())
+                && !isStreamResponse(context)
+                && !request.containsHeader(HttpHeaders.IF_NONE_MATCH)
+                && !request.containsHeader(HttpHeaders.IF_MODIFIED_SINCE)
+                && !request.containsHeader(HttpHeaders.RANGE)
+                && !CachedResponse.parseCacheControl(request).containsKey("no-store");
+    }
+
+    /**
+     * Serves the GET from the response cache when the cached response is fresh. Otherwise the cached response is
+     * revalidated, in the background when it may be served stale, and the new response is cached.
+     * @param background whether this is the background revalidation, which never serves the cached response
+     */
+    private ClassicHttpResponse executeCached(final HttpHost target, final ClassicHttpRequest request,
+                                              final PrincipalSession session, final HttpContext context,
+                                              final boolean background) throws IOException {
+        final String key = ResponseCache.key(session.getPrincipal(), target, request);
+        final CachedResponse cached = responseCache.get(key);
+        if (cached != null && !background && !CachedResponse.parseCacheControl(request).containsKey("no-cache")) {
+            final long now = System.nanoTime();
+            if (cached.isFresh(now)) {
+                listener.cacheHit();
+                return cached.toResponse();
+            }
+            if (revalidationExecutor != null && cached.isStaleUsable(now)) {
+                revalidateInBackground(target, request, session, cached);
+                listener.cacheHit();
+                return cached.toResponse();
+            }
+        }
+        ClassicHttpRequest conditional = request;
+        if (cached != null) {
+            // validators are kept by the request retried after a challenge
+            conditional = new AuthenticatedRequest(request, null);
+            if (cached.getETag() != null) {
+                conditional.addHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag());
             }
+            if (cached.getLastModified() != null) {
+                conditional.addHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+            }
+        }
+        final ClassicHttpResponse response = executeAuthenticated(target, conditional, context, session);
+        if (cached == null) {
+            return cacheResponse(key, response);
+        }
+        final boolean modified = response.getCode() != HttpStatus.SC_NOT_MODIFIED;
+        listener.cacheRevalidated(modified);
+        if (modified) {
+            return cacheResponse(key, response);
+        }
+        EntityUtils.consume(response.getEntity());
+        Closer.closeQuietly(response);
+        final CachedResponse revalidated = cached.revalidated(response);
+        responseCache.put(key, revalidated);
+        return revalidated.toResponse();
+    }
 
-            ClassicHttpResponse resp = this.httpClient.execute(target, request, context, response -> copyResponseEntity(response));
+    /**
+     * Caches the buffered response when it is cacheable and fits the cache.
+     * @return response to return to the caller
+     */
+    private ClassicHttpResponse cacheResponse(final String key, final ClassicHttpResponse response) throws IOException {
+        final HttpEntity entity = response.getEntity();
+        final CachedResponse entry = response.getCode() == HttpStatus.SC_OK && entity != null
+                && entity.getContentLength() >= 0 && entity.getContentLength() <= responseCache.getMaxEntryBytes()
+                ? CachedResponse.of(response, EntityUtils.toByteArray(entity))
+                : null;
+        if (entry == null) {
+            responseCache.remove(key);
+            return response;
+        }
+        Closer.closeQuietly(response);
+        responseCache.put(key, entry);
+        return entry.toResponse();
+    }
 
-            if (resp.getCode() == HttpStatus.SC_UNAUTHORIZED) {
-                // 👇 Proper handling of InterruptedException
+    /**
+     * Revalidates the stale cached response on the revalidation executor, unless it is being revalidated already.
+     */
+    private void revalidateInBackground(final HttpHost target, final ClassicHttpRequest request,
+                                        final PrincipalSession session, final CachedResponse cached) {
+        if (!cached.startRevalidation()) {
+            return;
+        }
+        final HttpGet revalidation = new HttpGet(request.getRequestUri());
+        for (Header header : request.getHeaders()) {
+            if (!TT_HEADER.equalsIgnoreCase(header.getName())) {
+                revalidation.addHeader(header);
+            }
+        }
+        // the caller's context isn't thread-safe
+        final HttpContext context = HttpClientContext.create();
+        context.setAttribute(STREAM_RESPONSE, false);
+        try {
+            revalidationExecutor.execute(() -> {
                 try {
-                    return handleResponse(target, request, resp, context);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt(); // Preserve interrupt status
-                    throw new IOException("Interrupted while handling authentication challenge", e);
+                    Closer.close(executeCached(target, revalidation, session, context, true));
+                } catch (IOException | RuntimeException e) {
+                    cached.revalidationFailed();
+                    log.debug("Unable to revalidate cached response of {}", revalidation.getRequestUri(), e);
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            cached.revalidationFailed();
+        }
+    }
+
+    private boolean isCompressible(final ClassicHttpRequest request) {
+        final HttpEntity entity = request.getEntity();
+        if (requestCompressionThreshold < 0 || entity == null || entity.getContentEncoding() != null
+                || request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+            return false;
+        }
+        final long length = entity.getContentLength();
+        if (length >= 0 && length < requestCompressionThreshold) {
+            return false;
+        }
+        final String path = request.getPath();
+        for (String prefix : compressedPaths) {
+            if (path != null && path.startsWith(prefix)) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            return resp;
+    /**
+     * Decodes the compressed body of the response as it is read, so the compressed one is what is buffered, cached
+     * and shared by coalesced requests. Responses to requests accepting an encoding by themselves are left as they are.
+     */
+    private ClassicHttpResponse decode(final ClassicHttpRequest request, final ClassicHttpResponse response) {
+        final HttpEntity entity = response.getEntity();
+        if (!decodeResponses || entity == null || entity.getContentEncoding() == null
+                || request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            return response;
+        }
+        final InputStreamFactory decoder = DECODERS.get(entity.getContentEncoding().trim().toLowerCase(Locale.ROOT));
+        if (decoder == null) {
+            return response;
+        }
+        response.setEntity(new DecompressingEntity(entity, decoder));
+        response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+        response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+        response.removeHeaders(HttpHeaders.CONTENT_MD5);
+        return response;
+    }
+
+    private boolean isExpectContinue(final ClassicHttpRequest request) {
+        final HttpEntity entity = request.getEntity();
+        if (expectContinueThreshold < 0 || entity == null || request.containsHeader(HttpHeaders.EXPECT)) {
+            return false;
+        }
+        final long length = entity.getContentLength();
+        return length < 0 || length > expectContinueThreshold;
+    }
+
+    /**
+     * Sends the request once the rate limiter of the principal and host lets it through. Throttled requests are
+     * retried after the time the server asked for, while their body can be replayed. Requests of non-idempotent
+     * methods are retried only when enabled.
+     * @param recording recorded non-repeatable body of the request, may be null
+     */
+    private ClassicHttpResponse sendLimited(final HttpHost target, final ClassicHttpRequest request,
+                                            final HttpContext context, final PrincipalSession session,
+                                            final RecordingEntity recording) throws IOException {
+        final RateLimiter rateLimiter = session.getRateLimiter(target,
+                host -> new RateLimiter(rateLimit, rateLimitBurst));
+        final int retries = retryThrottledNonIdempotent || Method.isIdempotent(request.getMethod())
+                ? throttledRetries
+                : 0;
+        for (int retry = 0; ; retry++) {
+            final long waited = rateLimiter.acquire();
+            if (waited > 0) {
+                listener.rateLimitAwaited(waited);
+            }
+            final ClassicHttpResponse response = send(target, request, context);
+            final Duration retryAfter = getRetryAfter(response);
+            if (retryAfter == null) {
+                rateLimiter.succeeded();
+                return response;
+            }
+            listener.throttled(response.getCode(), retryAfter.toNanos());
+            rateLimiter.throttled(retryAfter.compareTo(maxRetryAfter) > 0 ? maxRetryAfter : retryAfter);
+            if (retry >= retries || retryAfter.compareTo(maxRetryAfter) > 0 || !replay(request, recording)) {
+                return response;
+            }
+            log.debug("Request throttled with HTTP {}, retrying after {} ms", response.getCode(), retryAfter.toMillis());
+            EntityUtils.consume(response.getEntity());
+            Closer.closeQuietly(response);
+        }
+    }
+
+    /**
+     * Prepares the request body to be sent again.
+     * @return false when the body can't be replayed
+     */
+    private boolean replay(final ClassicHttpRequest request, final RecordingEntity recording) throws IOException {
+        if (recording == null) {
+            return true;
+        }
+        try {
+            final HttpEntity replayed = recording.replay();
+            // unsent body is still recorded by the next attempt
+            if (replayed != recording.getOriginal()) {
+                request.setEntity(replayed);
+            }
+            return true;
+        } catch (GoodDataRequestReplayException e) {
+            log.debug("Throttled request not retried", e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns how long the server asked to wait before the request is retried.
+     * @return time to wait or null when the request wasn't throttled
+     */
+    static Duration getRetryAfter(final ClassicHttpResponse response) {
+        final int status = response.getCode();
+        final Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (status != HttpStatus.SC_TOO_MANY_REQUESTS && (status != HttpStatus.SC_SERVICE_UNAVAILABLE || header == null)) {
+            return null;
+        }
+        if (header == null) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        final String value = header.getValue().trim();
+        try {
+            return Duration.ofSeconds(Math.max(Long.parseLong(value), 0));
+        } catch (NumberFormatException e) {
+            final Instant date = DateUtils.parseStandardDate(value);
+            if (date == null) {
+                return DEFAULT_RETRY_AFTER;
+            }
+            final Duration wait = Duration.between(Instant.now(), date);
+            return wait.isNegative() ? Duration.ZERO : wait;
+        }
+    }
+
+    /**
+     * Sends the request either returning the live response or its buffered copy.
+     */
+    private ClassicHttpResponse send(final HttpHost target, final ClassicHttpRequest request, final HttpContext context)
+            throws IOException {
+        if (isStreamResponse(context)) {
+            return this.httpClient.executeOpen(target, request, context);
+        }
+        final long spillThreshold = getSpillThreshold(context);
+        return this.httpClient.execute(target, request, context, response -> copyResponseEntity(response, spillThreshold));
+    }
+
+    private boolean isStreamResponse(final HttpContext context) {
+        final Object override = context != null ? context.getAttribute(STREAM_RESPONSE) : null;
+        return override instanceof Boolean ? (Boolean) override : streamResponses;
+    }
 
+    private long getSpillThreshold(final HttpContext context) {
+        final Object override = context != null ? context.getAttribute(RESPONSE_SPILL_THRESHOLD) : null;
+        return override instanceof Number ? ((Number) override).longValue() : responseSpillThreshold;
+    }
+
+    /**
+     * Performs the logout and forgets current tokens of the principal. Serialized with its token refresh.
+     */
+    private ClassicHttpResponse logout(final PrincipalSession session, final HttpHost target,
+                                       final ClassicHttpRequest request) throws IOException {
+        final Lock authLock = lockAuth(session);
+        try {
+            final TokenRefreshCoordinator coordinator = session.getCoordinator();
+            final AuthTokens current = coordinator.current();
+            session.getSstStrategy().logout(httpClient, target, request.getRequestUri(), current.getSst(), current.getTt());
+            coordinator.reset();
+            if (responseCache != null) {
+                responseCache.removePrincipal(session.getPrincipal());
+            }
+            storeTokens(session, coordinator.current());
+            scheduleRenewal(session, coordinator.current());
+            if (session != defaultSession) {
+                principals.remove(session);
+            }
+            // Return a dummy response for logout success
+            return new BasicClassicHttpResponse(HttpStatus.SC_NO_CONTENT, "Logout successful");
+        } catch (GoodDataLogoutException e) {
+            throw new GoodDataHttpStatusException(e.getStatusCode(), e.getStatusText());
         } finally {
-            lock.unlock();
+            authLock.unlock();
         }
     }
 
@@ -344,41 +936,107 @@ public class GoodDataHttpClient {
             // Then apply the response handler
             return responseHandler.handleResponse(response);
         } finally {
-            // Ensure response entity is properly consumed to release resources
+            // Ensure response entity is properly consumed and the connection of a streamed response released
             EntityUtils.consumeQuietly(response.getEntity());
+            Closer.closeQuietly(response);
         }
     }
+    /**
+     * @return state of the circuit breaker guarding token retrieval of the default principal
+     */
+    public AuthCircuitState getAuthCircuitState() {
+        return defaultSession.getCircuitBreaker().getState();
+    }
+
+    /**
+     * @return pool of the buffered bodies, null when not enabled
+     */
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Replaces current tokens, used by tests to simulate an already authenticated client.
+     */
+    void setTokens(final String sst, final String tt) {
+        scheduleRenewal(defaultSession, defaultSession.getCoordinator().install(sst, tt));
+    }
+
     /**
      * Util for logout request check.
      */
     private boolean isLogoutRequest(HttpHost target, ClassicHttpRequest request) {
-        return authHost.equals(target)
-                && "DELETE".equals(request.getMethod())
-                && URI.create(request.getRequestUri()).getPath().startsWith(LOGIN_URL);
+        // path of the request line, the query is irrelevant for the prefix
+        return "DELETE".equals(request.getMethod())
+                && authHost.equals(target)
+                && request.getPath() != null
+                && request.getPath().startsWith(LOGIN_URL);
     }
 
     /**
      * Helper method to copy response entity to avoid stream closure issues.
-     * Returns a new response with the same properties but a copied entity.
+     * Returns a new response with the same properties but a copied entity, kept in memory up to the given threshold
+     * and in a temporary file above it.
      */
-    private ClassicHttpResponse copyResponseEntity(ClassicHttpResponse response) throws IOException {
-        if (response.getEntity() == null) {
+    private ClassicHttpResponse copyResponseEntity(ClassicHttpResponse response, long spillThreshold) throws IOException {
+        final HttpEntity entity = response.getEntity();
+        if (entity == null) {
             return response;
         }
         
+        final ContentType contentType = parseContentType(entity.getContentType());
+
         // Copy the entity content
-        byte[] content = EntityUtils.toByteArray(response.getEntity());
-        String contentTypeStr = response.getEntity().getContentType();
-        ContentType contentType = contentTypeStr != null ? 
-            ContentType.parseLenient(contentTypeStr) : ContentType.DEFAULT_BINARY;
+        final SpillingOutputStream buffer = new SpillingOutputStream(spillThreshold, spillDirectory, bufferPool);
+        final HttpEntity bufferedEntity;
+        try {
+            entity.writeTo(buffer);
+            bufferedEntity = buffer.toEntity(contentType, entity.getContentEncoding());
+        } catch (IOException | RuntimeException e) {
+            buffer.discard();
+            throw e;
+        }
+        if (buffer.isSpilled()) {
+            log.debug("Response body of {} bytes spilled to temporary file", buffer.size());
+        }
+        listener.responseBuffered(buffer.size(), buffer.isSpilled());
         
         // Create a new response with copied entity
         BasicClassicHttpResponse newResponse = new BasicClassicHttpResponse(response.getCode(), response.getReasonPhrase());
-        for (Header header : response.getHeaders()) {
-            newResponse.addHeader(header);
-        }
-        newResponse.setEntity(new ByteArrayEntity(content, contentType));
+        newResponse.setHeaders(response.getHeaders());
+        newResponse.setEntity(bufferedEntity);
         
         return newResponse;
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses the content type, reusing the last parsed one, as responses of the API mostly have the same one.
+     */
+    private ContentType parseContentType(final String value) {
+        if (value == null) {
+            return ContentType.DEFAULT_BINARY;
+        }
+        final Map.Entry<String, ContentType> last = lastContentType;
+        if (last != null && last.getKey().equals(value)) {
+            return last.getValue();
+        }
+        final ContentType parsed = ContentType.parseLenient(value);
+        lastContentType = new AbstractMap.SimpleImmutableEntry<>(value, parsed);
+        return parsed;
+    }
+
+    /**
+     * Stops renewing tokens in advance and closes the underlying client when it was created by this class,
+     * a client or a connection manager set by the caller is left open.
+     */
+    @Override
+    public void close() {
+        defaultSession.close();
+        if (principals != null) {
+            principals.close();
+        }
+        if (ownedHttpClient != null) {
+            ownedHttpClient.close(CloseMode.GRACEFUL);
+        }
+    }
+}
@@ -0,0 +1,670 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.io.HttpClientConnectionManager;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.noNullElements;
+import static org.apache.commons.lang3.Validate.notEmpty;
+import static org.apache.commons.lang3.Validate.notNull;
+import static org.apache.commons.lang3.Validate.validState;
+
+/**
+ * Builder for {@link GoodDataHttpClient} instances which need more than the defaults of its constructors.
+ * <pre>
+ * GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+ *     .setAuthHost(host)
+ *     .setSstStrategy(sstStrategy)
+ *     .setStreamResponses(true)
+ *     .build();
+ * </pre>
+ * Unless an HTTP client is set, a client with a pooling connection manager tuned for server workloads is created:
+ * connections are leased without a global pool lock, kept alive for shorter time than GoodData load balancers keep
+ * idle connections open, evicted when idle and validated before reuse after inactivity. Compressed responses of such
+ * a client are decoded by {@link GoodDataHttpClient} lazily, as they are read, so buffered bodies stay compressed.
+ */
+public class GoodDataHttpClientBuilder {
+
+    private HttpClient httpClient;
+    private HttpClientConnectionManager connectionManager;
+    private int maxConnectionsPerRoute = 200;
+    private Duration keepAlive = Duration.ofSeconds(50);
+    private Duration idleEviction = Duration.ofSeconds(30);
+    private Duration validateAfterInactivity = Duration.ofSeconds(2);
+    private HttpHost authHost;
+    private SSTRetrievalStrategy sstStrategy;
+    private boolean streamResponses;
+    private long responseSpillThreshold = Long.MAX_VALUE;
+    private Path spillDirectory;
+    private long bufferPoolSize;
+    private boolean directBuffers;
+    private long requestReplayLimit = RecordingEntity.MEMORY_THRESHOLD;
+    private long expectContinueThreshold = -1;
+    private long requestCompressionThreshold = -1;
+    private List<String> compressedPaths = Collections.emptyList();
+    private ScheduledExecutorService tokenRenewalExecutor;
+    private boolean virtualThreadRenewals;
+    private Duration ttLifetime;
+    private Duration ttRenewalMargin = Duration.ofSeconds(30);
+    private Function<String, ? extends SSTRetrievalStrategy> principalSstStrategies;
+    private int maxPrincipals = 10_000;
+    private Duration principalIdleTimeout = Duration.ofHours(1);
+    private TokenStore tokenStore;
+    private int authFailureThreshold;
+    private Duration authInitialBackoff = Duration.ofSeconds(1);
+    private Duration authMaxBackoff = Duration.ofMinutes(5);
+    private double rateLimit;
+    private int rateLimitBurst = 1;
+    private int throttledRetries = 3;
+    private Duration maxRetryAfter = Duration.ofMinutes(1);
+    private boolean retryThrottledNonIdempotent;
+    private long responseCacheSize;
+    private Executor revalidationExecutor;
+    private boolean coalesceGets;
+    private GoodDataHttpClientListener listener = GoodDataHttpClientListener.NOOP;
+
+    public static GoodDataHttpClientBuilder create() {
+        return new GoodDataHttpClientBuilder();
+    }
+
+    protected GoodDataHttpClientBuilder() {
+    }
+
+    /**
+     * Sets the underlying HTTP client. When not set, a client with a pooling connection manager is created,
+     * the connection settings of this builder apply only to the created client.
+     * @param httpClient HTTP client
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setHttpClient(final HttpClient httpClient) {
+        this.httpClient = httpClient;
+        return this;
+    }
+
+    /**
+     * Sets the connection manager of the created HTTP client, e.g. one shared by many clients. A shared manager
+     * is neither closed nor evicted by the clients, its owner is responsible for that.
+     * @param connectionManager connection manager, null (default) to create a pool of this client
+     * @return this builder
+     * @see #buildConnectionManager()
+     */
+    public GoodDataHttpClientBuilder setConnectionManager(final HttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+        return this;
+    }
+
+    /**
+     * Sets the size of the created connection pool. The pool limits connections per route only, GoodData is usually
+     * accessed through a single one.
+     * @param maxPerRoute max number of connections to a single route, 200 by default
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setMaxConnectionsPerRoute(final int maxPerRoute) {
+        isTrue(maxPerRoute > 0, "connection limit must be positive");
+        this.maxConnectionsPerRoute = maxPerRoute;
+        return this;
+    }
+
+    /**
+     * Sets max time an idle connection is kept for reuse, shorter keep-alive sent by the server takes precedence.
+     * It should be shorter than the idle timeout of load balancers, so that connections closed by them aren't reused.
+     * @param keepAlive max keep-alive, 50 seconds by default
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setKeepAlive(final Duration keepAlive) {
+        notNull(keepAlive, "keep-alive can't be null");
+        isTrue(!keepAlive.isNegative() && !keepAlive.isZero(), "keep-alive must be positive");
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * Sets after how long idle connections of the created pool are closed in the background.
+     * @param idleEviction max idle time, 30 seconds by default, null to close idle connections only when leased
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setIdleEviction(final Duration idleEviction) {
+        isTrue(idleEviction == null || !idleEviction.isNegative() && !idleEviction.isZero(),
+                "idle eviction must be positive");
+        this.idleEviction = idleEviction;
+        return this;
+    }
+
+    /**
+     * Sets after how long inactivity a pooled connection is checked for being closed by the server before reuse.
+     * @param validateAfterInactivity inactivity, 2 seconds by default
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setValidateAfterInactivity(final Duration validateAfterInactivity) {
+        notNull(validateAfterInactivity, "validate after inactivity can't be null");
+        isTrue(!validateAfterInactivity.isNegative(), "validate after inactivity can't be negative");
+        this.validateAfterInactivity = validateAfterInactivity;
+        return this;
+    }
+
+    /**
+     * Sets the host used to obtain SST and TT (required).
+     * @param authHost authentication host
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setAuthHost(final HttpHost authHost) {
+        this.authHost = authHost;
+        return this;
+    }
+
+    /**
+     * Sets the strategy used to obtain SST (required).
+     * @param sstStrategy SST retrieval strategy
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setSstStrategy(final SSTRetrievalStrategy sstStrategy) {
+        this.sstStrategy = sstStrategy;
+        return this;
+    }
+
+    /**
+     * Sets whether responses are returned as live streams instead of being fully buffered in memory.
+     * Streamed responses hold the connection until they are closed by the caller.
+     * Can be overridden per request by {@link GoodDataHttpClient#STREAM_RESPONSE} context attribute.
+     * @param streamResponses true to stream responses, false (default) to buffer them
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setStreamResponses(final boolean streamResponses) {
+        this.streamResponses = streamResponses;
+        return this;
+    }
+
+    /**
+     * Sets the max size of a buffered response body kept in memory. Larger bodies are spilled to a temporary file
+     * which is deleted when the response is closed. Not used for streamed responses.
+     * Can be overridden per request by {@link GoodDataHttpClient#RESPONSE_SPILL_THRESHOLD} context attribute.
+     * @param responseSpillThreshold threshold in bytes, by default bodies are always kept in memory
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setResponseSpillThreshold(final long responseSpillThreshold) {
+        isTrue(responseSpillThreshold >= 0, "threshold can't be negative");
+        this.responseSpillThreshold = responseSpillThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the directory for temporary files of spilled response bodies and recorded request bodies.
+     * @param spillDirectory directory, the default temporary directory when not set
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setSpillDirectory(final Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    /**
+     * Sets a pool of buffers keeping buffered response bodies and recorded request bodies in memory, instead of
+     * an array allocated for every body. Bodies are kept in buffers of 4 KiB to 256 KiB, which are returned to
+     * the pool when the response is closed, so responses must be closed. Bodies which don't fit the pool are
+     * spilled to a temporary file. Responses garbage collected without being closed are logged as leaks and their
+     * buffers returned to the pool.
+     * @param maxBytes max size of all buffers of the pool, 0 (default) to allocate an array for every body
+     * @param direct true to allocate direct buffers outside of the heap, false for heap buffers
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setBufferPool(final long maxBytes, final boolean direct) {
+        isTrue(maxBytes >= 0, "pool size can't be negative");
+        this.bufferPoolSize = maxBytes;
+        this.directBuffers = direct;
+        return this;
+    }
+
+    /**
+     * Sets the max size of a non-repeatable request body which can be sent again after an authentication
+     * challenge. Such bodies are recorded while being sent, in memory up to 256 KiB and then in a temporary file.
+     * Requests with larger bodies fail with {@link GoodDataRequestReplayException} when challenged.
+     * @param requestReplayLimit limit in bytes, 256 KiB by default, so that bodies are never spilled to a file
+     *                           unless the limit is raised, 0 disables recording
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setRequestReplayLimit(final long requestReplayLimit) {
+        isTrue(requestReplayLimit >= 0, "limit can't be negative");
+        this.requestReplayLimit = requestReplayLimit;
+        return this;
+    }
+
+    /**
+     * Enables {@code Expect: 100-continue} for requests with bodies larger than the threshold. Their body is sent
+     * only after the server accepts the request headers, so a request with an expired TT is rejected before its body
+     * is transferred and only the retry with refreshed TT sends it. Bodies of unknown length are always considered
+     * large. Servers not supporting the expectation delay such requests by the HTTP client's continue timeout.
+     * @param expectContinueThreshold threshold in bytes, negative (default) disables the expectation
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setExpectContinueThreshold(final long expectContinueThreshold) {
+        this.expectContinueThreshold = expectContinueThreshold;
+        return this;
+    }
+
+    /**
+     * Enables gzip compression of request bodies sent to endpoints which accept it. Bodies larger than the threshold
+     * and bodies of unknown length are compressed while they are sent, unless they have a content encoding already.
+     * @param threshold min size of a compressed body in bytes
+     * @param pathPrefixes prefixes of the paths of the endpoints accepting compressed bodies, e.g. {@code /gdc/md/}
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setRequestCompression(final long threshold, final String... pathPrefixes) {
+        isTrue(threshold >= 0, "threshold can't be negative");
+        notEmpty(pathPrefixes, "path prefixes can't be empty");
+        noNullElements(pathPrefixes, "path prefix can't be null");
+        this.requestCompressionThreshold = threshold;
+        this.compressedPaths = List.of(pathPrefixes);
+        return this;
+    }
+
+    /**
+     * Enables proactive TT renewal. TT is renewed in the background shortly before it expires, so requests don't
+     * need to wait for TT refresh after an authentication challenge. The executor is not shut down by the client.
+     * @param tokenRenewalExecutor executor running the renewals, null (default) to refresh TT only on demand
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setTokenRenewalExecutor(final ScheduledExecutorService tokenRenewalExecutor) {
+        this.tokenRenewalExecutor = tokenRenewalExecutor;
+        return this;
+    }
+
+    /**
+     * Runs proactive TT renewals on virtual threads, the renewal executor then only times them. A single platform
+     * thread can then serve as the renewal executor of many clients, as blocking renewal requests don't occupy it.
+     * Requires Java 21 or newer.
+     * @param virtualThreadRenewals true to run renewals on virtual threads, false (default) on the executor threads
+     * @return this builder
+     * @throws IllegalStateException when enabled on Java without virtual threads
+     */
+    public GoodDataHttpClientBuilder setVirtualThreadRenewals(final boolean virtualThreadRenewals) {
+        validState(!virtualThreadRenewals || VirtualThreads.isSupported(), "Virtual threads require Java 21 or newer");
+        this.virtualThreadRenewals = virtualThreadRenewals;
+        return this;
+    }
+
+    /**
+     * Sets the TT lifetime used by proactive TT renewal. When not set, the lifetime reported by
+     * {@link SSTRetrievalStrategy#obtainTokens} is used, otherwise it is learned from the first expired TT.
+     * @param ttLifetime TT lifetime
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setTtLifetime(final Duration ttLifetime) {
+        isTrue(ttLifetime == null || !ttLifetime.isNegative() && !ttLifetime.isZero(), "TT lifetime must be positive");
+        this.ttLifetime = ttLifetime;
+        return this;
+    }
+
+    /**
+     * Sets how long before the expiry TT is renewed, TT is never renewed sooner than at half of its lifetime.
+     * @param ttRenewalMargin margin, 30 seconds by default
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setTtRenewalMargin(final Duration ttRenewalMargin) {
+        notNull(ttRenewalMargin, "margin can't be null");
+        isTrue(!ttRenewalMargin.isNegative(), "margin can't be negative");
+        this.ttRenewalMargin = ttRenewalMargin;
+        return this;
+    }
+
+    /**
+     * Enables serving many GoodData principals by one client. Requests select the principal by
+     * {@link GoodDataHttpClient#PRINCIPAL} context attribute, each principal has its own tokens and all of them share
+     * the underlying HTTP client and its connection pool.
+     * @param principalSstStrategies returns SST strategy of given principal, called when the principal is first used
+     *                               or used again after being evicted
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setPrincipalSstStrategies(
+            final Function<String, ? extends SSTRetrievalStrategy> principalSstStrategies) {
+        this.principalSstStrategies = principalSstStrategies;
+        return this;
+    }
+
+    /**
+     * Sets the max number of principals whose tokens are kept. When exceeded, the least recently used principal
+     * is evicted and logs in again on its next request.
+     * @param maxPrincipals max number of principals, 10 000 by default
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setMaxPrincipals(final int maxPrincipals) {
+        isTrue(maxPrincipals > 0, "max principals must be positive");
+        this.maxPrincipals = maxPrincipals;
+        return this;
+    }
+
+    /**
+     * Sets how long tokens of an unused principal are kept.
+     * @param principalIdleTimeout idle timeout, 1 hour by default
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setPrincipalIdleTimeout(final Duration principalIdleTimeout) {
+        notNull(principalIdleTimeout, "idle timeout can't be null");
+        isTrue(!principalIdleTimeout.isNegative(), "idle timeout can't be negative");
+        this.principalIdleTimeout = principalIdleTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the store sharing tokens with other clients, e.g. in other processes using the same account.
+     * Tokens are loaded from the store before the first request of a principal and before every token refresh,
+     * newly obtained tokens are stored.
+     * @param tokenStore token store, null (default) to keep tokens only in this client
+     * @return this builder
+     * @see MappedFileTokenStore
+     */
+    public GoodDataHttpClientBuilder setTokenStore(final TokenStore tokenStore) {
+        this.tokenStore = tokenStore;
+        return this;
+    }
+
+    /**
+     * Sets how many consecutive failures of SST or TT retrieval make following retrievals of the principal fail
+     * fast with {@link GoodDataAuthCircuitOpenException}, instead of overloading a failing authentication service.
+     * Retrievals never fail fast by default.
+     * @param authFailureThreshold number of failures, e.g. 3, 0 (default) to never fail fast
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setAuthFailureThreshold(final int authFailureThreshold) {
+        isTrue(authFailureThreshold >= 0, "threshold can't be negative");
+        this.authFailureThreshold = authFailureThreshold;
+        return this;
+    }
+
+    /**
+     * Sets for how long token retrieval fails fast after repeated failures. The time doubles with every failed retry
+     * up to the max and is randomly shortened by up to a half.
+     * @param initialBackoff time after the first failures, 1 second by default
+     * @param maxBackoff max time, 5 minutes by default
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setAuthBackoff(final Duration initialBackoff, final Duration maxBackoff) {
+        notNull(initialBackoff, "initial backoff can't be null");
+        notNull(maxBackoff, "max backoff can't be null");
+        isTrue(!initialBackoff.isNegative() && maxBackoff.compareTo(initialBackoff) >= 0,
+                "backoffs must be non-negative, the max one not shorter than the initial one");
+        this.authInitialBackoff = initialBackoff;
+        this.authMaxBackoff = maxBackoff;
+        return this;
+    }
+
+    /**
+     * Limits requests of every principal to every host on the client side. Requests over the limit wait in a queue.
+     * The limit adapts to the server: throttling responses lower it, accepted requests raise it back up to the max.
+     * @param requestsPerSecond max rate, 0 (default) for no client-side limit, the server's throttling is still
+     *                          honored
+     * @param burst number of requests sent at once after the principal was idle, 1 by default
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setRateLimit(final double requestsPerSecond, final int burst) {
+        isTrue(requestsPerSecond >= 0, "rate can't be negative");
+        isTrue(burst > 0, "burst must be positive");
+        this.rateLimit = requestsPerSecond;
+        this.rateLimitBurst = burst;
+        return this;
+    }
+
+    /**
+     * Sets how requests throttled by the server with HTTP 429, or 503 with {@code Retry-After}, are retried.
+     * Following requests of the principal to the host wait for the {@code Retry-After} time as well, up to the max.
+     * Throttled requests with a body which can't be replayed (see {@link #setRequestReplayLimit(long)}) and requests
+     * asked to wait longer than the max are not retried, the throttling response is returned. Requests of
+     * non-idempotent methods, e.g. POST, are retried only when enabled by {@link #setRetryThrottledNonIdempotent}.
+     * @param retries max number of retries of a request, 3 by default, 0 to return throttling responses
+     * @param maxRetryAfter max time to wait, 1 minute by default
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setThrottledRetries(final int retries, final Duration maxRetryAfter) {
+        isTrue(retries >= 0, "retries can't be negative");
+        notNull(maxRetryAfter, "max retry after can't be null");
+        isTrue(!maxRetryAfter.isNegative(), "max retry after can't be negative");
+        this.throttledRetries = retries;
+        this.maxRetryAfter = maxRetryAfter;
+        return this;
+    }
+
+    /**
+     * Sets whether throttled requests of non-idempotent methods, e.g. POST or PATCH, are retried as well. Enable it
+     * only when the server is known not to process throttled requests.
+     * @param retryThrottledNonIdempotent true to retry them, false (default) to return their throttling responses
+     * @return this builder
+     * @see #setThrottledRetries(int, Duration)
+     */
+    public GoodDataHttpClientBuilder setRetryThrottledNonIdempotent(final boolean retryThrottledNonIdempotent) {
+        this.retryThrottledNonIdempotent = retryThrottledNonIdempotent;
+        return this;
+    }
+
+    /**
+     * Enables caching of buffered GET responses. Responses are cached per principal, unless the server forbids that
+     * by {@code Cache-Control: no-store}. They are served without contacting the server for their {@code max-age}
+     * and then revalidated by a conditional request. Stale responses are served while revalidated in the background
+     * for the {@code stale-while-revalidate} time when the revalidation executor is set.
+     * @param maxBytes approximate max memory of the cached responses, 0 (default) to disable the cache; a single
+     *                 response may take up to an eighth of it
+     * @param revalidationExecutor executor revalidating stale responses in the background, null to always revalidate
+     *                             them before the response is returned
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setResponseCache(final long maxBytes, final Executor revalidationExecutor) {
+        isTrue(maxBytes >= 0, "cache size can't be negative");
+        this.responseCacheSize = maxBytes;
+        this.revalidationExecutor = revalidationExecutor;
+        return this;
+    }
+
+    /**
+     * Sets whether identical GETs running at the same time are sent only once. GETs of the same principal with the same
+     * target, URI and headers which start while an identical one is in flight wait for its response and get their
+     * own copy of it, or its failure. Streamed responses and bodies over the response spill threshold are not shared.
+     * @param coalesceGets true to coalesce identical GETs, false by default
+     * @return this builder
+     */
+    public GoodDataHttpClientBuilder setCoalesceGets(final boolean coalesceGets) {
+        this.coalesceGets = coalesceGets;
+        return this;
+    }
+
+    /**
+     * Sets the listener receiving authentication and transport events, e.g. to collect metrics.
+     * @param listener listener, events are ignored by default
+     * @return this builder
+     * @see GoodDataHttpClientMetrics
+     */
+    public GoodDataHttpClientBuilder setListener(final GoodDataHttpClientListener listener) {
+        this.listener = notNull(listener, "listener can't be null");
+        return this;
+    }
+
+    HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    HttpHost getAuthHost() {
+        return authHost;
+    }
+
+    SSTRetrievalStrategy getSstStrategy() {
+        return sstStrategy;
+    }
+
+    boolean isStreamResponses() {
+        return streamResponses;
+    }
+
+    long getResponseSpillThreshold() {
+        return responseSpillThreshold;
+    }
+
+    Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    long getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    long getRequestReplayLimit() {
+        return requestReplayLimit;
+    }
+
+    long getExpectContinueThreshold() {
+        return expectContinueThreshold;
+    }
+
+    long getRequestCompressionThreshold() {
+        return requestCompressionThreshold;
+    }
+
+    List<String> getCompressedPaths() {
+        return compressedPaths;
+    }
+
+    ScheduledExecutorService getTokenRenewalExecutor() {
+        return tokenRenewalExecutor;
+    }
+
+    boolean isVirtualThreadRenewals() {
+        return virtualThreadRenewals;
+    }
+
+    Duration getTtLifetime() {
+        return ttLifetime;
+    }
+
+    Duration getTtRenewalMargin() {
+        return ttRenewalMargin;
+    }
+
+    Function<String, ? extends SSTRetrievalStrategy> getPrincipalSstStrategies() {
+        return principalSstStrategies;
+    }
+
+    int getMaxPrincipals() {
+        return maxPrincipals;
+    }
+
+    Duration getPrincipalIdleTimeout() {
+        return principalIdleTimeout;
+    }
+
+    TokenStore getTokenStore() {
+        return tokenStore;
+    }
+
+    int getAuthFailureThreshold() {
+        return authFailureThreshold;
+    }
+
+    Duration getAuthInitialBackoff() {
+        return authInitialBackoff;
+    }
+
+    Duration getAuthMaxBackoff() {
+        return authMaxBackoff;
+    }
+
+    double getRateLimit() {
+        return rateLimit;
+    }
+
+    int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    int getThrottledRetries() {
+        return throttledRetries;
+    }
+
+    Duration getMaxRetryAfter() {
+        return maxRetryAfter;
+    }
+
+    boolean isRetryThrottledNonIdempotent() {
+        return retryThrottledNonIdempotent;
+    }
+
+    long getResponseCacheSize() {
+        return responseCacheSize;
+    }
+
+    Executor getRevalidationExecutor() {
+        return revalidationExecutor;
+    }
+
+    boolean isCoalesceGets() {
+        return coalesceGets;
+    }
+
+    GoodDataHttpClientListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Builds a connection manager with the pool settings of this builder, which can be shared by many clients
+     * through {@link #setConnectionManager(HttpClientConnectionManager)}. Leases don't take a global pool lock,
+     * so the pool has no total limit and the route limit may be exceeded slightly under contention.
+     * @return new connection manager, to be closed by the caller
+     */
+    public PoolingHttpClientConnectionManager buildConnectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.LAX)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setValidateAfterInactivity(TimeValue.of(validateAfterInactivity))
+                        .build())
+                .build();
+    }
+
+    /**
+     * Builds the HTTP client used when none is set. It doesn't decode compressed responses, the GoodData client does.
+     */
+    CloseableHttpClient buildHttpClient() {
+        final TimeValue maxKeepAlive = TimeValue.of(keepAlive);
+        final org.apache.hc.client5.http.impl.classic.HttpClientBuilder builder = HttpClients.custom()
+                .disableContentCompression()
+                .setKeepAliveStrategy((response, context) -> {
+                    final TimeValue offered = DefaultConnectionKeepAliveStrategy.INSTANCE
+                            .getKeepAliveDuration(response, context);
+                    return TimeValue.isPositive(offered) && offered.compareTo(maxKeepAlive) < 0 ? offered : maxKeepAlive;
+                });
+        if (connectionManager != null) {
+            builder.setConnectionManager(connectionManager).setConnectionManagerShared(true);
+        } else {
+            builder.setConnectionManager(buildConnectionManager()).evictExpiredConnections();
+            if (idleEviction != null) {
+                builder.evictIdleConnections(TimeValue.of(idleEviction));
+            }
+        }
+        return builder.build();
+    }
+
+    public GoodDataHttpClient build() {
+        return new GoodDataHttpClient(this);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+/**
+ * Receives events of {@link GoodDataHttpClient} authentication and transport, e.g. to publish them as metrics.
+ * <p>
+ * All methods do nothing by default. They are called on the request threads, so implementations must be thread-safe,
+ * fast and must not throw. Durations are in nanoseconds.
+ *
+ * @see GoodDataHttpClientBuilder#setListener(GoodDataHttpClientListener)
+ * @see GoodDataHttpClientMetrics
+ */
+public interface GoodDataHttpClientListener {
+
+    /**
+     * Listener ignoring all events, used by default.
+     */
+    GoodDataHttpClientListener NOOP = new GoodDataHttpClientListener() {
+    };
+
+    /**
+     * A request was rejected with HTTP 401.
+     * @param challenge type of the authentication challenge, {@link GoodDataChallengeType#UNKNOWN} for 401 not
+     *                  issued by GoodData authentication
+     */
+    default void challenged(GoodDataChallengeType challenge) {
+    }
+
+    /**
+     * A request waited for refreshed tokens after a challenge, including the refresh itself when the request
+     * started it.
+     * @param nanos wait duration
+     */
+    default void tokensAwaited(long nanos) {
+    }
+
+    /**
+     * Token refresh or logout waited for the principal's authentication lock.
+     * @param nanos wait duration
+     */
+    default void authLockAwaited(long nanos) {
+    }
+
+    /**
+     * SST was requested from the SST strategy.
+     * @param nanos duration of the call
+     * @param success whether SST was obtained
+     */
+    default void sstObtained(long nanos, boolean success) {
+    }
+
+    /**
+     * TT was requested from the token resource.
+     * @param nanos duration of the call
+     * @param success whether TT was obtained
+     */
+    default void ttRefreshed(long nanos, boolean success) {
+    }
+
+    /**
+     * The circuit breaker guarding token retrieval of a principal changed its state.
+     * @param principal principal key, null for the client's default principal
+     * @param state new state
+     */
+    default void authCircuitChanged(String principal, AuthCircuitState state) {
+    }
+
+    /**
+     * A request was throttled by the server with HTTP 429 or 503 and {@code Retry-After}.
+     * @param status HTTP status of the response
+     * @param retryAfterNanos time the server asked to wait
+     */
+    default void throttled(int status, long retryAfterNanos) {
+    }
+
+    /**
+     * A request waited for the client-side rate limit.
+     * @param nanos wait duration
+     */
+    default void rateLimitAwaited(long nanos) {
+    }
+
+    /**
+     * A GET was served from the response cache without contacting the server.
+     */
+    default void cacheHit() {
+    }
+
+    /**
+     * A cached response was revalidated with the server.
+     * @param modified whether the server returned a new response, false for HTTP 304
+     */
+    default void cacheRevalidated(boolean modified) {
+    }
+
+    /**
+     * A GET joined an identical request in flight instead of being sent.
+     */
+    default void requestCoalesced() {
+    }
+
+    /**
+     * A response body was buffered.
+     * @param bytes size of the body
+     * @param spilled whether the body was spilled to a temporary file
+     */
+    default void responseBuffered(long bytes, boolean spilled) {
+    }
+
+    /**
+     * A body kept in pooled buffers was garbage collected without being released, i.e. its response wasn't closed.
+     */
+    default void bufferLeaked() {
+    }
+}
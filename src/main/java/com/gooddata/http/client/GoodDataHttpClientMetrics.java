@@ -0,0 +1,257 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link GoodDataHttpClientListener} collecting the events into lock-free counters and latency histograms.
+ * Values can be read at any time, e.g. by a Micrometer or Prometheus collector polling them.
+ * <pre>
+ * GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+ * GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+ *     ...
+ *     .setListener(metrics)
+ *     .build();
+ * </pre>
+ */
+public class GoodDataHttpClientMetrics implements GoodDataHttpClientListener {
+
+    private final LongAdder sstChallenges = new LongAdder();
+    private final LongAdder ttChallenges = new LongAdder();
+    private final LongAdder unknownChallenges = new LongAdder();
+    private final LongAdder sstFailures = new LongAdder();
+    private final LongAdder ttFailures = new LongAdder();
+    private final LongAdder bufferedBytes = new LongAdder();
+    private final LongAdder spilledResponses = new LongAdder();
+    private final LongAdder authCircuitOpenings = new LongAdder();
+    private final LongAdder throttledRequests = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheRevalidations = new LongAdder();
+    private final LongAdder cacheNotModified = new LongAdder();
+    private final LongAdder coalescedRequests = new LongAdder();
+    private final LongAdder bufferLeaks = new LongAdder();
+    private final LatencyHistogram tokenWaits = new LatencyHistogram();
+    private final LatencyHistogram authLockWaits = new LatencyHistogram();
+    private final LatencyHistogram sstDurations = new LatencyHistogram();
+    private final LatencyHistogram ttDurations = new LatencyHistogram();
+    private final LatencyHistogram responseSizes = new LatencyHistogram();
+    private final LatencyHistogram rateLimitWaits = new LatencyHistogram();
+
+    @Override
+    public void challenged(final GoodDataChallengeType challenge) {
+        switch (challenge) {
+            case SST:
+                sstChallenges.increment();
+                break;
+            case TT:
+                ttChallenges.increment();
+                break;
+            default:
+                unknownChallenges.increment();
+        }
+    }
+
+    @Override
+    public void tokensAwaited(final long nanos) {
+        tokenWaits.record(nanos);
+    }
+
+    @Override
+    public void authLockAwaited(final long nanos) {
+        authLockWaits.record(nanos);
+    }
+
+    @Override
+    public void sstObtained(final long nanos, final boolean success) {
+        sstDurations.record(nanos);
+        if (!success) {
+            sstFailures.increment();
+        }
+    }
+
+    @Override
+    public void ttRefreshed(final long nanos, final boolean success) {
+        ttDurations.record(nanos);
+        if (!success) {
+            ttFailures.increment();
+        }
+    }
+
+    @Override
+    public void authCircuitChanged(final String principal, final AuthCircuitState state) {
+        if (state == AuthCircuitState.OPEN) {
+            authCircuitOpenings.increment();
+        }
+    }
+
+    @Override
+    public void throttled(final int status, final long retryAfterNanos) {
+        throttledRequests.increment();
+    }
+
+    @Override
+    public void rateLimitAwaited(final long nanos) {
+        rateLimitWaits.record(nanos);
+    }
+
+    @Override
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void cacheRevalidated(final boolean modified) {
+        cacheRevalidations.increment();
+        if (!modified) {
+            cacheNotModified.increment();
+        }
+    }
+
+    @Override
+    public void requestCoalesced() {
+        coalescedRequests.increment();
+    }
+
+    @Override
+    public void responseBuffered(final long bytes, final boolean spilled) {
+        bufferedBytes.add(bytes);
+        responseSizes.record(bytes);
+        if (spilled) {
+            spilledResponses.increment();
+        }
+    }
+
+    @Override
+    public void bufferLeaked() {
+        bufferLeaks.increment();
+    }
+
+    public long getSstChallenges() {
+        return sstChallenges.sum();
+    }
+
+    public long getTtChallenges() {
+        return ttChallenges.sum();
+    }
+
+    /**
+     * @return number of HTTP 401 responses not issued by GoodData authentication
+     */
+    public long getUnknownChallenges() {
+        return unknownChallenges.sum();
+    }
+
+    public long getSstFailures() {
+        return sstFailures.sum();
+    }
+
+    public long getTtFailures() {
+        return ttFailures.sum();
+    }
+
+    /**
+     * @return total size of buffered response bodies
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.sum();
+    }
+
+    public long getSpilledResponses() {
+        return spilledResponses.sum();
+    }
+
+    /**
+     * @return how many times token retrieval of any principal started failing fast
+     */
+    public long getAuthCircuitOpenings() {
+        return authCircuitOpenings.sum();
+    }
+
+    /**
+     * @return number of responses throttling requests
+     */
+    public long getThrottledRequests() {
+        return throttledRequests.sum();
+    }
+
+    /**
+     * @return number of GETs served from the response cache
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @return number of cached responses revalidated with the server
+     */
+    public long getCacheRevalidations() {
+        return cacheRevalidations.sum();
+    }
+
+    /**
+     * @return number of revalidations confirming the cached response by HTTP 304
+     */
+    public long getCacheNotModified() {
+        return cacheNotModified.sum();
+    }
+
+    /**
+     * @return number of GETs which got the response of an identical request instead of being sent
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.sum();
+    }
+
+    /**
+     * @return number of pooled bodies garbage collected without their response being closed
+     */
+    public long getBufferLeaks() {
+        return bufferLeaks.sum();
+    }
+
+    /**
+     * @return nanoseconds requests waited for refreshed tokens
+     */
+    public LatencyHistogram getTokenWaits() {
+        return tokenWaits;
+    }
+
+    /**
+     * @return nanoseconds token refreshes and logouts waited for the authentication lock
+     */
+    public LatencyHistogram getAuthLockWaits() {
+        return authLockWaits;
+    }
+
+    /**
+     * @return nanoseconds of SST retrievals
+     */
+    public LatencyHistogram getSstDurations() {
+        return sstDurations;
+    }
+
+    /**
+     * @return nanoseconds of TT refreshes
+     */
+    public LatencyHistogram getTtDurations() {
+        return ttDurations;
+    }
+
+    /**
+     * @return sizes of buffered response bodies in bytes
+     */
+    public LatencyHistogram getResponseSizes() {
+        return responseSizes;
+    }
+
+    /**
+     * @return nanoseconds requests waited for the client-side rate limit
+     */
+    public LatencyHistogram getRateLimitWaits() {
+        return rateLimitWaits;
+    }
+}
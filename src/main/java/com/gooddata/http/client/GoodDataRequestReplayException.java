@@ -0,0 +1,23 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import java.io.IOException;
+
+/**
+ * Signals that a request with a non-repeatable body was challenged by GoodData authentication, but its body
+ * can't be sent again with refreshed tokens, usually because it exceeded the limit set by
+ * {@link GoodDataHttpClientBuilder#setRequestReplayLimit(long)}.
+ * Use a repeatable entity or raise the limit for such requests.
+ */
+public class GoodDataRequestReplayException extends IOException {
+
+    private static final long serialVersionUID = -4632115412698723187L;
+
+    public GoodDataRequestReplayException(final String message) {
+        super(message);
+    }
+}
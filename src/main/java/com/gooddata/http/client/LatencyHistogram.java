@@ -0,0 +1,108 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.inclusiveBetween;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values, e.g. durations in nanoseconds, with power-of-two buckets.
+ * Bucket {@code i} counts values less than {@code 2^i} not counted by lower buckets, so percentiles are accurate
+ * within a factor of two, which is enough to spot latency spikes.
+ */
+public final class LatencyHistogram {
+
+    /** Number of buckets, the last one counts values of {@code 2^62} and more. */
+    public static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records given value, negative values are recorded as zero.
+     * @param value value to record
+     */
+    public void record(final long value) {
+        final long recorded = Math.max(value, 0);
+        buckets[bucket(recorded)].increment();
+        sum.add(recorded);
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return sum of recorded values
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return counts of the buckets, index {@code i} counts values less than {@link #getUpperBound(int)}
+     */
+    public long[] getBucketCounts() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * @param bucket bucket index
+     * @return exclusive upper bound of the values counted by the bucket, {@link Long#MAX_VALUE} for the last one
+     */
+    public static long getUpperBound(final int bucket) {
+        inclusiveBetween(0, BUCKETS - 1, bucket, "bucket out of range");
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Estimates the value below which given fraction of recorded values falls.
+     * @param quantile quantile between 0 and 1
+     * @return upper bound of the bucket containing the quantile, 0 when nothing was recorded
+     */
+    public long getQuantile(final double quantile) {
+        inclusiveBetween(0.0, 1.0, quantile, "quantile must be between 0 and 1");
+        final long[] counts = getBucketCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return getUpperBound(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static int bucket(final long value) {
+        return Math.min(BUCKETS - (Long.numberOfLeadingZeros(value)), BUCKETS - 1);
+    }
+}
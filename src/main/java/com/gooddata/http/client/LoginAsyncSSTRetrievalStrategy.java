@@ -0,0 +1,117 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static com.gooddata.http.client.GoodDataHttpClient.SST_HEADER;
+import static com.gooddata.http.client.GoodDataHttpClient.TT_HEADER;
+import static com.gooddata.http.client.LoginSSTRetrievalStrategy.LOGIN_URL;
+import static com.gooddata.http.client.LoginSSTRetrievalStrategy.VERIFICATION_LEVEL;
+import static com.gooddata.http.client.LoginSSTRetrievalStrategy.X_GDC_REQUEST_HEADER_NAME;
+import static com.gooddata.http.client.LoginSSTRetrievalStrategy.loginFailureMessage;
+import static com.gooddata.http.client.LoginSSTRetrievalStrategy.overrides;
+import static org.apache.commons.lang3.Validate.notEmpty;
+import static org.apache.commons.lang3.Validate.notNull;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * This strategy obtains super-secure token via login and password without blocking.
+ * Async counterpart of {@link LoginSSTRetrievalStrategy}.
+ */
+public class LoginAsyncSSTRetrievalStrategy implements AsyncSSTRetrievalStrategy {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final String login;
+    private final String password;
+    /** Whether a subclass obtains SST by itself, which must then be used instead of the login of this class. */
+    private final boolean obtainSstOverridden = overrides(getClass(), LoginAsyncSSTRetrievalStrategy.class,
+            "obtainSst", CloseableHttpAsyncClient.class, HttpHost.class);
+
+    /**
+     * Construct object.
+     * @param login user login
+     * @param password user password
+     */
+    public LoginAsyncSSTRetrievalStrategy(final String login, final String password) {
+        notNull(login, "Login cannot be null");
+        notNull(password, "Password cannot be null");
+        this.login = login;
+        this.password = password;
+    }
+
+    @Override
+    public CompletableFuture<String> obtainSst(final CloseableHttpAsyncClient httpClient, final HttpHost httpHost) {
+        return login(httpClient, httpHost).thenApply(TokenBundle::getSst);
+    }
+
+    /**
+     * Obtains SST together with TT, which is returned by the login resource as well. Subclasses overriding
+     * {@link #obtainSst(CloseableHttpAsyncClient, HttpHost)} get just the SST of their override.
+     */
+    @Override
+    public CompletableFuture<TokenBundle> obtainTokens(final CloseableHttpAsyncClient httpClient, final HttpHost httpHost) {
+        return obtainSstOverridden
+                ? obtainSst(httpClient, httpHost).thenApply(TokenBundle::new)
+                : login(httpClient, httpHost);
+    }
+
+    private CompletableFuture<TokenBundle> login(final CloseableHttpAsyncClient httpClient, final HttpHost httpHost) {
+        notNull(httpClient, "client can't be null");
+        notNull(httpHost, "host can't be null");
+
+        log.debug("Obtaining SST");
+        final SimpleHttpRequest postLogin = SimpleRequestBuilder.post()
+                .setHttpHost(httpHost)
+                .setPath(LOGIN_URL)
+                .setBody(JsonUtils.createLoginJson(login, password, VERIFICATION_LEVEL), ContentType.APPLICATION_JSON)
+                .build();
+        return AsyncUtils.execute(httpClient, postLogin, null).thenApply(response -> {
+            if (response.getCode() != HttpStatus.SC_OK) {
+                final String message = getMessage(response);
+                log.info(message);
+                throw new GoodDataAuthException(message);
+            }
+            return new TokenBundle(TokenUtils.extractSST(response), TokenUtils.findTT(response));
+        });
+    }
+
+    private static String getMessage(final SimpleHttpResponse response) {
+        final Header requestIdHeader = response.getFirstHeader(X_GDC_REQUEST_HEADER_NAME);
+        final String requestId = requestIdHeader != null ? requestIdHeader.getValue() : null;
+        return loginFailureMessage(response.getBodyText(), response.getCode(), requestId);
+    }
+
+    @Override
+    public CompletableFuture<Void> logout(final CloseableHttpAsyncClient httpClient, final HttpHost httpHost, final String url,
+                                          final String sst, final String tt) {
+        notNull(httpClient, "client can't be null");
+        notNull(httpHost, "host can't be null");
+        notEmpty(url, "url can't be empty");
+        notEmpty(sst, "SST can't be empty");
+        notEmpty(tt, "TT can't be empty");
+        final SimpleHttpRequest request = SimpleRequestBuilder.delete()
+                .setHttpHost(httpHost)
+                .setPath(url)
+                .addHeader(SST_HEADER, sst)
+                .addHeader(TT_HEADER, tt)
+                .build();
+        return AsyncUtils.execute(httpClient, request, null).thenAccept(response -> {
+            if (response.getCode() != HttpStatus.SC_NO_CONTENT) {
+                throw new CompletionException(new GoodDataLogoutException("Logout unsuccessful using http",
+                        response.getCode(), response.getReasonPhrase()));
+            }
+        });
+    }
+}
@@ -30,14 +30,17 @@ import java.io.IOException;
  * This strategy obtains super-secure token via login and password.
  */
 public class LoginSSTRetrievalStrategy implements SSTRetrievalStrategy {
-    private static final String X_GDC_REQUEST_HEADER_NAME = "X-GDC-REQUEST";
+    static final String X_GDC_REQUEST_HEADER_NAME = "X-GDC-REQUEST";
     public static final String LOGIN_URL = "/gdc/account/login";
     /** SST and TT must be present in the HTTP header. */
-    private static final int VERIFICATION_LEVEL = 2;
+    static final int VERIFICATION_LEVEL = 2;
     private Logger log = LoggerFactory.getLogger(getClass());
     private final String login;
     private final String password;
     private final HttpHost httpHost;
+    /** Whether a subclass obtains SST by itself, which must then be used instead of the login of this class. */
+    private final boolean obtainSstOverridden = overrides(getClass(), LoginSSTRetrievalStrategy.class,
+            "obtainSst", HttpClient.class, HttpHost.class);
 
     /**
      * Construct object.
@@ -76,6 +79,19 @@ public class LoginSSTRetrievalStrategy implements SSTRetrievalStrategy {
 
     @Override
     public String obtainSst(final HttpClient httpClient, final HttpHost httpHost) throws IOException {
+        return login(httpClient, httpHost).getSst();
+    }
+
+    /**
+     * Obtains SST together with TT, which is returned by the login resource as well. Subclasses overriding
+     * {@link #obtainSst(HttpClient, HttpHost)} get just the SST of their override.
+     */
+    @Override
+    public TokenBundle obtainTokens(final HttpClient httpClient, final HttpHost httpHost) throws IOException {
+        return obtainSstOverridden ? new TokenBundle(obtainSst(httpClient, httpHost)) : login(httpClient, httpHost);
+    }
+
+    private TokenBundle login(final HttpClient httpClient, final HttpHost httpHost) throws IOException {
         notNull(httpClient, "client can't be null");
         notNull(httpHost, "host can't be null");
 
@@ -85,16 +101,14 @@ public class LoginSSTRetrievalStrategy implements SSTRetrievalStrategy {
             final String loginJson = JsonUtils.createLoginJson(login, password, VERIFICATION_LEVEL);
             postLogin.setEntity(new StringEntity(loginJson, ContentType.APPLICATION_JSON));
 
-            HttpClientResponseHandler<String> responseHandler = response -> {
+            HttpClientResponseHandler<TokenBundle> responseHandler = response -> {
                 int status = response.getCode();
                 if (status != HttpStatus.SC_OK) {
                     final String message = getMessage(response);
                     log.info(message);
                     throw new GoodDataAuthException(message);
                 }
-                // todo TT is present at response as well - extract it to save one HTTP call
-                String sst = TokenUtils.extractSST(response);
-                return sst;
+                return new TokenBundle(TokenUtils.extractSST(response), TokenUtils.findTT(response));
             };
             return httpClient.execute(httpHost, postLogin, responseHandler);
 
@@ -121,10 +135,27 @@ public class LoginSSTRetrievalStrategy implements SSTRetrievalStrategy {
         } catch (Exception e) {
             reason = "Failed to parse response body: " + e.getMessage();
         }
-        // Return a formatted error message with the reason, HTTP status code, and request ID
+        return loginFailureMessage(reason, response.getCode(), requestId);
+    }
+
+    /**
+     * @return whether the public method of given name and parameters is overridden by the type
+     */
+    static boolean overrides(final Class<?> type, final Class<?> base, final String name, final Class<?>... parameters) {
+        try {
+            return type.getMethod(name, parameters).getDeclaringClass() != base;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("No method " + name + " in " + type, e);
+        }
+    }
+
+    /**
+     * Return a formatted error message with the reason, HTTP status code, and request ID
+     */
+    static String loginFailureMessage(final String reason, final int status, final String requestId) {
         return format(
             "Unable to login reason='%s'. Request tracking details httpStatus=%s requestId=%s",
-            reason, response.getCode(), requestId
+            reason, status, requestId
         );
     }
 
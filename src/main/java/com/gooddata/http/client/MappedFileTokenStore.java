@@ -0,0 +1,215 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * {@link TokenStore} sharing tokens by processes on one machine through memory-mapped files.
+ * <p>
+ * Every key is stored in its own small file in the given directory, readable by the owner only. Access is serialized
+ * by a file lock between processes and by a lock within this JVM. Tokens survive process restarts, so a restarted
+ * process doesn't need to log in while the stored SST is valid.
+ * <p>
+ * Every file is mapped once per JVM and stays mapped for the lifetime of the JVM, so the files must not be replaced
+ * while in use.
+ * <p>
+ * The store is accessed only when tokens are refreshed, never on the request path.
+ */
+public class MappedFileTokenStore implements TokenStore {
+
+    private static final int MAGIC = 0x47444354;
+    private static final int HEADER_SIZE = 4 + 8 + 4 + 8;
+    private static final int REGION_SIZE = 16 * 1024;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    /** File locks are held by the whole JVM, so access to a file must be serialized within the JVM as well. */
+    private static final Map<Path, Lock> FILE_LOCKS = new ConcurrentHashMap<>();
+    /** Mappings are released only by GC, so every file is mapped once and accessed under its lock. */
+    private static final Map<Path, MappedByteBuffer> REGIONS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+
+    /**
+     * Construct object, creating the directory when it doesn't exist.
+     * @param directory directory of the token files
+     * @throws IOException when the directory can't be created
+     */
+    public MappedFileTokenStore(final Path directory) throws IOException {
+        notNull(directory, "directory can't be null");
+        this.directory = directory.toAbsolutePath().normalize();
+        if (!Files.isDirectory(this.directory)) {
+            try {
+                Files.createDirectories(this.directory, permissions(OWNER_ONLY_DIRECTORY));
+            } catch (FileAlreadyExistsException e) {
+                // created concurrently
+            }
+        }
+    }
+
+    @Override
+    public StoredTokens load(final String key) throws IOException {
+        return access(key, region -> {
+            final long version = region.getLong(4);
+            return new StoredTokens(version, readTokens(region));
+        });
+    }
+
+    @Override
+    public boolean compareAndSet(final String key, final long expectedVersion, final TokenBundle tokens)
+            throws IOException {
+        final byte[] payload = tokens != null ? encode(tokens) : new byte[0];
+        if (payload.length > REGION_SIZE - HEADER_SIZE) {
+            throw new IOException("Tokens too large to be stored");
+        }
+        return access(key, region -> {
+            if (region.getLong(4) != expectedVersion) {
+                return false;
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(payload);
+            final int previousLength = Math.min(Math.max(region.getInt(12), 0), REGION_SIZE - HEADER_SIZE);
+            region.position(HEADER_SIZE);
+            region.put(payload);
+            // don't leave previous tokens in the file
+            for (int i = payload.length; i < previousLength; i++) {
+                region.put((byte) 0);
+            }
+            region.putInt(12, payload.length);
+            region.putLong(16, crc.getValue());
+            region.putLong(4, expectedVersion + 1);
+            region.putInt(0, MAGIC);
+            region.force();
+            return true;
+        });
+    }
+
+    /**
+     * @return path of the file storing given key
+     */
+    Path getFile(final String key) {
+        return directory.resolve("gooddata-tokens-" + sha256(key));
+    }
+
+    @SuppressWarnings("try") // the file lock is held for the block only
+    private <T> T access(final String key, final RegionAction<T> action) throws IOException {
+        notNull(key, "key can't be null");
+        final Path file = getFile(key);
+        final Lock lock = FILE_LOCKS.computeIfAbsent(file, path -> new ReentrantLock());
+        lock.lock();
+        try (FileChannel channel = open(file); FileLock ignored = channel.lock()) {
+            MappedByteBuffer region = REGIONS.get(file);
+            if (region == null) {
+                region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+                REGIONS.put(file, region);
+            }
+            return action.apply(region);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static FileChannel open(final Path file) throws IOException {
+        try {
+            return FileChannel.open(file, Set.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE), permissions(OWNER_ONLY));
+        } catch (FileAlreadyExistsException e) {
+            return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    private static FileAttribute<?>[] permissions(final Set<PosixFilePermission> permissions) {
+        final boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        return posix
+                ? new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(permissions)}
+                : new FileAttribute<?>[0];
+    }
+
+    /**
+     * Reads tokens of the region, a never written or torn region has no tokens.
+     */
+    private static TokenBundle readTokens(final MappedByteBuffer region) throws IOException {
+        final int length = region.getInt(12);
+        if (region.getInt(0) != MAGIC || length <= 0 || length > REGION_SIZE - HEADER_SIZE) {
+            return null;
+        }
+        final byte[] payload = new byte[length];
+        region.position(HEADER_SIZE);
+        region.get(payload);
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        if (crc.getValue() != region.getLong(16)) {
+            return null;
+        }
+        return decode(payload);
+    }
+
+    private static byte[] encode(final TokenBundle tokens) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(tokens.getSst());
+            out.writeUTF(StringUtils.defaultString(tokens.getTt()));
+            out.writeLong(tokens.getTtLifetime() != null ? tokens.getTtLifetime().toMillis() : -1);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static TokenBundle decode(final byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            final String sst = in.readUTF();
+            final String tt = StringUtils.defaultIfEmpty(in.readUTF(), null);
+            final long lifetime = in.readLong();
+            return new TokenBundle(sst, tt, lifetime >= 0 && tt != null ? Duration.ofMillis(lifetime) : null);
+        }
+    }
+
+    private static String sha256(final String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RegionAction<T> {
+        T apply(MappedByteBuffer region) throws IOException;
+    }
+}
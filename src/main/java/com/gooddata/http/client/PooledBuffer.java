@@ -0,0 +1,209 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Body kept in buffers of a {@link BufferPool}. The buffers are returned to the pool by {@link #release()}, or once
+ * the body is garbage collected, which is reported as a leak.
+ * <p>
+ * The body is written by a single thread and may be read by many once complete.
+ */
+final class PooledBuffer {
+
+    private static final int TRANSFER_SIZE = 8192;
+
+    private final BufferPool pool;
+    private final Chunks chunks;
+    private final Cleaner.Cleanable cleanable;
+    private long size;
+    private long writable;
+    private int writeIndex;
+
+    PooledBuffer(final BufferPool pool) {
+        this.pool = pool;
+        this.chunks = new Chunks(pool);
+        this.cleanable = BufferPool.CLEANER.register(this, chunks);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return false when the pool has no buffer for the byte, it is not written then
+     */
+    boolean write(final int b) {
+        if (!ensureCapacity(1)) {
+            return false;
+        }
+        nextWritable().put((byte) b);
+        writable--;
+        size++;
+        chunks.size = size;
+        return true;
+    }
+
+    /**
+     * @return false when the pool has no buffers for the bytes, none of them is written then
+     */
+    boolean write(final byte[] b, final int off, final int len) {
+        if (!ensureCapacity(len)) {
+            return false;
+        }
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            final ByteBuffer chunk = nextWritable();
+            final int count = Math.min(remaining, chunk.remaining());
+            chunk.put(b, offset, count);
+            offset += count;
+            remaining -= count;
+        }
+        writable -= len;
+        size += len;
+        chunks.size = size;
+        return true;
+    }
+
+    void writeTo(final OutputStream out) throws IOException {
+        checkReleased();
+        byte[] transfer = null;
+        for (ByteBuffer chunk : chunks.buffers) {
+            final ByteBuffer data = chunk.duplicate().flip();
+            if (data.hasArray()) {
+                out.write(data.array(), data.arrayOffset(), data.remaining());
+                continue;
+            }
+            if (transfer == null) {
+                transfer = new byte[TRANSFER_SIZE];
+            }
+            while (data.hasRemaining()) {
+                final int count = Math.min(transfer.length, data.remaining());
+                data.get(transfer, 0, count);
+                out.write(transfer, 0, count);
+            }
+        }
+    }
+
+    InputStream getInputStream() throws IOException {
+        checkReleased();
+        return new ChunkInputStream();
+    }
+
+    /**
+     * Returns the buffers to the pool, the body can't be read anymore.
+     */
+    void release() {
+        chunks.released = true;
+        cleanable.clean();
+    }
+
+    private void checkReleased() throws IOException {
+        if (chunks.released) {
+            throw new IOException("Buffered content has already been released");
+        }
+    }
+
+    private boolean ensureCapacity(final int len) {
+        while (writable < len) {
+            final int sizeClass = Math.min(chunks.buffers.size(), BufferPool.SIZE_CLASSES.length - 1);
+            final ByteBuffer chunk = pool.acquire(sizeClass);
+            if (chunk == null) {
+                return false;
+            }
+            chunks.buffers.add(chunk);
+            writable += chunk.capacity();
+        }
+        return true;
+    }
+
+    private ByteBuffer nextWritable() {
+        ByteBuffer chunk = chunks.buffers.get(writeIndex);
+        while (!chunk.hasRemaining()) {
+            chunk = chunks.buffers.get(++writeIndex);
+        }
+        return chunk;
+    }
+
+    /**
+     * Buffers of the body, returned to the pool when the body is released or garbage collected. Must not reference
+     * the body itself, so that it can be collected.
+     */
+    private static final class Chunks implements Runnable {
+        private final BufferPool pool;
+        private final List<ByteBuffer> buffers = new ArrayList<>();
+        private volatile boolean released;
+        private long size;
+
+        Chunks(final BufferPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void run() {
+            if (!released) {
+                released = true;
+                pool.leaked(size);
+            }
+            for (ByteBuffer buffer : buffers) {
+                pool.release(buffer);
+            }
+            buffers.clear();
+        }
+    }
+
+    /**
+     * Reads the body from views of the buffers, so that the body can be read by many streams at once.
+     */
+    private final class ChunkInputStream extends InputStream {
+        private int index;
+        private ByteBuffer current;
+
+        @Override
+        public int read() throws IOException {
+            final ByteBuffer data = readable();
+            return data != null ? data.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final ByteBuffer data = readable();
+            if (data == null) {
+                return -1;
+            }
+            final int count = Math.min(len, data.remaining());
+            data.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return current != null ? current.remaining() : 0;
+        }
+
+        private ByteBuffer readable() throws IOException {
+            checkReleased();
+            while (current == null || !current.hasRemaining()) {
+                if (index == chunks.buffers.size()) {
+                    return null;
+                }
+                current = chunks.buffers.get(index++).duplicate().flip();
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Repeatable entity backed by pooled buffers, which are returned to the pool when the entity is closed.
+ */
+final class PooledBufferEntity extends AbstractHttpEntity {
+
+    private final PooledBuffer buffer;
+
+    PooledBufferEntity(final PooledBuffer buffer, final ContentType contentType, final String contentEncoding) {
+        super(contentType, contentEncoding);
+        this.buffer = buffer;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return buffer.size();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return buffer.getInputStream();
+    }
+
+    @Override
+    public void writeTo(final OutputStream outStream) throws IOException {
+        buffer.writeTo(outStream);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        buffer.release();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bounded registry of {@link PrincipalSession}s keyed by principal.
+ * <p>
+ * Lookup of a known principal doesn't lock. Sessions are created on first use of a principal, at which point
+ * sessions idle for longer than the idle timeout are evicted, and when the registry is full also the least recently
+ * used one. Tokens of evicted sessions are just forgotten, the principal logs in again on its next request.
+ */
+final class PrincipalRegistry {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Map<String, PrincipalSession> sessions = new ConcurrentHashMap<>();
+    private final Function<String, PrincipalSession> sessionFactory;
+    private final int maxPrincipals;
+    private final long idleTimeoutNanos;
+    private final Lock evictionLock = new ReentrantLock();
+
+    /**
+     * Construct object.
+     * @param sessionFactory creates session of given principal
+     * @param maxPrincipals max number of sessions kept
+     * @param idleTimeout how long an unused session is kept
+     */
+    PrincipalRegistry(final Function<String, PrincipalSession> sessionFactory, final int maxPrincipals,
+                      final Duration idleTimeout) {
+        notNull(sessionFactory, "session factory can't be null");
+        isTrue(maxPrincipals > 0, "max principals must be positive");
+        notNull(idleTimeout, "idle timeout can't be null");
+        this.sessionFactory = sessionFactory;
+        this.maxPrincipals = maxPrincipals;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    /**
+     * Returns session of given principal, creating it when needed.
+     */
+    PrincipalSession get(final String principal) {
+        notNull(principal, "principal can't be null");
+        PrincipalSession session = sessions.get(principal);
+        if (session == null) {
+            session = create(principal);
+        }
+        session.touch();
+        return session;
+    }
+
+    /**
+     * Removes given session, e.g. after logout.
+     */
+    void remove(final PrincipalSession session) {
+        if (sessions.remove(session.getPrincipal(), session)) {
+            session.close();
+        }
+    }
+
+    /**
+     * Evicts given session when it has not been used for longer than the idle timeout.
+     * @return true when the session is evicted
+     */
+    boolean evictIfIdle(final PrincipalSession session) {
+        if (isIdle(session, System.nanoTime())) {
+            log.debug("Evicting idle principal session");
+            remove(session);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all sessions, stopping their token renewals.
+     */
+    void close() {
+        for (PrincipalSession session : sessions.values()) {
+            remove(session);
+        }
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    private PrincipalSession create(final String principal) {
+        evictionLock.lock();
+        try {
+            final PrincipalSession existing = sessions.get(principal);
+            if (existing != null) {
+                return existing;
+            }
+            evictIdle();
+            while (sessions.size() >= maxPrincipals) {
+                evictLeastRecentlyUsed();
+            }
+            final PrincipalSession session = sessionFactory.apply(principal);
+            sessions.put(principal, session);
+            return session;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void evictIdle() {
+        final long now = System.nanoTime();
+        for (PrincipalSession session : sessions.values()) {
+            if (isIdle(session, now)) {
+                remove(session);
+            }
+        }
+    }
+
+    private void evictLeastRecentlyUsed() {
+        PrincipalSession eldest = null;
+        for (PrincipalSession session : sessions.values()) {
+            if (eldest == null || session.getLastAccess() - eldest.getLastAccess() < 0) {
+                eldest = session;
+            }
+        }
+        if (eldest != null) {
+            log.debug("Evicting least recently used principal session, registry is full");
+            remove(eldest);
+        }
+    }
+
+    private boolean isIdle(final PrincipalSession session, final long now) {
+        return now - session.getLastAccess() > idleTimeoutNanos;
+    }
+}
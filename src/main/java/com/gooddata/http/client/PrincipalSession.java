@@ -0,0 +1,168 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+import org.apache.hc.core5.http.HttpHost;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Authentication state of a single GoodData principal - its SST strategy, current tokens and their refresh.
+ * Sessions of different principals are independent, so refresh of one principal's tokens never blocks requests
+ * of another one.
+ */
+final class PrincipalSession {
+
+    private final String principal;
+    private final SSTRetrievalStrategy sstStrategy;
+    private final Lock authLock = new ReentrantLock();
+    private final TokenRefreshCoordinator coordinator = new TokenRefreshCoordinator();
+    private final TokenRenewalScheduler renewalScheduler;
+    private final AuthCircuitBreaker circuitBreaker;
+    private final Map<HttpHost, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private volatile long lastAccess = System.nanoTime();
+    private volatile boolean storeLoaded;
+    private long storeVersion;
+
+    /**
+     * Construct object.
+     * @param principal principal key, null for the client's default principal
+     * @param sstStrategy strategy obtaining SST of the principal
+     * @param renewalExecutor executor running proactive TT renewals, null to refresh TT on demand only
+     * @param ttLifetime configured TT lifetime, may be null
+     * @param ttRenewalMargin how long before the expiry TT is renewed
+     * @param renewal renews tokens of given session
+     */
+    PrincipalSession(final String principal, final SSTRetrievalStrategy sstStrategy,
+                     final ScheduledExecutorService renewalExecutor, final Duration ttLifetime,
+                     final Duration ttRenewalMargin, final BiConsumer<PrincipalSession, AuthTokens> renewal) {
+        this(principal, sstStrategy, renewalExecutor, null, ttLifetime, ttRenewalMargin, renewal, null);
+    }
+
+    /**
+     * Construct object.
+     * @param principal principal key, null for the client's default principal
+     * @param sstStrategy strategy obtaining SST of the principal
+     * @param renewalExecutor executor timing proactive TT renewals, null to refresh TT on demand only
+     * @param renewalRunner executor running the due renewals, null to run them on the renewal executor
+     * @param ttLifetime configured TT lifetime, may be null
+     * @param ttRenewalMargin how long before the expiry TT is renewed
+     * @param renewal renews tokens of given session
+     * @param circuitBreaker circuit breaker guarding token retrieval, null to never fail fast
+     */
+    PrincipalSession(final String principal, final SSTRetrievalStrategy sstStrategy,
+                     final ScheduledExecutorService renewalExecutor, final Executor renewalRunner,
+                     final Duration ttLifetime, final Duration ttRenewalMargin,
+                     final BiConsumer<PrincipalSession, AuthTokens> renewal, final AuthCircuitBreaker circuitBreaker) {
+        this.principal = principal;
+        this.sstStrategy = notNull(sstStrategy, "SST strategy can't be null");
+        this.circuitBreaker = circuitBreaker != null
+                ? circuitBreaker
+                : new AuthCircuitBreaker(0, Duration.ZERO, Duration.ZERO, state -> { });
+        this.renewalScheduler = renewalExecutor != null
+                ? new TokenRenewalScheduler(renewalExecutor, renewalRunner, ttLifetime, ttRenewalMargin,
+                        tokens -> renewal.accept(this, tokens))
+                : null;
+    }
+
+    String getPrincipal() {
+        return principal;
+    }
+
+    SSTRetrievalStrategy getSstStrategy() {
+        return sstStrategy;
+    }
+
+    /**
+     * Serializes token refresh and logout of this principal.
+     */
+    Lock getAuthLock() {
+        return authLock;
+    }
+
+    TokenRefreshCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    /**
+     * @return circuit breaker guarding token retrieval of this principal
+     */
+    AuthCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @param host target host
+     * @param factory creates the rate limiter of a host requested for the first time
+     * @return rate limiter of this principal's requests to given host
+     */
+    RateLimiter getRateLimiter(final HttpHost host, final Function<HttpHost, RateLimiter> factory) {
+        return rateLimiters.computeIfAbsent(host, factory);
+    }
+
+    /**
+     * @return renewal scheduler or null when proactive TT renewal is disabled
+     */
+    TokenRenewalScheduler getRenewalScheduler() {
+        return renewalScheduler;
+    }
+
+    /**
+     * @return key of the principal's tokens in {@link TokenStore}
+     */
+    String getStoreKey() {
+        return principal != null ? principal : "";
+    }
+
+    /**
+     * @return whether tokens were loaded from the token store already
+     */
+    boolean isStoreLoaded() {
+        return storeLoaded;
+    }
+
+    void setStoreLoaded() {
+        storeLoaded = true;
+    }
+
+    /**
+     * @return version of the stored tokens last seen, accessed under the auth lock
+     */
+    long getStoreVersion() {
+        return storeVersion;
+    }
+
+    void setStoreVersion(final long storeVersion) {
+        this.storeVersion = storeVersion;
+    }
+
+    void touch() {
+        lastAccess = System.nanoTime();
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Stops renewing tokens of an evicted session.
+     */
+    void close() {
+        if (renewalScheduler != null) {
+            renewalScheduler.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive token bucket limiting requests of a principal to a host.
+ * <p>
+ * Requests reserve their slots in arrival order and wait for them outside of the lock, so they are queued instead of
+ * rejected. The rate starts at the configured max. Every throttled response halves it and pauses the bucket for
+ * the time the server asked for, every accepted response raises it back by a twentieth of the max, so the bucket
+ * settles just below the rate the server accepts. An unlimited bucket has no rate to space the requests waiting for
+ * a pause to end, it releases them at random times over another period as long as the pause instead of all at once.
+ */
+final class RateLimiter {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    /** Throttling never slows the bucket below this fraction of the max rate. */
+    private static final double MIN_RATE_FRACTION = 0.01;
+    private static final double RECOVERY_FRACTION = 0.05;
+
+    private final double maxRate;
+    private final int burst;
+    private final Lock lock = new ReentrantLock();
+    private volatile double rate;
+    private volatile long pausedUntil;
+    private volatile boolean paused;
+    private long pauseNanos;
+    /** Time the next request would be sent at when the bucket has no stored permits. */
+    private long nextSlot = System.nanoTime();
+
+    /**
+     * Construct object.
+     * @param maxRate max requests per second, 0 for no limit
+     * @param burst number of requests which can be sent at once after the bucket was idle
+     */
+    RateLimiter(final double maxRate, final int burst) {
+        isTrue(maxRate >= 0, "rate can't be negative");
+        isTrue(burst > 0, "burst must be positive");
+        this.maxRate = maxRate;
+        this.burst = burst;
+        this.rate = maxRate;
+    }
+
+    /**
+     * @return current rate in requests per second, 0 when not limited
+     */
+    double getRate() {
+        return rate;
+    }
+
+    /**
+     * Waits until the request may be sent.
+     * @return nanoseconds waited
+     * @throws InterruptedIOException when interrupted while waiting
+     */
+    long acquire() throws InterruptedIOException {
+        if (maxRate == 0 && !paused) {
+            return 0;
+        }
+        final long wait = reserve();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for rate limit");
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Reserves the next slot.
+     * @return nanoseconds until the slot
+     */
+    long reserve() {
+        lock.lock();
+        try {
+            final long now = System.nanoTime();
+            final long interval = maxRate > 0 ? (long) (NANOS_PER_SECOND / rate) : 0;
+            long start = interval > 0 ? Math.max(now, nextSlot - interval * (burst - 1)) : now;
+            if (paused) {
+                if (pausedUntil - start > 0) {
+                    start = interval > 0 ? pausedUntil
+                            : pausedUntil + ThreadLocalRandom.current().nextLong(pauseNanos + 1);
+                } else {
+                    paused = false;
+                }
+            }
+            if (interval > 0) {
+                nextSlot = Math.max(nextSlot, start) + interval;
+            }
+            return start - now;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records an accepted request, raising the rate back towards the max.
+     */
+    void succeeded() {
+        if (rate >= maxRate) {
+            return;
+        }
+        lock.lock();
+        try {
+            rate = Math.min(maxRate, rate + maxRate * RECOVERY_FRACTION);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a throttled request, halving the rate and pausing the bucket.
+     * @param retryAfter time the server asked to wait
+     */
+    void throttled(final Duration retryAfter) {
+        notNull(retryAfter, "retry after can't be null");
+        lock.lock();
+        try {
+            rate = Math.max(maxRate * MIN_RATE_FRACTION, rate / 2);
+            final long until = System.nanoTime() + retryAfter.toNanos();
+            if (!paused || until - pausedUntil > 0) {
+                pausedUntil = until;
+                pauseNanos = retryAfter.toNanos();
+            }
+            paused = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
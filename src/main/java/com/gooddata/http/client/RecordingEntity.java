@@ -0,0 +1,178 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.apache.hc.core5.io.Closer;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Wraps a non-repeatable request entity and records its body while it is being sent, so the request can be
+ * replayed after an authentication challenge without reading the original stream twice.
+ * <p>
+ * Small bodies are recorded in memory, larger ones are spilled to a temporary file. Recording stops once the body
+ * exceeds the limit; the request is still sent, but {@link #replay()} fails then. Bodies of known length over
+ * the limit are not recorded at all, nothing is recorded with zero limit. The recording buffer is allocated only
+ * once the first byte is sent.
+ */
+final class RecordingEntity extends HttpEntityWrapper {
+
+    /** Max number of recorded bytes kept in memory before spilling to a file. */
+    static final long MEMORY_THRESHOLD = 256 * 1024;
+
+    private final HttpEntity original;
+    private final long limit;
+    private final Path directory;
+    private final BufferPool pool;
+    private boolean recordable;
+    private SpillingOutputStream recording;
+    private boolean started;
+    private boolean complete;
+    private HttpEntity replay;
+
+    /**
+     * @param original non-repeatable entity of the request
+     * @param limit max number of recorded bytes
+     * @param directory directory for the temporary file, {@code null} for the default temporary directory
+     */
+    RecordingEntity(final HttpEntity original, final long limit, final Path directory) {
+        this(original, limit, directory, null);
+    }
+
+    /**
+     * @param original non-repeatable entity of the request
+     * @param limit max number of recorded bytes
+     * @param directory directory for the temporary file, {@code null} for the default temporary directory
+     * @param pool pool of the memory buffers, {@code null} to record into an array
+     */
+    RecordingEntity(final HttpEntity original, final long limit, final Path directory, final BufferPool pool) {
+        super(original);
+        isTrue(limit >= 0, "limit can't be negative");
+        this.original = original;
+        this.limit = limit;
+        this.directory = directory;
+        this.pool = pool;
+        this.recordable = limit > 0 && original.getContentLength() <= limit;
+    }
+
+    HttpEntity getOriginal() {
+        return original;
+    }
+
+    @Override
+    public void writeTo(final OutputStream outStream) throws IOException {
+        started = true;
+        super.writeTo(recordable ? new TeeOutputStream(outStream) : outStream);
+        complete = true;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        // content read directly bypasses the recording
+        started = true;
+        discardRecording();
+        return super.getContent();
+    }
+
+    /**
+     * Returns the body for a repeated request. The original entity is returned when its content has not been
+     * consumed, e.g. the server rejected the request before reading it.
+     * @throws GoodDataRequestReplayException when the body was not recorded completely
+     */
+    HttpEntity replay() throws IOException {
+        if (!started) {
+            return original;
+        }
+        if (!recordable || !complete) {
+            throw new GoodDataRequestReplayException("Request body " + describeSize()
+                    + " can't be replayed after authentication challenge, max replayable size is " + limit
+                    + " bytes. Use a repeatable entity or raise the request replay limit.");
+        }
+        if (replay == null) {
+            // empty body
+            if (recording == null) {
+                recording = newRecording();
+            }
+            replay = recording.toEntity(original.getContentType() != null
+                    ? ContentType.parseLenient(original.getContentType())
+                    : null, original.getContentEncoding());
+        }
+        return replay;
+    }
+
+    /**
+     * Releases the recorded body, including its temporary file.
+     */
+    void release() {
+        if (replay != null) {
+            Closer.closeQuietly(replay);
+            replay = null;
+        }
+        discardRecording();
+    }
+
+    private SpillingOutputStream newRecording() {
+        return new SpillingOutputStream(Math.min(MEMORY_THRESHOLD, limit), directory, pool);
+    }
+
+    private void discardRecording() {
+        recordable = false;
+        if (recording != null) {
+            recording.discard();
+            recording = null;
+        }
+    }
+
+    private String describeSize() {
+        final long length = original.getContentLength();
+        return length >= 0 ? "of " + length + " bytes" : "of unknown length";
+    }
+
+    /**
+     * Copies bytes successfully written to the connection into the recording until the limit is exceeded.
+     */
+    private final class TeeOutputStream extends FilterOutputStream {
+
+        TeeOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            if (fits(1)) {
+                recording.write(b);
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            if (fits(len)) {
+                recording.write(b, off, len);
+            }
+        }
+
+        private boolean fits(final int len) {
+            if (recordable && (recording != null ? recording.size() : 0) + len > limit) {
+                discardRecording();
+            }
+            if (recordable && recording == null) {
+                recording = newRecording();
+            }
+            return recordable;
+        }
+    }
+}
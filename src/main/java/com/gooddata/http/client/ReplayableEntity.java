@@ -0,0 +1,163 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Repeatable request entity which reopens its source every time it is sent, instead of holding the content.
+ * A request with such entity is sent again after an authentication challenge without buffering its body, so uploads
+ * of any size can be retried with refreshed tokens.
+ * <pre>
+ * HttpPost upload = new HttpPost("/gdc/uploads/data.csv");
+ * upload.setEntity(ReplayableEntity.fromFile(path, ContentType.create("text/csv")));
+ * </pre>
+ */
+public abstract class ReplayableEntity extends AbstractHttpEntity {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final long length;
+
+    ReplayableEntity(final long length, final ContentType contentType) {
+        super(contentType, null);
+        this.length = length;
+    }
+
+    /**
+     * Creates entity sending content of the given file. The file is transferred by {@link FileChannel#transferTo}
+     * and must not change until the request completes.
+     * @param file file to send
+     * @param contentType content type, may be null
+     * @return entity
+     * @throws IOException when size of the file can't be read
+     */
+    public static ReplayableEntity fromFile(final Path file, final ContentType contentType) throws IOException {
+        notNull(file, "file can't be null");
+        return new FileEntity(file, Files.size(file), contentType);
+    }
+
+    /**
+     * Creates entity sending content of streams opened by the given supplier. Every stream must provide the same
+     * content, it is closed once sent.
+     * @param supplier opens a new stream with the content
+     * @param length length of the content or -1 when unknown
+     * @param contentType content type, may be null
+     * @return entity
+     */
+    public static ReplayableEntity fromStream(final StreamSupplier supplier, final long length,
+                                              final ContentType contentType) {
+        notNull(supplier, "supplier can't be null");
+        return new StreamEntity(supplier, length, contentType);
+    }
+
+    @Override
+    public final boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public final boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public final long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public void close() {
+        // nothing held between the sends
+    }
+
+    /**
+     * Transfers the given number of bytes of the file channel to the stream without copying them on the heap.
+     * @throws IOException when the file ends before all the bytes are transferred, e.g. it was truncated
+     */
+    static void transfer(final FileChannel channel, final Path file, final long length, final OutputStream outStream)
+            throws IOException {
+        final WritableByteChannel target = Channels.newChannel(outStream);
+        long position = 0;
+        while (position < length) {
+            final long transferred = channel.transferTo(position, length - position, target);
+            if (transferred <= 0) {
+                throw new IOException("File " + file + " ended after " + position + " bytes, expected " + length
+                        + " bytes");
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * Opens a new stream of the same content every time it is called.
+     */
+    @FunctionalInterface
+    public interface StreamSupplier {
+        InputStream open() throws IOException;
+    }
+
+    private static final class FileEntity extends ReplayableEntity {
+
+        private final Path file;
+
+        FileEntity(final Path file, final long length, final ContentType contentType) {
+            super(length, contentType);
+            this.file = file;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return Files.newInputStream(file);
+        }
+
+        @Override
+        public void writeTo(final OutputStream outStream) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                transfer(channel, file, getContentLength(), outStream);
+            }
+        }
+    }
+
+    private static final class StreamEntity extends ReplayableEntity {
+
+        private final StreamSupplier supplier;
+
+        StreamEntity(final StreamSupplier supplier, final long length, final ContentType contentType) {
+            super(length, contentType);
+            this.supplier = supplier;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return notNull(supplier.open(), "supplier returned null stream");
+        }
+
+        @Override
+        public void writeTo(final OutputStream outStream) throws IOException {
+            try (InputStream content = getContent()) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    outStream.write(buffer, 0, read);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.io.Closer;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Sends only one of identical GET requests running at the same time.
+ * <p>
+ * The first request is sent, the identical ones arriving while it is in flight wait for its response and get their
+ * own copy of it, or its failure. Responses with bodies too large to be shared in memory are not shared, the waiting
+ * requests are sent on their own then.
+ */
+final class RequestCoalescer {
+
+    /** Max size of a body copied to a byte array. */
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final ConcurrentMap<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Sends the request unless an identical one is in flight.
+     * @param key key of the request, see {@link #key(String, HttpHost, ClassicHttpRequest, String)}
+     * @param maxSharedBytes max size of a shared response body
+     * @param exchange sends the request and returns the buffered response
+     * @param joined called when the request joins an identical one in flight
+     * @return response of this or of the identical request
+     */
+    ClassicHttpResponse execute(final String key, final long maxSharedBytes, final Exchange exchange,
+                                final Runnable joined) throws IOException {
+        final CompletableFuture<CachedResponse> flight = new CompletableFuture<>();
+        final CompletableFuture<CachedResponse> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            joined.run();
+            final CachedResponse shared = await(running);
+            return shared != null ? shared.toResponse() : exchange.execute();
+        }
+        final ClassicHttpResponse response;
+        try {
+            response = exchange.execute();
+        } catch (IOException | RuntimeException | Error e) {
+            // waiting requests must not wait forever for a response which never comes
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        final CachedResponse shared;
+        try {
+            shared = copy(response, Math.min(maxSharedBytes, MAX_ARRAY_SIZE));
+        } catch (IOException | RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.complete(null);
+            Closer.closeQuietly(response);
+            throw e;
+        }
+        // late requests send their own
+        inFlight.remove(key, flight);
+        flight.complete(shared);
+        if (shared == null) {
+            return response;
+        }
+        Closer.closeQuietly(response);
+        return shared.toResponse();
+    }
+
+    /**
+     * @return copy of the response or null when its body is too large
+     */
+    private static CachedResponse copy(final ClassicHttpResponse response, final long maxBytes) throws IOException {
+        final HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return CachedResponse.copyOf(response, null);
+        }
+        final long length = entity.getContentLength();
+        return length >= 0 && length <= maxBytes ? CachedResponse.copyOf(response, EntityUtils.toByteArray(entity)) : null;
+    }
+
+    /**
+     * Waits for the response of the identical request, rethrowing its failure as is.
+     */
+    private static CachedResponse await(final CompletableFuture<CachedResponse> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for identical request", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Identical request failed", cause);
+        }
+    }
+
+    /**
+     * @param principal principal key, null for the client's default principal
+     * @param ignoredHeader name of a header not distinguishing the requests
+     * @return key identifying requests with the same response
+     */
+    static String key(final String principal, final HttpHost target, final ClassicHttpRequest request,
+                      final String ignoredHeader) {
+        final StringBuilder key = new StringBuilder(principal != null ? "p:" + principal : "d:")
+                .append('\n')
+                .append(target.toURI())
+                .append(request.getRequestUri());
+        for (Header header : request.getHeaders()) {
+            if (!header.getName().equalsIgnoreCase(ignoredHeader)) {
+                key.append('\n').append(header.getName()).append(": ").append(header.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Sends a request.
+     */
+    @FunctionalInterface
+    interface Exchange {
+        ClassicHttpResponse execute() throws IOException;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpHost;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Least recently used cache of GET responses limited by the approximate memory of the entries.
+ * <p>
+ * Entries are keyed by the principal, target and request URI, so that principals never share cached responses.
+ * GoodData resources vary by {@code Accept} only, which is part of the key as well. So is {@code Accept-Encoding} set
+ * by the caller, the cached body is kept encoded and decoded only for requests which left the encoding to the client.
+ * Responses varying by any other request header are not cached.
+ */
+final class ResponseCache {
+
+    /** Request headers the cached response depends on. */
+    private static final String[] KEY_HEADERS = {HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING};
+
+    /** An entry may take at most this fraction of the cache, so that a single response doesn't flush the others. */
+    private static final int MAX_ENTRY_FRACTION = 8;
+
+    private final long maxBytes;
+    private final Lock lock = new ReentrantLock();
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    /**
+     * @param maxBytes approximate max memory of the cached responses
+     */
+    ResponseCache(final long maxBytes) {
+        isTrue(maxBytes > 0, "cache size must be positive");
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return max size of a cached response body
+     */
+    long getMaxEntryBytes() {
+        return maxBytes / MAX_ENTRY_FRACTION;
+    }
+
+    /**
+     * @return true when the request header of given name is part of the cache key
+     */
+    static boolean isKeyHeader(final String name) {
+        for (String keyHeader : KEY_HEADERS) {
+            if (keyHeader.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    CachedResponse get(final String key) {
+        lock.lock();
+        try {
+            return entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores the entry, evicting the least recently used ones over the size limit.
+     */
+    void put(final String key, final CachedResponse entry) {
+        final long entrySize = entry.size();
+        lock.lock();
+        try {
+            final CachedResponse previous = entries.put(key, entry);
+            size += entrySize - (previous != null ? previous.size() : 0);
+            final Iterator<CachedResponse> eldest = entries.values().iterator();
+            while (size > maxBytes && eldest.hasNext()) {
+                size -= eldest.next().size();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void remove(final String key) {
+        lock.lock();
+        try {
+            final CachedResponse removed = entries.remove(key);
+            if (removed != null) {
+                size -= removed.size();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all responses cached for the principal.
+     * @param principal principal key, null for the client's default principal
+     */
+    void removePrincipal(final String principal) {
+        final String prefix = keyPrefix(principal);
+        lock.lock();
+        try {
+            final Iterator<Map.Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<String, CachedResponse> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    size -= entry.getValue().size();
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param principal principal key, null for the client's default principal
+     * @return key of the response to given request
+     */
+    static String key(final String principal, final HttpHost target, final ClassicHttpRequest request) {
+        final StringBuilder key = new StringBuilder(keyPrefix(principal))
+                .append(target.toURI())
+                .append(request.getRequestUri());
+        for (String name : KEY_HEADERS) {
+            for (Header header : request.getHeaders(name)) {
+                key.append('\n').append(name).append(": ").append(header.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    private static String keyPrefix(final String principal) {
+        return principal != null ? "p:" + principal + '\n' : "d:\n";
+    }
+}
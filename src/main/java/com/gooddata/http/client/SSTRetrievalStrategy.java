@@ -19,6 +19,19 @@ public interface SSTRetrievalStrategy {
      * @param httpHost HTTP host
      */
     String obtainSst(final HttpClient httpClient, final HttpHost httpHost) throws IOException;
+
+    /**
+     * Obtains SST and possibly also TT using given HTTP client and host. Strategies which get TT within the same
+     * round trip should return it, so that the client doesn't need to ask for it separately.
+     * By default returns just SST obtained by {@link #obtainSst(HttpClient, HttpHost)}.
+     * @param httpClient HTTP client
+     * @param httpHost HTTP host
+     * @return tokens, SST is always present
+     */
+    default TokenBundle obtainTokens(final HttpClient httpClient, final HttpHost httpHost) throws IOException {
+        return new TokenBundle(obtainSst(httpClient, httpHost));
+    }
+
     /**
      * Performs the logout using given HTTP client, host and logout parameters.
      * Should throw {@link GoodDataLogoutException} in case of logout problem.
@@ -0,0 +1,40 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import static org.apache.commons.lang3.Validate.notNull;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.http.HttpHost;
+import java.util.concurrent.CompletableFuture;
+/**
+ * Provides super-secure token (SST) to {@link GoodDataHttpAsyncClient}.
+ * Async counterpart of {@link SimpleSSTRetrievalStrategy}, logout is not supported for the same reasons (implemented as noop).
+ */
+public class SimpleAsyncSSTRetrievalStrategy implements AsyncSSTRetrievalStrategy {
+    private final String sst;
+    /**
+     * Creates new instance.
+     * @param sst super-secure token (SST)
+     */
+    public SimpleAsyncSSTRetrievalStrategy(final String sst) {
+        notNull(sst, "No SST set.");
+        this.sst = sst;
+    }
+
+    @Override
+    public CompletableFuture<String> obtainSst(final CloseableHttpAsyncClient httpClient, final HttpHost httpHost) {
+        return CompletableFuture.completedFuture(sst);
+    }
+
+    /**
+     * NO-OP as it cannot delete SST, because it is not known where it came from.
+     * @return completed future
+     */
+    @Override
+    public CompletableFuture<Void> logout(final CloseableHttpAsyncClient httpClient, final HttpHost httpHost, final String url,
+                                          final String sst, final String tt) {
+        return CompletableFuture.completedFuture(null);
+    }
+}
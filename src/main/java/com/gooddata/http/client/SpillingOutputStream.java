@@ -0,0 +1,186 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Output stream which keeps written data in memory up to a threshold and spills all of them to a temporary file
+ * once the threshold is exceeded. Collected data are then available as a repeatable {@link HttpEntity},
+ * whose temporary file is deleted when the entity is closed.
+ * <p>
+ * Data are kept in a growing array, or in buffers of a {@link BufferPool} when one is given. Data are spilled
+ * also when the pool has no buffers left; pooled buffers are returned when the entity is closed.
+ */
+final class SpillingOutputStream extends OutputStream {
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final String TEMP_FILE_PREFIX = "gooddata-http-";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final long threshold;
+    private final Path directory;
+    private MemoryBuffer memory;
+    private PooledBuffer pooled;
+    private Path file;
+    private OutputStream fileOut;
+    private long size;
+
+    /**
+     * @param threshold max number of bytes kept in memory
+     * @param directory directory for the temporary file, {@code null} for the default temporary directory
+     */
+    SpillingOutputStream(final long threshold, final Path directory) {
+        this(threshold, directory, null);
+    }
+
+    /**
+     * @param threshold max number of bytes kept in memory
+     * @param directory directory for the temporary file, {@code null} for the default temporary directory
+     * @param pool pool of the memory buffers, {@code null} to keep data in an array
+     */
+    SpillingOutputStream(final long threshold, final Path directory, final BufferPool pool) {
+        isTrue(threshold >= 0, "threshold can't be negative");
+        this.threshold = threshold;
+        this.directory = directory;
+        if (pool != null) {
+            this.pooled = new PooledBuffer(pool);
+        } else {
+            this.memory = new MemoryBuffer((int) Math.min(threshold, INITIAL_BUFFER_SIZE));
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureCapacity(1);
+        if (pooled != null && !pooled.write(b)) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b);
+        } else if (memory != null) {
+            memory.write(b);
+        }
+        size++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        ensureCapacity(len);
+        if (pooled != null && !pooled.write(b, off, len)) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+        } else if (memory != null) {
+            memory.write(b, off, len);
+        }
+        size += len;
+    }
+
+    private void ensureCapacity(final int len) throws IOException {
+        if (file == null && size + len > threshold) {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException {
+        file = directory != null
+                ? Files.createTempFile(directory, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX)
+                : Files.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        fileOut = new BufferedOutputStream(Files.newOutputStream(file));
+        if (pooled != null) {
+            pooled.writeTo(fileOut);
+            pooled.release();
+            pooled = null;
+        } else {
+            memory.writeTo(fileOut);
+            memory = null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileOut != null) {
+            fileOut.close();
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Closes the stream and returns collected data as a repeatable entity.
+     */
+    HttpEntity toEntity(final ContentType contentType, final String contentEncoding) throws IOException {
+        close();
+        if (file != null) {
+            return new FileBufferedEntity(file, size, contentType, contentEncoding);
+        }
+        if (pooled != null) {
+            return new PooledBufferEntity(pooled, contentType, contentEncoding);
+        }
+        return new ByteArrayEntity(memory.array(), 0, memory.size(), contentType, contentEncoding);
+    }
+
+    /**
+     * Closes the stream and deletes the temporary file, if any, or returns the pooled buffers.
+     * Used when collecting data failed.
+     */
+    void discard() {
+        if (pooled != null) {
+            pooled.release();
+        }
+        try {
+            close();
+        } catch (IOException ignored) {
+            // deleting the file is all that matters
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // nothing else to do
+            }
+        }
+    }
+
+    /**
+     * Exposes the internal buffer to avoid copying it.
+     */
+    private static final class MemoryBuffer extends ByteArrayOutputStream {
+        MemoryBuffer(final int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
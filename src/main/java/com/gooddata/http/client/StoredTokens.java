@@ -0,0 +1,36 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+/**
+ * Tokens loaded from {@link TokenStore} together with their version.
+ */
+public final class StoredTokens {
+
+    private final long version;
+    private final TokenBundle tokens;
+
+    /**
+     * Construct object.
+     * @param version version of the stored tokens, 0 when nothing has been stored yet
+     * @param tokens stored tokens, null when there are none
+     */
+    public StoredTokens(final long version, final TokenBundle tokens) {
+        this.version = version;
+        this.tokens = tokens;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return stored tokens or null when there are none
+     */
+    public TokenBundle getTokens() {
+        return tokens;
+    }
+}
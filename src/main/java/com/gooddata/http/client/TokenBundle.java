@@ -0,0 +1,80 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import java.time.Duration;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notEmpty;
+
+/**
+ * Tokens obtained by a single authentication round trip - SST, optionally TT and its lifetime.
+ * When TT is present, the client uses it directly instead of asking for a new one.
+ *
+ * @see SSTRetrievalStrategy#obtainTokens
+ */
+public final class TokenBundle {
+
+    private final String sst;
+    private final String tt;
+    private final Duration ttLifetime;
+
+    /**
+     * Construct bundle with SST only.
+     * @param sst SST
+     */
+    public TokenBundle(final String sst) {
+        this(sst, null, null);
+    }
+
+    /**
+     * Construct bundle with SST and TT of unknown lifetime.
+     * @param sst SST
+     * @param tt TT, may be null
+     */
+    public TokenBundle(final String sst, final String tt) {
+        this(sst, tt, null);
+    }
+
+    /**
+     * Construct object.
+     * @param sst SST
+     * @param tt TT, may be null
+     * @param ttLifetime how long TT is valid since it was issued, may be null when unknown
+     */
+    public TokenBundle(final String sst, final String tt, final Duration ttLifetime) {
+        notEmpty(sst, "SST can't be empty");
+        isTrue(ttLifetime == null || tt != null, "TT lifetime can't be set without TT");
+        isTrue(ttLifetime == null || !ttLifetime.isNegative(), "TT lifetime can't be negative");
+        this.sst = sst;
+        this.tt = tt;
+        this.ttLifetime = ttLifetime;
+    }
+
+    public String getSst() {
+        return sst;
+    }
+
+    /**
+     * @return TT or null when it has to be obtained separately
+     */
+    public String getTt() {
+        return tt;
+    }
+
+    /**
+     * @return TT lifetime or null when unknown
+     */
+    public Duration getTtLifetime() {
+        return ttLifetime;
+    }
+
+    @Override
+    public String toString() {
+        // never print tokens
+        return "TokenBundle{tt=" + (tt != null ? "present" : "absent") + ", ttLifetime=" + ttLifetime + "}";
+    }
+}
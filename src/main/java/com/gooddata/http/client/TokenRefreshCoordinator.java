@@ -0,0 +1,120 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Holds the current {@link AuthTokens} and makes sure only one token refresh runs at a time.
+ * <p>
+ * All callers which fail with the same token generation share a single refresh result. A caller failing with
+ * a generation which has already been replaced gets the current tokens immediately, without triggering another
+ * refresh.
+ */
+final class TokenRefreshCoordinator {
+
+    private final AtomicLong generations = new AtomicLong();
+    private final AtomicReference<CompletableFuture<AuthTokens>> inFlight = new AtomicReference<>();
+    private volatile AuthTokens current = AuthTokens.EMPTY;
+
+    AuthTokens current() {
+        return current;
+    }
+
+    /**
+     * Installs given tokens as a new generation.
+     * @return installed tokens
+     */
+    AuthTokens install(final String sst, final String tt) {
+        return install(new AuthTokens(sst, tt));
+    }
+
+    /**
+     * Forgets current tokens, following requests are sent unauthenticated.
+     */
+    void reset() {
+        install(AuthTokens.EMPTY);
+    }
+
+    /**
+     * Obtains tokens newer than the given stale ones.
+     * Either returns the current tokens, when they have already been replaced, joins the refresh in progress
+     * or starts a new refresh using given function. The function receives the current tokens and is called
+     * on the calling thread.
+     *
+     * @param stale tokens used by the request which failed
+     * @param refresher obtains new tokens
+     * @return future completed with the refreshed tokens
+     */
+    CompletableFuture<AuthTokens> refresh(final AuthTokens stale,
+                                          final Function<AuthTokens, CompletableFuture<AuthTokens>> refresher) {
+        notNull(stale, "stale tokens can't be null");
+        notNull(refresher, "refresher can't be null");
+        while (true) {
+            final AuthTokens tokens = current;
+            if (isNewer(tokens, stale)) {
+                return CompletableFuture.completedFuture(tokens);
+            }
+            final CompletableFuture<AuthTokens> running = inFlight.get();
+            if (running != null) {
+                return running;
+            }
+            final CompletableFuture<AuthTokens> refresh = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, refresh)) {
+                // another refresh might have finished between the checks above
+                final AuthTokens latest = current;
+                if (isNewer(latest, stale)) {
+                    inFlight.compareAndSet(refresh, null);
+                    refresh.complete(latest);
+                    return refresh;
+                }
+                start(latest, refresher, refresh);
+                return refresh;
+            }
+        }
+    }
+
+    private void start(final AuthTokens tokens, final Function<AuthTokens, CompletableFuture<AuthTokens>> refresher,
+                       final CompletableFuture<AuthTokens> refresh) {
+        CompletableFuture<AuthTokens> obtained;
+        try {
+            obtained = refresher.apply(tokens);
+        } catch (RuntimeException | Error e) {
+            // waiting requests must not wait forever for a refresh which never completes
+            obtained = CompletableFuture.failedFuture(e);
+        }
+        obtained.whenComplete((result, failure) -> {
+            // publish new tokens before releasing the in-flight slot, so late callers see the new generation
+            if (failure == null) {
+                final AuthTokens installed = install(result);
+                inFlight.compareAndSet(refresh, null);
+                refresh.complete(installed);
+            } else {
+                inFlight.compareAndSet(refresh, null);
+                refresh.completeExceptionally(failure);
+            }
+        });
+    }
+
+    /**
+     * Installs given tokens as a new generation.
+     * @return installed tokens
+     */
+    AuthTokens install(final AuthTokens tokens) {
+        final AuthTokens installed = tokens.withGeneration(generations.incrementAndGet());
+        current = installed;
+        return installed;
+    }
+
+    private static boolean isNewer(final AuthTokens tokens, final AuthTokens stale) {
+        return tokens.getGeneration() != stale.getGeneration() && tokens.getTt() != null;
+    }
+}
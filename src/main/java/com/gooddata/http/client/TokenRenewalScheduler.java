@@ -0,0 +1,192 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Renews TT shortly before it expires, so that requests don't run into TT authentication challenges.
+ * <p>
+ * Every newly installed TT gets its renewal scheduled at its lifetime minus the margin, but not sooner than at half
+ * of the lifetime. The lifetime is the configured one, otherwise the one reported together with the TT, otherwise
+ * the one learned from the age of a TT rejected by the server. Nothing is scheduled while the lifetime is unknown,
+ * expired TT is then refreshed on demand as usual.
+ */
+final class TokenRenewalScheduler {
+
+    private static final long UNKNOWN = Long.MAX_VALUE;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final ScheduledExecutorService executor;
+    private final Executor runner;
+    private final Duration ttLifetime;
+    private final Duration margin;
+    private final Consumer<AuthTokens> renewal;
+    private final AtomicReference<Renewal> scheduled = new AtomicReference<>();
+    private final AtomicLong learnedLifetimeNanos = new AtomicLong(UNKNOWN);
+    private volatile boolean closed;
+
+    /**
+     * Construct object.
+     * @param executor executor running the renewals
+     * @param ttLifetime configured TT lifetime, null to use the reported or learned one
+     * @param margin how long before the expiry TT is renewed
+     * @param renewal renews given tokens, called on the executor thread
+     */
+    TokenRenewalScheduler(final ScheduledExecutorService executor, final Duration ttLifetime, final Duration margin,
+                          final Consumer<AuthTokens> renewal) {
+        this(executor, null, ttLifetime, margin, renewal);
+    }
+
+    /**
+     * Construct object.
+     * @param executor executor timing the renewals
+     * @param runner executor running the renewals once they are due, e.g. on virtual threads,
+     *               null to run them on the executor thread
+     * @param ttLifetime configured TT lifetime, null to use the reported or learned one
+     * @param margin how long before the expiry TT is renewed
+     * @param renewal renews given tokens
+     */
+    TokenRenewalScheduler(final ScheduledExecutorService executor, final Executor runner, final Duration ttLifetime,
+                          final Duration margin, final Consumer<AuthTokens> renewal) {
+        this.executor = notNull(executor, "executor can't be null");
+        this.runner = runner;
+        this.ttLifetime = ttLifetime;
+        this.margin = notNull(margin, "margin can't be null");
+        this.renewal = notNull(renewal, "renewal can't be null");
+    }
+
+    /**
+     * Schedules renewal of newly installed tokens, cancelling the renewal of previous ones.
+     * Tokens of the same or older generation than already scheduled ones are ignored,
+     * tokens without TT just cancel the scheduled renewal.
+     */
+    void schedule(final AuthTokens tokens) {
+        notNull(tokens, "tokens can't be null");
+        while (!closed) {
+            final Renewal previous = scheduled.get();
+            if (previous != null && previous.tokens.getGeneration() >= tokens.getGeneration()) {
+                return;
+            }
+            final Renewal next = new Renewal(tokens, System.nanoTime());
+            if (scheduled.compareAndSet(previous, next)) {
+                if (previous != null) {
+                    previous.cancel();
+                }
+                final long lifetime = lifetimeNanos(tokens);
+                if (tokens.getTt() != null && lifetime != UNKNOWN) {
+                    start(next, renewalDelay(lifetime));
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Cancels the scheduled renewal, no renewal is scheduled anymore.
+     */
+    void close() {
+        closed = true;
+        final Renewal previous = scheduled.getAndSet(null);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Learns the TT lifetime from the age of the current TT rejected by the server.
+     */
+    void ttRejected(final AuthTokens tokens) {
+        final Renewal current = scheduled.get();
+        if (current != null && current.tokens.getGeneration() == tokens.getGeneration()) {
+            final long age = System.nanoTime() - current.installedAt;
+            if (learnedLifetimeNanos.getAndAccumulate(age, Math::min) == UNKNOWN) {
+                log.debug("Learned TT lifetime {} ms", NANOSECONDS.toMillis(age));
+            }
+        }
+    }
+
+    private void start(final Renewal next, final long delay) {
+        try {
+            next.start(executor.schedule(() -> dispatch(next), delay, NANOSECONDS));
+        } catch (RejectedExecutionException e) {
+            log.debug("TT renewal not scheduled, executor rejected it", e);
+        }
+    }
+
+    private void dispatch(final Renewal renewal) {
+        if (runner == null) {
+            run(renewal);
+            return;
+        }
+        try {
+            runner.execute(() -> run(renewal));
+        } catch (RejectedExecutionException e) {
+            log.debug("TT renewal not run, executor rejected it", e);
+        }
+    }
+
+    private void run(final Renewal renewal) {
+        if (!closed && scheduled.get() == renewal) {
+            log.debug("Renewing TT before it expires");
+            this.renewal.accept(renewal.tokens);
+        }
+    }
+
+    private long lifetimeNanos(final AuthTokens tokens) {
+        if (ttLifetime != null) {
+            return ttLifetime.toNanos();
+        }
+        if (tokens.getTtLifetime() != null) {
+            return tokens.getTtLifetime().toNanos();
+        }
+        return learnedLifetimeNanos.get();
+    }
+
+    private long renewalDelay(final long lifetime) {
+        return Math.max(lifetime - margin.toNanos(), lifetime / 2);
+    }
+
+    private static final class Renewal {
+        private final AuthTokens tokens;
+        private final long installedAt;
+        private volatile Future<?> future;
+        private volatile boolean cancelled;
+
+        private Renewal(final AuthTokens tokens, final long installedAt) {
+            this.tokens = tokens;
+            this.installedAt = installedAt;
+        }
+
+        private void start(final Future<?> future) {
+            this.future = future;
+            if (cancelled) {
+                future.cancel(false);
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            final Future<?> running = future;
+            if (running != null) {
+                running.cancel(false);
+            }
+        }
+    }
+}
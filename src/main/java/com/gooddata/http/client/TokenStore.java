@@ -0,0 +1,40 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+
+import java.io.IOException;
+
+/**
+ * Storage of tokens shared by clients, possibly in different processes, authenticating as the same principal.
+ * <p>
+ * Clients read the store before obtaining new tokens and adopt tokens already refreshed by somebody else.
+ * Newly obtained tokens are published by {@link #compareAndSet}, so that concurrent writers can't overwrite
+ * newer tokens with older ones. Implementations must be thread-safe.
+ *
+ * @see GoodDataHttpClientBuilder#setTokenStore(TokenStore)
+ * @see MappedFileTokenStore
+ */
+public interface TokenStore {
+
+    /**
+     * Loads tokens stored under given key.
+     * @param key principal key, empty string for the client's default principal
+     * @return stored tokens, {@link StoredTokens#getTokens()} is null when there are none
+     * @throws IOException when the store can't be read
+     */
+    StoredTokens load(String key) throws IOException;
+
+    /**
+     * Stores tokens under given key, when the version of stored tokens is the expected one.
+     * The version of the stored tokens is then incremented.
+     * @param key principal key, empty string for the client's default principal
+     * @param expectedVersion version of the tokens the caller has seen
+     * @param tokens tokens to store, null to remove stored tokens
+     * @return true when stored, false when the stored version differs
+     * @throws IOException when the store can't be written
+     */
+    boolean compareAndSet(String key, long expectedVersion, TokenBundle tokens) throws IOException;
+}
@@ -5,7 +5,7 @@
  */
 package com.gooddata.http.client;
 import org.apache.hc.core5.http.Header;
-import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpResponse;
 import static com.gooddata.http.client.GoodDataHttpClient.SST_HEADER;
 import static com.gooddata.http.client.GoodDataHttpClient.TT_HEADER;
 import static org.apache.commons.lang3.Validate.notNull;
@@ -14,15 +14,24 @@ import static org.apache.commons.lang3.Validate.notNull;
  */
 class TokenUtils {
     private TokenUtils() {}
-    static String extractSST(final ClassicHttpResponse response) {
+    static String extractSST(final HttpResponse response) {
         return extractToken(response, SST_HEADER);
     }
 
-    static String extractTT(final ClassicHttpResponse response) {
+    static String extractTT(final HttpResponse response) {
         return extractToken(response, TT_HEADER);
     }
 
-    private static String extractToken(final ClassicHttpResponse response, final String headerName) {
+    /**
+     * @return TT or null when the response doesn't contain it
+     */
+    static String findTT(final HttpResponse response) {
+        notNull(response, "response can't be null");
+        final Header header = response.getFirstHeader(TT_HEADER);
+        return header != null ? header.getValue() : null;
+    }
+
+    private static String extractToken(final HttpResponse response, final String headerName) {
         notNull(response, "response can't be null");
         notNull(headerName, "headerName can't be null");
         final Header header = response.getFirstHeader(headerName);
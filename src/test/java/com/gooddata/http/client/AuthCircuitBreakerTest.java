@@ -0,0 +1,116 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AuthCircuitBreakerTest {
+
+    private static final Duration BACKOFF = Duration.ofMillis(100);
+
+    private List<AuthCircuitState> states;
+
+    @BeforeEach
+    public void setUp() {
+        states = new CopyOnWriteArrayList<>();
+    }
+
+    @Test
+    public void failed_opensAfterThreshold() {
+        final AuthCircuitBreaker breaker = new AuthCircuitBreaker(2, BACKOFF, BACKOFF, states::add);
+        final IOException failure = new IOException("login unavailable");
+
+        breaker.acquire();
+        breaker.failed(failure);
+        assertEquals(AuthCircuitState.CLOSED, breaker.getState());
+        breaker.acquire();
+        breaker.failed(failure);
+
+        assertEquals(AuthCircuitState.OPEN, breaker.getState());
+        final GoodDataAuthCircuitOpenException e = assertThrows(GoodDataAuthCircuitOpenException.class,
+                breaker::acquire);
+        assertSame(failure, e.getCause());
+        assertTrue(e.getRetryAfter().compareTo(BACKOFF) <= 0);
+        assertEquals(List.of(AuthCircuitState.OPEN), states);
+    }
+
+    @Test
+    public void succeeded_resetsFailures() {
+        final AuthCircuitBreaker breaker = new AuthCircuitBreaker(2, BACKOFF, BACKOFF, states::add);
+
+        breaker.failed(new IOException());
+        breaker.succeeded();
+        breaker.failed(new IOException());
+
+        assertEquals(AuthCircuitState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void acquire_singleProbeAfterBackoff() throws Exception {
+        final AuthCircuitBreaker breaker = new AuthCircuitBreaker(1, BACKOFF, BACKOFF, states::add);
+        breaker.failed(new IOException());
+        Thread.sleep(BACKOFF.toMillis() + 10);
+
+        breaker.acquire();
+
+        assertEquals(AuthCircuitState.HALF_OPEN, breaker.getState());
+        // others fail fast while the probe runs
+        assertThrows(GoodDataAuthCircuitOpenException.class, breaker::acquire);
+        breaker.succeeded();
+        breaker.acquire();
+        assertEquals(List.of(AuthCircuitState.OPEN, AuthCircuitState.HALF_OPEN, AuthCircuitState.CLOSED), states);
+    }
+
+    @Test
+    public void abandoned_allowsAnotherProbe() throws Exception {
+        final AuthCircuitBreaker breaker = new AuthCircuitBreaker(1, BACKOFF, BACKOFF, states::add);
+        breaker.failed(new IOException());
+        Thread.sleep(BACKOFF.toMillis() + 10);
+        breaker.acquire();
+
+        breaker.abandoned();
+
+        breaker.acquire();
+        assertEquals(AuthCircuitState.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void failed_probeDoublesBackoff() throws Exception {
+        final AuthCircuitBreaker breaker = new AuthCircuitBreaker(1, BACKOFF, Duration.ofSeconds(10), states::add);
+        breaker.failed(new IOException());
+        Thread.sleep(BACKOFF.toMillis() + 10);
+        breaker.acquire();
+
+        breaker.failed(new IOException());
+
+        assertEquals(AuthCircuitState.OPEN, breaker.getState());
+        final GoodDataAuthCircuitOpenException e = assertThrows(GoodDataAuthCircuitOpenException.class,
+                breaker::acquire);
+        // doubled and shortened by up to a half
+        assertTrue(e.getRetryAfter().compareTo(BACKOFF.minusMillis(10)) >= 0, e.getRetryAfter().toString());
+        assertTrue(e.getRetryAfter().compareTo(BACKOFF.multipliedBy(2)) <= 0, e.getRetryAfter().toString());
+    }
+
+    @Test
+    public void failed_disabled() {
+        final AuthCircuitBreaker breaker = new AuthCircuitBreaker(0, BACKOFF, BACKOFF, states::add);
+
+        for (int i = 0; i < 10; i++) {
+            breaker.acquire();
+            breaker.failed(new IOException());
+        }
+
+        assertEquals(AuthCircuitState.CLOSED, breaker.getState());
+    }
+}
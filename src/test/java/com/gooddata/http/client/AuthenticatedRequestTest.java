@@ -0,0 +1,131 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.apache.hc.core5.net.URIAuthority;
+import org.apache.hc.core5.util.Timeout;
+import org.junit.jupiter.api.Test;
+import static com.gooddata.http.client.GoodDataHttpClient.TT_HEADER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AuthenticatedRequestTest {
+
+    private static final Header TT = new BasicHeader(TT_HEADER, "tt");
+
+    @Test
+    public void addsTtWithoutModifyingRequest() throws Exception {
+        final HttpGet original = new HttpGet("/gdc/projects");
+        original.addHeader(HttpHeaders.ACCEPT, "application/json");
+
+        final AuthenticatedRequest request = new AuthenticatedRequest(original, TT);
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"v1\"");
+        request.setScheme("https");
+        request.setAuthority(new URIAuthority("secure.gooddata.com"));
+
+        assertEquals(3, request.getHeaders().length);
+        assertEquals("tt", request.getFirstHeader(TT_HEADER).getValue());
+        assertEquals("application/json", request.getHeader(HttpHeaders.ACCEPT).getValue());
+        assertEquals("https://secure.gooddata.com/gdc/projects", request.getUri().toString());
+        assertEquals(1, original.getHeaders().length);
+        assertFalse(original.containsHeader(TT_HEADER));
+        assertNull(original.getAuthority());
+        assertThrows(UnsupportedOperationException.class, () -> request.setPath("/gdc"));
+    }
+
+    @Test
+    public void replacesTtOfRequest() {
+        final HttpGet original = new HttpGet("/gdc/projects");
+        original.addHeader(TT_HEADER, "stale");
+
+        final AuthenticatedRequest request = new AuthenticatedRequest(original, TT);
+
+        assertEquals(1, request.countHeaders(TT_HEADER));
+        assertEquals("tt", request.getFirstHeader(TT_HEADER).getValue());
+        assertEquals("stale", original.getFirstHeader(TT_HEADER).getValue());
+    }
+
+    @Test
+    public void removesHeadersOfRequest() {
+        final HttpGet original = new HttpGet("/gdc/projects");
+        original.addHeader(HttpHeaders.ACCEPT, "application/json");
+
+        final AuthenticatedRequest request = new AuthenticatedRequest(original, TT);
+        request.removeHeaders(HttpHeaders.ACCEPT);
+        request.addHeader(HttpHeaders.EXPECT, "100-continue");
+
+        assertFalse(request.containsHeader(HttpHeaders.ACCEPT));
+        assertTrue(request.containsHeader(HttpHeaders.EXPECT));
+        assertEquals(2, request.getHeaders().length);
+        assertTrue(original.containsHeader(HttpHeaders.ACCEPT));
+        assertFalse(original.containsHeader(HttpHeaders.EXPECT));
+    }
+
+    @Test
+    public void withTtKeepsAddedHeadersAndEntity() {
+        final HttpPost original = new HttpPost("/gdc/projects");
+        final HttpEntity recorded = new StringEntity("body");
+
+        final AuthenticatedRequest request = new AuthenticatedRequest(original, TT);
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, "yesterday");
+        request.setEntity(recorded);
+        final AuthenticatedRequest retry = request.withTt(new BasicHeader(TT_HEADER, "refreshed"));
+
+        assertEquals(1, retry.countHeaders(TT_HEADER));
+        assertEquals("refreshed", retry.getFirstHeader(TT_HEADER).getValue());
+        assertEquals("yesterday", retry.getFirstHeader(HttpHeaders.IF_MODIFIED_SINCE).getValue());
+        assertSame(recorded, retry.getEntity());
+        assertSame(original, retry.getOriginal());
+        assertNull(original.getEntity());
+    }
+
+    @Test
+    public void configOfRequest() {
+        final HttpGet original = new HttpGet("/gdc/projects");
+        final RequestConfig config = RequestConfig.custom().setResponseTimeout(Timeout.ofSeconds(5)).build();
+        original.setConfig(config);
+
+        assertSame(config, new AuthenticatedRequest(original, TT).getConfig());
+        assertNull(new AuthenticatedRequest(new BasicClassicHttpRequest("GET", "/gdc"), TT).getConfig());
+    }
+
+    @Test
+    public void withoutTtKeepsHeaders() {
+        final HttpGet original = new HttpGet("/gdc/projects");
+
+        final AuthenticatedRequest request = new AuthenticatedRequest(original, null);
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"v1\"");
+        final AuthenticatedRequest copy = request.withTt(null);
+        request.removeHeaders(HttpHeaders.ACCEPT);
+        final AuthenticatedRequest replacedCopy = request.withTt(null);
+
+        assertFalse(copy.containsHeader(TT_HEADER));
+        assertEquals("\"v1\"", copy.getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+        assertFalse(replacedCopy.containsHeader(TT_HEADER));
+        assertEquals("\"v1\"", replacedCopy.getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+    }
+
+    @Test
+    public void cancelAbortsRequest() {
+        final HttpGet original = new HttpGet("/gdc/projects");
+
+        new AuthenticatedRequest(original, TT).cancel();
+
+        assertTrue(original.isCancelled());
+    }
+}
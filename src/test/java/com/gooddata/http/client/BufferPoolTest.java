@@ -0,0 +1,125 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferPoolTest {
+
+    private final AtomicInteger leaks = new AtomicInteger();
+
+    @Test
+    public void bodyStoredInHeapBuffers() throws Exception {
+        storeBody(false);
+    }
+
+    @Test
+    public void bodyStoredInDirectBuffers() throws Exception {
+        storeBody(true);
+    }
+
+    private void storeBody(final boolean direct) throws Exception {
+        final BufferPool pool = new BufferPool(1024 * 1024, direct, leaks::incrementAndGet);
+        final byte[] content = new byte[100_000];
+        new Random(42).nextBytes(content);
+
+        final PooledBuffer buffer = new PooledBuffer(pool);
+        assertTrue(buffer.write(content[0]));
+        assertTrue(buffer.write(content, 1, content.length - 1));
+
+        // 4 + 16 + 64 + 256 KiB, the last chunk of the largest class
+        assertEquals(340 * 1024, pool.getLeasedBytes());
+        final HttpEntity entity = new PooledBufferEntity(buffer, ContentType.APPLICATION_OCTET_STREAM, null);
+        assertEquals(content.length, entity.getContentLength());
+        assertArrayEquals(content, EntityUtils.toByteArray(entity));
+        final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        entity.writeTo(copy);
+        assertArrayEquals(content, copy.toByteArray());
+
+        entity.close();
+        assertEquals(0, pool.getLeasedBytes());
+        assertEquals(340 * 1024, pool.getAllocatedBytes());
+        assertThrows(IOException.class, entity::getContent);
+        assertEquals(0, leaks.get());
+    }
+
+    @Test
+    public void releasedBuffersReused() {
+        final BufferPool pool = new BufferPool(1024 * 1024, false, leaks::incrementAndGet);
+        final ByteBuffer buffer = pool.acquire(0);
+        buffer.put((byte) 1);
+        pool.release(buffer);
+
+        final ByteBuffer reused = pool.acquire(0);
+
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(BufferPool.SIZE_CLASSES[0], pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void budgetNotExceeded() {
+        final BufferPool pool = new BufferPool(20 * 1024, false, leaks::incrementAndGet);
+
+        final PooledBuffer buffer = new PooledBuffer(pool);
+        assertTrue(buffer.write(new byte[20 * 1024], 0, 20 * 1024));
+        assertFalse(buffer.write(1));
+        assertEquals(20 * 1024, buffer.size());
+        assertNull(pool.acquire(0));
+
+        buffer.release();
+        assertEquals(0, pool.getLeasedBytes());
+    }
+
+    @Test
+    public void freeBuffersTrimmedForOtherSizeClass() {
+        final BufferPool pool = new BufferPool(64 * 1024, false, leaks::incrementAndGet);
+        final ByteBuffer[] small = new ByteBuffer[4];
+        for (int i = 0; i < small.length; i++) {
+            small[i] = pool.acquire(1);
+        }
+        Arrays.stream(small).forEach(pool::release);
+
+        assertNotNull(pool.acquire(2));
+        assertEquals(64 * 1024, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void leakDetected() throws Exception {
+        final BufferPool pool = new BufferPool(1024 * 1024, false, leaks::incrementAndGet);
+        writeAndForget(pool);
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (leaks.get() == 0 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, leaks.get());
+        assertEquals(0, pool.getLeasedBytes());
+    }
+
+    private static void writeAndForget(final BufferPool pool) {
+        new PooledBuffer(pool).write(new byte[10], 0, 10);
+    }
+}
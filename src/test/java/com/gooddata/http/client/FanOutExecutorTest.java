@@ -0,0 +1,176 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import static net.jadler.Jadler.closeJadler;
+import static net.jadler.Jadler.initJadler;
+import static net.jadler.Jadler.onRequest;
+import static net.jadler.Jadler.port;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.BasicHttpClientResponseHandler;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.HttpHost;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class FanOutExecutorTest {
+
+    private ExecutorService executor;
+    private HttpHost host;
+    private FanOutExecutor fanOut;
+
+    @BeforeEach
+    public void setUp() {
+        initJadler();
+        host = new HttpHost("http", "localhost", port());
+        executor = Executors.newCachedThreadPool();
+        final GoodDataHttpClient client = new GoodDataHttpClient(host, new SimpleSSTRetrievalStrategy("SST"));
+        client.setTokens("SST", "TT");
+        fanOut = new FanOutExecutor(client, executor, 4);
+        onRequest().havingPathEqualTo("/gdc/projects/fast").respond().withStatus(200).withBody("fast");
+        onRequest().havingPathEqualTo("/gdc/projects/slow").respond().withStatus(200).withBody("slow")
+                .withDelay(500, TimeUnit.MILLISECONDS);
+        onRequest().havingPathEqualTo("/gdc/projects/hang").respond().withStatus(200).withBody("hang")
+                .withDelay(5, TimeUnit.SECONDS);
+        onRequest().havingPathEqualTo("/gdc/projects/broken").respond().withStatus(500);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+        closeJadler();
+    }
+
+    @Test
+    public void execute_completionOrder() {
+        final long start = System.nanoTime();
+        final List<String> values = new ArrayList<>();
+        try (FanOutExecution<String> execution = fanOut.execute(host, requests("slow", "fast", "slow", "fast"),
+                new BasicHttpClientResponseHandler(), null)) {
+            while (execution.hasNext()) {
+                values.add(execution.next().getValue());
+            }
+        }
+
+        assertEquals(List.of("fast", "fast", "slow", "slow"), values);
+        // the slow requests run in parallel
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    public void execute_failureIsolated() {
+        final List<FanOutResult<String>> results = collect(fanOut.execute(host, requests("fast", "broken", "fast"),
+                new BasicHttpClientResponseHandler(), null));
+
+        assertEquals(3, results.size());
+        for (FanOutResult<String> result : results) {
+            if (result.getIndex() == 1) {
+                assertFalse(result.isSuccess());
+                assertTrue(result.getFailure() instanceof HttpResponseException);
+            } else {
+                assertEquals("fast", result.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void execute_deadline() {
+        final FanOutExecutor serial = new FanOutExecutor(new GoodDataHttpClient(host,
+                new SimpleSSTRetrievalStrategy("SST")), executor, 1);
+
+        final long start = System.nanoTime();
+        final List<FanOutResult<String>> results = collect(serial.execute(host, requests("fast", "hang", "fast"),
+                new BasicHttpClientResponseHandler(), Duration.ofMillis(300)));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3), "hanging request not aborted");
+        assertEquals(3, results.size());
+        assertEquals("fast", results.get(0).getValue());
+        assertTrue(results.get(1).getFailure() instanceof TimeoutException);
+        assertTrue(results.get(2).getFailure() instanceof TimeoutException);
+    }
+
+    @Test
+    public void cancel() {
+        final FanOutExecution<String> execution = fanOut.execute(host, requests("hang", "hang"),
+                new BasicHttpClientResponseHandler(), null);
+
+        execution.cancel();
+
+        final List<FanOutResult<String>> results = collect(execution);
+        assertEquals(2, results.size());
+        for (FanOutResult<String> result : results) {
+            assertTrue(result.getFailure() instanceof CancellationException);
+        }
+    }
+
+    @Test
+    public void deadlineNotExceededByRequestIgnoringAbort() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        // like a request waiting for a rate limit, which the abort doesn't interrupt
+        final FanOutExecution<String> execution = new FanOutExecution<>(requests("fast", "stuck"),
+                (request, context) -> {
+                    if (request.getPath().endsWith("stuck")) {
+                        release.await();
+                    }
+                    return "done";
+                }, HttpClientContext::create, Duration.ofMillis(200));
+        execution.start(executor, 2);
+
+        final long start = System.nanoTime();
+        final List<FanOutResult<String>> results = collect(execution);
+        release.countDown();
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "waited for the stuck request");
+        assertEquals(2, results.size());
+        assertEquals("done", results.get(0).getValue());
+        assertEquals(1, results.get(1).getIndex());
+        assertTrue(results.get(1).getFailure() instanceof TimeoutException);
+        assertFalse(execution.hasNext());
+    }
+
+    @Test
+    public void cancel_ownFailurePerRequest() {
+        final FanOutExecution<String> execution = new FanOutExecution<>(requests("a", "b"), (request, context) -> "",
+                HttpClientContext::create, null);
+
+        execution.cancel();
+
+        final List<FanOutResult<String>> results = collect(execution);
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).getFailure() instanceof CancellationException);
+        assertTrue(results.get(1).getFailure() instanceof CancellationException);
+        assertNotSame(results.get(0).getFailure(), results.get(1).getFailure());
+    }
+
+    private static List<ClassicHttpRequest> requests(final String... ids) {
+        final List<ClassicHttpRequest> requests = new ArrayList<>();
+        for (String id : ids) {
+            requests.add(new HttpGet("/gdc/projects/" + id));
+        }
+        return requests;
+    }
+
+    private static <T> List<FanOutResult<T>> collect(final FanOutExecution<T> execution) {
+        final List<FanOutResult<T>> results = new ArrayList<>();
+        execution.forEachRemaining(results::add);
+        return results;
+    }
+}
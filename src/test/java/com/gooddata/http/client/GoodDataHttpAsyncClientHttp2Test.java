@@ -0,0 +1,155 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.StringAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncResponseBuilder;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link GoodDataHttpAsyncClient} in HTTP/2 mode against a local h2c stub server.
+ */
+public class GoodDataHttpAsyncClientHttp2Test {
+    private static final String GDC_TOKEN_PATH = "/gdc/account/token";
+    private static final String GDC_LOGIN_PATH = "/gdc/account/login";
+    private static final String GDC_PROJECTS_PATH = "/gdc/projects";
+    private static final String SST_HEADER = "X-GDC-AuthSST";
+    private static final String TT_HEADER = "X-GDC-AuthTT";
+    private static final String TT_CHALLENGE = "GoodData realm=\"GoodData API\" cookie=GDCAuthTT";
+    private static final String BODY_PROJECTS = "{\"about\":{\"summary\":\"Project Resources\"}}";
+    private static final long RESPONSE_DELAY_MILLIS = 200;
+    private static final int REQUESTS = 50;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger logins = new AtomicInteger();
+    private final AtomicInteger tokens = new AtomicInteger();
+    private ScheduledExecutorService scheduler;
+    private HttpAsyncServer server;
+    private HttpHost host;
+    private GoodDataHttpAsyncClient client;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        server = H2ServerBootstrap.bootstrap()
+                .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_2)
+                .setIOSessionDecorator(session -> {
+                    connections.incrementAndGet();
+                    return session;
+                })
+                .register("*", new StubHandler())
+                .create();
+        server.start();
+        final ListenerEndpoint endpoint = server.listen(new InetSocketAddress("localhost", 0), URIScheme.HTTP).get();
+        host = new HttpHost("http", "localhost", ((InetSocketAddress) endpoint.getAddress()).getPort());
+        client = GoodDataHttpAsyncClient.createHttp2(host, new LoginAsyncSSTRetrievalStrategy("user@email.com", "top secret"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        server.close(CloseMode.IMMEDIATE);
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void execute_concurrentRequestsMultiplexedOverSingleConnection() throws Exception {
+        final long start = System.nanoTime();
+        final List<CompletableFuture<SimpleHttpResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            responses.add(client.execute(host, SimpleRequestBuilder.get(GDC_PROJECTS_PATH).build()));
+        }
+        for (CompletableFuture<SimpleHttpResponse> future : responses) {
+            final SimpleHttpResponse response = future.get(10, TimeUnit.SECONDS);
+            assertEquals(200, response.getCode());
+            assertEquals(HttpVersion.HTTP_2, response.getVersion());
+            assertEquals(BODY_PROJECTS, response.getBodyText());
+        }
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(1, connections.get());
+        assertEquals(1, logins.get());
+        assertEquals(1, tokens.get());
+        // challenge, login, token and retry rounds run in parallel streams - sequential exchanges over
+        // a single connection would take REQUESTS times longer
+        assertTrue(elapsedMillis < RESPONSE_DELAY_MILLIS * REQUESTS / 2, "took " + elapsedMillis + " ms");
+    }
+
+    /**
+     * Answers GoodData authentication and projects resources, each response delayed to simulate server latency.
+     */
+    private class StubHandler implements AsyncServerRequestHandler<Message<HttpRequest, String>> {
+
+        @Override
+        public AsyncRequestConsumer<Message<HttpRequest, String>> prepare(final HttpRequest request,
+                                                                          final EntityDetails entityDetails,
+                                                                          final HttpContext context) {
+            return new BasicRequestConsumer<>(new StringAsyncEntityConsumer());
+        }
+
+        @Override
+        public void handle(final Message<HttpRequest, String> message, final ResponseTrigger trigger,
+                           final HttpContext context) {
+            final AsyncResponseBuilder response = respond(message.getHead());
+            scheduler.schedule(() -> {
+                try {
+                    trigger.submitResponse(response.build(), context);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, RESPONSE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        private AsyncResponseBuilder respond(final HttpRequest request) {
+            switch (request.getPath()) {
+                case GDC_LOGIN_PATH:
+                    logins.incrementAndGet();
+                    return AsyncResponseBuilder.create(200).setHeader(SST_HEADER, "SST");
+                case GDC_TOKEN_PATH:
+                    tokens.incrementAndGet();
+                    return AsyncResponseBuilder.create(200).setHeader(TT_HEADER, "TT");
+                case GDC_PROJECTS_PATH:
+                    final Header tt = request.getFirstHeader(TT_HEADER);
+                    if (tt != null && "TT".equals(tt.getValue())) {
+                        return AsyncResponseBuilder.create(200).setEntity(BODY_PROJECTS, ContentType.APPLICATION_JSON);
+                    }
+                    return AsyncResponseBuilder.create(401).setHeader("WWW-Authenticate", TT_CHALLENGE);
+                default:
+                    return AsyncResponseBuilder.create(404);
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import static net.jadler.Jadler.closeJadler;
+import static net.jadler.Jadler.initJadler;
+import static net.jadler.Jadler.onRequest;
+import static net.jadler.Jadler.port;
+import static net.jadler.Jadler.verifyThatRequest;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.io.CloseMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class GoodDataHttpAsyncClientTest {
+    private static final String GDC_TOKEN_PATH = "/gdc/account/token";
+    private static final String GDC_LOGIN_PATH = "/gdc/account/login";
+    private static final String GDC_PROJECTS_PATH = "/gdc/projects";
+    private static final String SST_HEADER = "X-GDC-AuthSST";
+    private static final String TT_HEADER = "X-GDC-AuthTT";
+    private static final String WWW_AUTHENTICATE_HEADER = "WWW-Authenticate";
+    private static final String TT_CHALLENGE = "GoodData realm=\"GoodData API\" cookie=GDCAuthTT";
+    private static final String BODY_PROJECTS = "{\"about\":{\"summary\":\"Project Resources\"}}";
+
+    private CloseableHttpAsyncClient httpClient;
+    private HttpHost host;
+    private GoodDataHttpAsyncClient client;
+
+    @BeforeEach
+    public void setUp() {
+        initJadler();
+        host = new HttpHost("http", "localhost", port());
+        httpClient = HttpAsyncClients.createDefault();
+        httpClient.start();
+        client = new GoodDataHttpAsyncClient(httpClient, host, new LoginAsyncSSTRetrievalStrategy("user@email.com", "top secret"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        httpClient.close(CloseMode.IMMEDIATE);
+        closeJadler();
+    }
+
+    @Test
+    public void execute_loginRefreshAndRetry() throws Exception {
+        mockProjects();
+        mockLogin();
+        mockToken();
+
+        final SimpleHttpResponse response = client.execute(host, SimpleRequestBuilder.get(GDC_PROJECTS_PATH).build())
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, response.getCode());
+        assertEquals(BODY_PROJECTS, response.getBodyText());
+        verifyThatRequest().havingPathEqualTo(GDC_LOGIN_PATH).receivedOnce();
+        verifyThatRequest().havingPathEqualTo(GDC_TOKEN_PATH).havingHeaderEqualTo(SST_HEADER, "SST").receivedOnce();
+    }
+
+    @Test
+    public void execute_concurrentChallengesShareSingleLogin() throws Exception {
+        mockProjects();
+        mockLogin();
+        mockToken();
+
+        final List<CompletableFuture<SimpleHttpResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(client.execute(host, SimpleRequestBuilder.get(GDC_PROJECTS_PATH).build()));
+        }
+        for (CompletableFuture<SimpleHttpResponse> response : responses) {
+            assertEquals(200, response.get(10, TimeUnit.SECONDS).getCode());
+        }
+        verifyThatRequest().havingPathEqualTo(GDC_LOGIN_PATH).receivedOnce();
+        verifyThatRequest().havingPathEqualTo(GDC_TOKEN_PATH).receivedOnce();
+    }
+
+    @Test
+    public void execute_usesTtFromLoginResponse() throws Exception {
+        mockProjects();
+        onRequest()
+                .havingMethodEqualTo("POST")
+                .havingPathEqualTo(GDC_LOGIN_PATH)
+                .respond()
+                .withStatus(200)
+                .withHeader(SST_HEADER, "SST")
+                .withHeader(TT_HEADER, "TT");
+
+        final SimpleHttpResponse response = client.execute(host, SimpleRequestBuilder.get(GDC_PROJECTS_PATH).build())
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, response.getCode());
+        verifyThatRequest().havingPathEqualTo(GDC_TOKEN_PATH).receivedNever();
+    }
+
+    @Test
+    public void execute_loginFailure() {
+        mockProjects();
+        onRequest()
+                .havingMethodEqualTo("POST")
+                .havingPathEqualTo(GDC_LOGIN_PATH)
+                .respond()
+                .withStatus(401)
+                .withBody("Bad Login or Password!");
+
+        final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.execute(host, SimpleRequestBuilder.get(GDC_PROJECTS_PATH).build()).get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof GoodDataAuthException);
+        assertTrue(e.getCause().getMessage().contains("Bad Login or Password!"));
+    }
+
+    @Test
+    public void execute_logout() throws Exception {
+        mockProjects();
+        mockLogin();
+        mockToken();
+        onRequest()
+                .havingMethodEqualTo("DELETE")
+                .havingPathEqualTo(GDC_LOGIN_PATH + "/profileId")
+                .havingHeaderEqualTo(SST_HEADER, "SST")
+                .havingHeaderEqualTo(TT_HEADER, "TT")
+                .respond()
+                .withStatus(204);
+
+        client.execute(host, SimpleRequestBuilder.get(GDC_PROJECTS_PATH).build()).get(10, TimeUnit.SECONDS);
+        final SimpleHttpResponse response = client.execute(host, SimpleRequestBuilder.delete(GDC_LOGIN_PATH + "/profileId").build())
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(204, response.getCode());
+        verifyThatRequest().havingMethodEqualTo("DELETE").receivedOnce();
+    }
+
+    private static void mockProjects() {
+        // later stubs take precedence
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .respond()
+                .withStatus(401)
+                .withHeader(WWW_AUTHENTICATE_HEADER, TT_CHALLENGE);
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, "TT")
+                .respond()
+                .withStatus(200)
+                .withBody(BODY_PROJECTS)
+                .withEncoding(StandardCharsets.UTF_8)
+                .withContentType("application/json");
+    }
+
+    private static void mockLogin() {
+        onRequest()
+                .havingMethodEqualTo("POST")
+                .havingPathEqualTo(GDC_LOGIN_PATH)
+                .respond()
+                .withStatus(200)
+                .withHeader(SST_HEADER, "SST");
+    }
+
+    private static void mockToken() {
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_TOKEN_PATH)
+                .havingHeaderEqualTo(SST_HEADER, "SST")
+                .respond()
+                .withStatus(200)
+                .withHeader(TT_HEADER, "TT");
+    }
+}
@@ -5,6 +5,7 @@
  */
 package com.gooddata.http.client;
 import static com.gooddata.http.client.TestUtils.createGoodDataClient;
+import static com.gooddata.http.client.TestUtils.getForEntity;
 import static com.gooddata.http.client.TestUtils.logout;
 import static com.gooddata.http.client.TestUtils.performGet;
 import static net.jadler.Jadler.closeJadler;
@@ -12,6 +13,8 @@ import static net.jadler.Jadler.initJadler;
 import static net.jadler.Jadler.onRequest;
 import static net.jadler.Jadler.port;
 import static net.jadler.Jadler.verifyThatRequest;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import net.jadler.Request;
@@ -19,18 +22,54 @@ import net.jadler.stubbing.RequestStubbing;
 import net.jadler.stubbing.Responder;
 import net.jadler.stubbing.ResponseStubbing;
 import net.jadler.stubbing.StubResponse;
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.BasicHttpClientResponseHandler;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.HttpHost;
 import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.apache.hc.core5.util.Timeout;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @SuppressWarnings("squid:S2699")
 public class GoodDataHttpClientIntegrationTest {
@@ -116,6 +155,573 @@ public class GoodDataHttpClientIntegrationTest {
         }
     }
 
+    @Test
+    public void getProjectUsesTtFromLoginResponse() throws Exception {
+        mock401OnProjects();
+        mock200OnProjects();
+        mock401OnToken();
+        requestOnLogin()
+                .respond()
+                .withStatus(200)
+                .withHeader(SST_HEADER, "SST")
+                .withHeader(TT_HEADER, "TT")
+                .withEncoding(CHARSET);
+        final GoodDataHttpClient client = createGoodDataClient(jadlerLogin, jadlerPassword, jadlerHost);
+
+        performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+
+        verifyThatRequest().havingMethodEqualTo("POST").havingPathEqualTo(GDC_LOGIN_PATH).receivedOnce();
+        verifyThatRequest().havingPathEqualTo(GDC_TOKEN_PATH).receivedNever();
+    }
+
+    @Test
+    public void ttRenewedBeforeExpiry() throws Exception {
+        mock401OnProjects();
+        mock200OnProjects("TT1");
+        mock200OnProjects("TT2");
+        mockLogin();
+        final AtomicInteger tokenRequests = new AtomicInteger();
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_TOKEN_PATH)
+                .havingHeaderEqualTo(SST_HEADER, "SST")
+                .respondUsing(request -> StubResponse.builder()
+                        .status(200)
+                        .header(TT_HEADER, "TT" + tokenRequests.incrementAndGet())
+                        .build());
+
+        final RenewalExecutor executor = new RenewalExecutor();
+        try {
+            final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                    .setAuthHost(jadlerHost)
+                    .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                    .setTokenRenewalExecutor(executor)
+                    .setTtLifetime(Duration.ofMillis(2000))
+                    .setTtRenewalMargin(Duration.ofMillis(1500))
+                    .build();
+
+            performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+            // TT1 renewal scheduled, then TT2 installed and its renewal scheduled
+            assertTrue(executor.awaitRenewals(2));
+            performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // only the very first request was challenged, the renewed TT was used without a challenge
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).havingHeaderEqualTo(TT_HEADER, "TT2").receivedOnce();
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).havingHeaderEqualTo(TT_HEADER, "TT1").receivedOnce();
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).receivedTimes(3);
+        verifyThatRequest().havingMethodEqualTo("POST").havingPathEqualTo(GDC_LOGIN_PATH).receivedOnce();
+    }
+
+    @Test
+    public void ttRenewedRepeatedlyWithReportedLifetime() throws Exception {
+        mock401OnProjects();
+        mock200OnProjects("TT0");
+        final AtomicInteger tokenRequests = new AtomicInteger();
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_TOKEN_PATH)
+                .havingHeaderEqualTo(SST_HEADER, "SST")
+                .respondUsing(request -> StubResponse.builder()
+                        .status(200)
+                        .header(TT_HEADER, "TT" + tokenRequests.incrementAndGet())
+                        .build());
+        final SSTRetrievalStrategy strategy = new SimpleSSTRetrievalStrategy("SST") {
+            @Override
+            public TokenBundle obtainTokens(final HttpClient httpClient, final HttpHost httpHost) {
+                return new TokenBundle("SST", "TT0", Duration.ofMillis(400));
+            }
+        };
+
+        final RenewalExecutor executor = new RenewalExecutor();
+        try {
+            final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                    .setAuthHost(jadlerHost)
+                    .setSstStrategy(strategy)
+                    .setTokenRenewalExecutor(executor)
+                    .setTtRenewalMargin(Duration.ofMillis(300))
+                    .build();
+
+            performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+            // TT0, TT1 and TT2 renewals scheduled, all with the lifetime reported together with SST
+            assertTrue(executor.awaitRenewals(3));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(tokenRequests.get() >= 2);
+    }
+
+    @Test
+    public void principalsHaveSeparateTokens() throws Exception {
+        mock401OnProjects();
+        for (String principal : new String[] {"alice", "bob"}) {
+            requestOnLogin()
+                    .havingBody(org.hamcrest.Matchers.containsString(principal))
+                    .respond()
+                    .withStatus(200)
+                    .withHeader(SST_HEADER, "SST-" + principal)
+                    .withHeader(TT_HEADER, "TT-" + principal);
+            mock200OnProjects("TT-" + principal);
+        }
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setPrincipalSstStrategies(principal -> new LoginSSTRetrievalStrategy(principal, jadlerPassword))
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            for (String principal : new String[] {"alice", "bob"}) {
+                final HttpClientContext context = HttpClientContext.create();
+                context.setAttribute(GoodDataHttpClient.PRINCIPAL, principal);
+                final HttpGet get = new HttpGet(GDC_PROJECTS_PATH);
+                get.addHeader(ACCEPT_HEADER, CONTENT_TYPE_JSON);
+                final String body = client.execute(jadlerHost, get, context,
+                        response -> EntityUtils.toString(response.getEntity()));
+                assertEquals(BODY_PROJECTS, body);
+            }
+        }
+
+        verifyThatRequest().havingMethodEqualTo("POST").havingPathEqualTo(GDC_LOGIN_PATH).receivedTimes(2);
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).havingHeaderEqualTo(TT_HEADER, "TT-alice").receivedTimes(2);
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).havingHeaderEqualTo(TT_HEADER, "TT-bob").receivedTimes(2);
+        verifyThatRequest().havingPathEqualTo(GDC_TOKEN_PATH).receivedNever();
+    }
+
+    @Test
+    public void tokensStoredConcurrentlyAdoptedOnNextRefresh(@TempDir Path tokenDirectory) throws Exception {
+        mock401OnProjects();
+        mock200OnProjects("TT2");
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+        // TT is accepted once, then it expires
+        final AtomicInteger ttRequests = new AtomicInteger();
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, "TT")
+                .respondUsing(request -> ttRequests.incrementAndGet() == 1
+                        ? StubResponse.builder().status(200).body(BODY_PROJECTS, CHARSET).build()
+                        : StubResponse.builder().status(401)
+                                .header(WWW_AUTHENTICATE_HEADER, GOODDATA_REALM + " " + TT_COOKIE).build());
+        final MappedFileTokenStore store = new MappedFileTokenStore(tokenDirectory);
+        // another client publishes its tokens just before this one
+        final TokenStore racingStore = new TokenStore() {
+            private boolean raced;
+
+            @Override
+            public StoredTokens load(final String key) throws IOException {
+                return store.load(key);
+            }
+
+            @Override
+            public boolean compareAndSet(final String key, final long expectedVersion, final TokenBundle tokens)
+                    throws IOException {
+                if (!raced) {
+                    raced = true;
+                    store.compareAndSet(key, store.load(key).getVersion(), new TokenBundle("SST", "TT2", null));
+                }
+                return store.compareAndSet(key, expectedVersion, tokens);
+            }
+        };
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setTokenStore(racingStore)
+                .build();
+
+        performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+        performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+
+        // the expired TT was replaced by the stored one instead of a new one
+        verifyThatRequest().havingPathEqualTo(GDC_TOKEN_PATH).receivedOnce();
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).havingHeaderEqualTo(TT_HEADER, "TT2").receivedOnce();
+    }
+
+    @Test
+    public void clientsShareTokensThroughTokenStore(@TempDir Path tokenDirectory) throws Exception {
+        mock401OnProjects();
+        mock200OnProjects();
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+        final TokenStore tokenStore = new MappedFileTokenStore(tokenDirectory);
+
+        for (int i = 0; i < 2; i++) {
+            // e.g. restarted process
+            final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                    .setAuthHost(jadlerHost)
+                    .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                    .setTokenStore(tokenStore)
+                    .build();
+            performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+        }
+
+        verifyThatRequest().havingMethodEqualTo("POST").havingPathEqualTo(GDC_LOGIN_PATH).receivedOnce();
+        verifyThatRequest().havingPathEqualTo(GDC_TOKEN_PATH).receivedOnce();
+        // only the first client was challenged
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).receivedTimes(3);
+    }
+
+    @Test
+    public void postWithNonRepeatableBodyReplayedAfterChallenge() throws Exception {
+        mock401OnPost(null);
+        mock200OnPost("TT");
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+        final GoodDataHttpClient client = createGoodDataClient(jadlerLogin, jadlerPassword, jadlerHost);
+
+        final HttpPost post = new HttpPost(GDC_PROJECTS_PATH);
+        post.setEntity(new InputStreamEntity(new ByteArrayInputStream(BODY_PROJECTS.getBytes(CHARSET)),
+                ContentType.APPLICATION_JSON));
+        try (ClassicHttpResponse response = client.execute(jadlerHost, post, HttpClientContext.create())) {
+            assertEquals(HttpStatus.SC_CREATED, response.getCode());
+        }
+
+        verifyThatRequest().havingMethodEqualTo("POST").havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingBodyEqualTo(BODY_PROJECTS).receivedTimes(2);
+    }
+
+    @Test
+    public void postOverReplayLimitFailsAfterChallenge() throws Exception {
+        mock401OnPost(null);
+        mock200OnPost("TT");
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setRequestReplayLimit(10)
+                .build();
+
+        final HttpPost post = new HttpPost(GDC_PROJECTS_PATH);
+        post.setEntity(new InputStreamEntity(new ByteArrayInputStream(BODY_PROJECTS.getBytes(CHARSET)),
+                ContentType.APPLICATION_JSON));
+        assertThrows(GoodDataRequestReplayException.class,
+                () -> client.execute(jadlerHost, post, HttpClientContext.create()));
+
+        verifyThatRequest().havingMethodEqualTo("POST").havingPathEqualTo(GDC_PROJECTS_PATH).receivedOnce();
+    }
+
+    @Test
+    public void postWithReplayableFileReopenedAfterChallenge(@TempDir Path directory) throws Exception {
+        mock401OnPost(null);
+        mock200OnPost("TT");
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setRequestReplayLimit(0)
+                .build();
+        final Path file = Files.write(directory.resolve("projects.json"), BODY_PROJECTS.getBytes(CHARSET));
+
+        final HttpPost post = new HttpPost(GDC_PROJECTS_PATH);
+        post.setEntity(ReplayableEntity.fromFile(file, ContentType.APPLICATION_JSON));
+        try (ClassicHttpResponse response = client.execute(jadlerHost, post, HttpClientContext.create())) {
+            assertEquals(HttpStatus.SC_CREATED, response.getCode());
+        }
+
+        verifyThatRequest().havingMethodEqualTo("POST").havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingBodyEqualTo(BODY_PROJECTS).receivedTimes(2);
+    }
+
+    @Test
+    public void metricsCollected() throws Exception {
+        mock401OnProjects();
+        mock200OnProjects();
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setListener(metrics)
+                .build();
+
+        performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+
+        assertEquals(1, metrics.getTtChallenges());
+        assertEquals(0, metrics.getSstChallenges());
+        assertEquals(1, metrics.getSstDurations().getCount());
+        assertEquals(1, metrics.getTtDurations().getCount());
+        assertEquals(0, metrics.getSstFailures() + metrics.getTtFailures());
+        assertEquals(1, metrics.getTokenWaits().getCount());
+        assertEquals(1, metrics.getAuthLockWaits().getCount());
+        // the challenge and the retried response
+        assertEquals(2, metrics.getResponseSizes().getCount());
+        assertEquals(BODY_401.length() + BODY_PROJECTS.length(), metrics.getBufferedBytes());
+    }
+
+    @Test
+    public void freshCachedGetServedWithoutRequest() throws Exception {
+        mockCacheableProjects("TT", "max-age=60");
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        final GoodDataHttpClient client = createCachingClient(metrics, null);
+
+        assertEquals(BODY_PROJECTS, getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+        assertEquals(BODY_PROJECTS, getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+
+        assertEquals(1, metrics.getCacheHits());
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).receivedOnce();
+    }
+
+    @Test
+    public void cachedGetRevalidatedWithETag() throws Exception {
+        mockCacheableProjects("TT", "no-cache");
+        mockNotModifiedProjects("TT");
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        final GoodDataHttpClient client = createCachingClient(metrics, null);
+
+        assertEquals(BODY_PROJECTS, getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+        assertEquals(BODY_PROJECTS, getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+
+        assertEquals(0, metrics.getCacheHits());
+        assertEquals(1, metrics.getCacheNotModified());
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).havingHeaderEqualTo("If-None-Match", "\"v1\"")
+                .receivedOnce();
+    }
+
+    @Test
+    public void cachedGetRevalidatedAfterTtChallenge() throws Exception {
+        mockCacheableProjects("TT", "no-cache");
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, "TT")
+                .havingHeaderEqualTo("If-None-Match", "\"v1\"")
+            .respond()
+                .withStatus(401)
+                .withHeader(WWW_AUTHENTICATE_HEADER, GOODDATA_REALM + " " + TT_COOKIE);
+        mockNotModifiedProjects("TT2");
+        mock200OnToken("TT2");
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        final GoodDataHttpClient client = createCachingClient(metrics, null);
+
+        getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+        assertEquals(BODY_PROJECTS, getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+
+        assertEquals(1, metrics.getTtChallenges());
+        assertEquals(1, metrics.getCacheNotModified());
+    }
+
+    @Test
+    public void staleCachedGetServedWhileRevalidated() throws Exception {
+        mockCacheableProjects("TT", "max-age=0, stale-while-revalidate=60");
+        mockNotModifiedProjects("TT");
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        final GoodDataHttpClient client = createCachingClient(metrics, Runnable::run);
+
+        getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+        assertEquals(BODY_PROJECTS, getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+
+        assertEquals(1, metrics.getCacheHits());
+        assertEquals(1, metrics.getCacheNotModified());
+    }
+
+    @Test
+    public void perRequestConfigApplied() throws Exception {
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+            .respond()
+                .withDelay(3, TimeUnit.SECONDS)
+                .withStatus(200)
+                .withBody(BODY_PROJECTS);
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new SimpleSSTRetrievalStrategy("SST"))
+                .build();
+        client.setTokens("SST", "TT");
+        final HttpGet get = new HttpGet(GDC_PROJECTS_PATH);
+        get.setConfig(RequestConfig.custom().setResponseTimeout(Timeout.ofMilliseconds(200)).build());
+
+        final long start = System.nanoTime();
+        assertThrows(SocketTimeoutException.class, () -> client.execute(jadlerHost, get, null, new BasicHttpClientResponseHandler()));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "response timeout of the request ignored");
+    }
+
+    @Test
+    public void concurrentIdenticalGetsCoalesced() throws Exception {
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, "TT")
+            .respond()
+                .withDelay(300, TimeUnit.MILLISECONDS)
+                .withStatus(200)
+                .withBody(BODY_PROJECTS)
+                .withEncoding(CHARSET)
+                .withContentType(CONTENT_TYPE_JSON_UTF);
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setCoalesceGets(true)
+                .setListener(metrics)
+                .build();
+        client.setTokens("SST", "TT");
+        final int requests = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(requests);
+        try {
+            final List<Future<String>> bodies = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                bodies.add(executor.submit(() -> getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK)));
+            }
+            for (Future<String> body : bodies) {
+                assertEquals(BODY_PROJECTS, body.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(metrics.getCoalescedRequests() > 0);
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH)
+                .receivedTimes((int) (requests - metrics.getCoalescedRequests()));
+    }
+
+    @Test
+    public void sharedConnectionManagerOutlivesClient() throws Exception {
+        mock401OnProjects();
+        mock200OnProjects();
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+        try (PoolingHttpClientConnectionManager connectionManager = GoodDataHttpClientBuilder.create()
+                .setMaxConnectionsPerRoute(4)
+                .buildConnectionManager()) {
+            final GoodDataHttpClientBuilder builder = GoodDataHttpClientBuilder.create()
+                    .setAuthHost(jadlerHost)
+                    .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                    .setConnectionManager(connectionManager);
+            final GoodDataHttpClient first = builder.build();
+            performGet(first, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+
+            first.close();
+
+            try (GoodDataHttpClient second = builder.build()) {
+                performGet(second, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+            }
+            assertEquals(4, connectionManager.getDefaultMaxPerRoute());
+        }
+    }
+
+    @Test
+    public void closeStopsConnectionEviction() throws Exception {
+        final Set<Thread> running = evictorThreads();
+        final GoodDataHttpClient client = new GoodDataHttpClient(jadlerHost,
+                new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword));
+        final Set<Thread> evictors = evictorThreads();
+        evictors.removeAll(running);
+        assertFalse(evictors.isEmpty());
+
+        client.close();
+
+        for (Thread evictor : evictors) {
+            evictor.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(evictor.isAlive());
+        }
+    }
+
+    @Test
+    public void closeKeepsCallersClientOpen() throws Exception {
+        mock401OnProjects();
+        mock200OnProjects();
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            final GoodDataHttpClient client = new GoodDataHttpClient(httpClient, jadlerHost,
+                    new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword));
+
+            client.close();
+
+            performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+        }
+    }
+
+    @Test
+    public void failingLoginFailsFast() throws Exception {
+        mock401OnProjects();
+        requestOnLogin().respond().withStatus(500);
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setAuthFailureThreshold(2)
+                .setAuthBackoff(Duration.ofMinutes(1), Duration.ofMinutes(1))
+                .setListener(metrics)
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(GoodDataAuthException.class,
+                    () -> performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+        }
+        assertThrows(GoodDataAuthCircuitOpenException.class,
+                () -> performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+
+        assertEquals(AuthCircuitState.OPEN, client.getAuthCircuitState());
+        assertEquals(1, metrics.getAuthCircuitOpenings());
+        verifyThatRequest().havingMethodEqualTo("POST").havingPathEqualTo(GDC_LOGIN_PATH).receivedTimes(2);
+    }
+
+    @Test
+    public void failingLoginNotFailingFastByDefault() throws Exception {
+        mock401OnProjects();
+        requestOnLogin().respond().withStatus(500);
+        final GoodDataHttpClient client = createGoodDataClient(jadlerLogin, jadlerPassword, jadlerHost);
+
+        for (int i = 0; i < 5; i++) {
+            final GoodDataAuthException e = assertThrows(GoodDataAuthException.class,
+                    () -> performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+            assertFalse(e instanceof GoodDataAuthCircuitOpenException);
+        }
+
+        assertEquals(AuthCircuitState.CLOSED, client.getAuthCircuitState());
+        verifyThatRequest().havingMethodEqualTo("POST").havingPathEqualTo(GDC_LOGIN_PATH).receivedTimes(5);
+    }
+
+    @Test
+    public void probeFailingWithErrorDoesNotKeepCircuitOpen() throws Exception {
+        mock401OnProjects();
+        mock200OnProjects();
+        mock200OnToken();
+        final AtomicInteger attempts = new AtomicInteger();
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new SimpleSSTRetrievalStrategy("SST") {
+                    @Override
+                    public String obtainSst(final HttpClient httpClient, final HttpHost httpHost) {
+                        switch (attempts.incrementAndGet()) {
+                            case 1:
+                                throw new IllegalStateException("login unavailable");
+                            case 2:
+                                throw new AssertionError("probe crashed");
+                            default:
+                                return super.obtainSst(httpClient, httpHost);
+                        }
+                    }
+                })
+                .setAuthFailureThreshold(1)
+                .setAuthBackoff(Duration.ofMillis(50), Duration.ofMillis(50))
+                .build();
+
+        assertThrows(IllegalStateException.class,
+                () -> performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+        Thread.sleep(100);
+        assertThrows(AssertionError.class, () -> performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+
+        performGet(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK);
+        assertEquals(AuthCircuitState.CLOSED, client.getAuthCircuitState());
+    }
+
     private final class PerformGetWithCountDown implements Runnable {
         private final GoodDataHttpClient client;
         private final String path;
@@ -216,6 +822,292 @@ public class GoodDataHttpClientIntegrationTest {
         logout(client, jadlerHost, "profileId", HttpStatus.SC_NO_CONTENT);
     }
 
+    @Test
+    public void streamedResponsesReleaseConnectionOnClose() throws IOException, org.apache.hc.core5.http.HttpException {
+        mock401OnProjects();
+        mock200OnProjects();
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+
+        // single connection - the test hangs up on connection request timeout if a response doesn't release it
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setHttpClient(HttpClients.custom()
+                        .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                                .setMaxConnTotal(1)
+                                .setMaxConnPerRoute(1)
+                                .build())
+                        .setDefaultRequestConfig(RequestConfig.custom()
+                                .setConnectionRequestTimeout(Timeout.ofSeconds(2))
+                                .build())
+                        .build())
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setStreamResponses(true)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            final HttpGet get = new HttpGet(GDC_PROJECTS_PATH);
+            get.addHeader(ACCEPT_HEADER, CONTENT_TYPE_JSON);
+            try (ClassicHttpResponse response = client.execute(jadlerHost, get)) {
+                assertEquals(HttpStatus.SC_OK, response.getCode());
+                assertFalse(response.getEntity().isRepeatable(), "response should not be buffered");
+                assertEquals(BODY_PROJECTS, EntityUtils.toString(response.getEntity()));
+            }
+        }
+
+        final HttpGet get = new HttpGet(GDC_PROJECTS_PATH);
+        get.addHeader(ACCEPT_HEADER, CONTENT_TYPE_JSON);
+        final String body = client.execute(jadlerHost, get, null, response -> EntityUtils.toString(response.getEntity()));
+        assertEquals(BODY_PROJECTS, body);
+
+        verifyThatRequest()
+                .havingMethodEqualTo("POST")
+                .havingPathEqualTo(GDC_LOGIN_PATH)
+                .receivedOnce();
+    }
+
+    @Test
+    public void streamingCanBeOverriddenPerRequest() throws IOException, org.apache.hc.core5.http.HttpException {
+        mock200OnProjects(null);
+
+        final GoodDataHttpClient client = createGoodDataClient(jadlerLogin, jadlerPassword, jadlerHost);
+        final HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(GoodDataHttpClient.STREAM_RESPONSE, true);
+
+        final HttpGet get = new HttpGet(GDC_PROJECTS_PATH);
+        try (ClassicHttpResponse response = client.execute(jadlerHost, get, context)) {
+            assertFalse(response.getEntity().isRepeatable(), "response should not be buffered");
+            assertEquals(BODY_PROJECTS, EntityUtils.toString(response.getEntity()));
+        }
+        try (ClassicHttpResponse response = client.execute(jadlerHost, new HttpGet(GDC_PROJECTS_PATH))) {
+            assertTrue(response.getEntity().isRepeatable(), "response should be buffered");
+        }
+    }
+
+    @Test
+    public void largeBufferedResponseSpilledToFileUntilClosed(@TempDir Path spillDirectory) throws Exception {
+        mock401OnProjects();
+        mock200OnProjects();
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setSpillDirectory(spillDirectory)
+                .build();
+
+        final HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(GoodDataHttpClient.RESPONSE_SPILL_THRESHOLD, 10);
+        final HttpGet get = new HttpGet(GDC_PROJECTS_PATH);
+        get.addHeader(ACCEPT_HEADER, CONTENT_TYPE_JSON);
+        try (ClassicHttpResponse response = client.execute(jadlerHost, get, context)) {
+            assertEquals(HttpStatus.SC_OK, response.getCode());
+            assertTrue(response.getEntity().isRepeatable());
+            assertEquals(1, countFiles(spillDirectory));
+            assertEquals(BODY_PROJECTS, EntityUtils.toString(response.getEntity()));
+            assertEquals(BODY_PROJECTS, EntityUtils.toString(response.getEntity()));
+        }
+        assertEquals(0, countFiles(spillDirectory));
+    }
+
+    @Test
+    public void pooledResponseBuffersReturnedWhenClosed() throws Exception {
+        mock401OnProjects();
+        mock200OnProjects();
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setBufferPool(1024 * 1024, true)
+                .setListener(metrics)
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            final HttpGet get = new HttpGet(GDC_PROJECTS_PATH);
+            get.addHeader(ACCEPT_HEADER, CONTENT_TYPE_JSON);
+            try (ClassicHttpResponse response = client.execute(jadlerHost, get)) {
+                assertEquals(HttpStatus.SC_OK, response.getCode());
+                assertTrue(response.getEntity() instanceof PooledBufferEntity);
+                assertEquals(BODY_PROJECTS, EntityUtils.toString(response.getEntity()));
+                assertTrue(client.getBufferPool().getLeasedBytes() > 0);
+            }
+        }
+
+        // the challenged response and both responses released, the buffer of the first one reused
+        assertEquals(0, client.getBufferPool().getLeasedBytes());
+        assertEquals(BufferPool.SIZE_CLASSES[0], client.getBufferPool().getAllocatedBytes());
+        assertEquals(0, metrics.getBufferLeaks());
+    }
+
+    @Test
+    public void compressedPostReplayedAfterChallenge() throws Exception {
+        mock401OnPost(null);
+        mock401OnToken();
+        mock200OnToken();
+        mockLogin();
+        final List<String> bodies = new ArrayList<>();
+        onRequest()
+                .havingMethodEqualTo("POST")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, "TT")
+                .havingHeaderEqualTo("Content-Encoding", "gzip")
+                .respondUsing(request -> {
+                    bodies.add(new String(gunzip(request.getBodyAsBytes()), CHARSET));
+                    return StubResponse.builder().status(201).build();
+                });
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setRequestCompression(0, GDC_PROJECTS_PATH)
+                .build();
+
+        final HttpPost post = new HttpPost(GDC_PROJECTS_PATH);
+        post.setEntity(new InputStreamEntity(new ByteArrayInputStream(BODY_PROJECTS.getBytes(CHARSET)),
+                ContentType.APPLICATION_JSON));
+        try (ClassicHttpResponse response = client.execute(jadlerHost, post)) {
+            assertEquals(HttpStatus.SC_CREATED, response.getCode());
+        }
+
+        // the recorded compressed body was replayed
+        assertEquals(List.of(BODY_PROJECTS), bodies);
+        verifyThatRequest().havingMethodEqualTo("POST").havingPathEqualTo(GDC_PROJECTS_PATH).receivedTimes(2);
+    }
+
+    @Test
+    public void staleResponseRevalidatedBeforeFirstChallenge() throws Exception {
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+            .respond()
+                .withStatus(200)
+                .withHeader("ETag", "\"v1\"")
+                .withHeader("Cache-Control", "max-age=0")
+                .withBody(BODY_PROJECTS)
+                .withEncoding(CHARSET)
+                .withContentType(CONTENT_TYPE_JSON_UTF);
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo("If-None-Match", "\"v1\"")
+            .respond()
+                .withStatus(304)
+                .withHeader("ETag", "\"v1\"");
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        // no TT yet, the server doesn't ask for one
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new SimpleSSTRetrievalStrategy("SST"))
+                .setResponseCache(1024 * 1024, null)
+                .setListener(metrics)
+                .build();
+
+        assertEquals(BODY_PROJECTS, getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+        assertEquals(BODY_PROJECTS, getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+
+        assertEquals(1, metrics.getCacheNotModified());
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).havingHeader(TT_HEADER).receivedNever();
+    }
+
+    @Test
+    public void compressedResponseBufferedAndDecodedWhenRead() throws Exception {
+        final byte[] compressed = gzip(BODY_PROJECTS.getBytes(CHARSET));
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, "TT")
+                .havingHeaderEqualTo("Accept-Encoding", "gzip, deflate")
+                .respondUsing(request -> StubResponse.builder()
+                        .status(200)
+                        .body(compressed)
+                        .header(CONTENT_HEADER, CONTENT_TYPE_JSON_UTF)
+                        .header("Content-Encoding", "gzip")
+                        .build());
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setListener(metrics)
+                .build();
+        client.setTokens("SST", "TT");
+
+        try (ClassicHttpResponse response = client.execute(jadlerHost, new HttpGet(GDC_PROJECTS_PATH))) {
+            assertEquals(HttpStatus.SC_OK, response.getCode());
+            assertFalse(response.containsHeader("Content-Encoding"));
+            assertEquals(BODY_PROJECTS, EntityUtils.toString(response.getEntity()));
+            assertEquals(BODY_PROJECTS, EntityUtils.toString(response.getEntity()));
+        }
+        assertEquals(compressed.length, metrics.getBufferedBytes());
+    }
+
+    @Test
+    public void cachedCompressedResponseNotServedToOtherEncoding() throws Exception {
+        final byte[] compressed = gzip(BODY_PROJECTS.getBytes(CHARSET));
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, "TT")
+                .havingHeaderEqualTo("Accept-Encoding", "gzip, deflate")
+                .respondUsing(request -> StubResponse.builder()
+                        .status(200)
+                        .body(compressed)
+                        .header(CONTENT_HEADER, CONTENT_TYPE_JSON_UTF)
+                        .header("Content-Encoding", "gzip")
+                        .header("Cache-Control", "max-age=60")
+                        .build());
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, "TT")
+                .havingHeaderEqualTo("Accept-Encoding", "identity")
+            .respond()
+                .withStatus(200)
+                .withHeader("Cache-Control", "max-age=60")
+                .withBody(BODY_PROJECTS)
+                .withEncoding(CHARSET)
+                .withContentType(CONTENT_TYPE_JSON_UTF);
+        final GoodDataHttpClient client = createCachingClient(new GoodDataHttpClientMetrics(), null);
+        assertEquals(BODY_PROJECTS, getForEntity(client, jadlerHost, GDC_PROJECTS_PATH, HttpStatus.SC_OK));
+
+        final HttpGet identity = new HttpGet(GDC_PROJECTS_PATH);
+        // same Accept as the cached one
+        identity.addHeader("Accept", ContentType.APPLICATION_JSON.getMimeType());
+        identity.addHeader("Accept-Encoding", "identity");
+        try (ClassicHttpResponse response = client.execute(jadlerHost, identity)) {
+            assertFalse(response.containsHeader("Content-Encoding"));
+            assertEquals(BODY_PROJECTS, EntityUtils.toString(response.getEntity()));
+        }
+        verifyThatRequest().havingPathEqualTo(GDC_PROJECTS_PATH).receivedTimes(2);
+    }
+
+    private static byte[] gzip(final byte[] content) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] gunzip(final byte[] content) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
     private static void mock401OnProjects() {
         mock401OnPath(GDC_PROJECTS_PATH, null);
     }
@@ -249,10 +1141,10 @@ public class GoodDataHttpClientIntegrationTest {
     }
 
     private static void mock200OnPath(String url, String tt) {
-        onRequest()
+        final RequestStubbing requestStubbing = onRequest()
             .havingMethodEqualTo("GET")
-            .havingPathEqualTo(url)
-            .havingHeaderEqualTo(TT_HEADER, tt)
+            .havingPathEqualTo(url);
+        (tt != null ? requestStubbing.havingHeaderEqualTo(TT_HEADER, tt) : requestStubbing)
             .respondUsing(request -> {
                 return StubResponse.builder()
                     .status(200)
@@ -262,6 +1154,65 @@ public class GoodDataHttpClientIntegrationTest {
             });
     }
 
+    private static void mockCacheableProjects(String tt, String cacheControl) {
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, tt)
+            .respond()
+                .withStatus(200)
+                .withHeader("ETag", "\"v1\"")
+                .withHeader("Cache-Control", cacheControl)
+                .withBody(BODY_PROJECTS)
+                .withEncoding(CHARSET)
+                .withContentType(CONTENT_TYPE_JSON_UTF);
+    }
+
+    private static void mockNotModifiedProjects(String tt) {
+        onRequest()
+                .havingMethodEqualTo("GET")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, tt)
+                .havingHeaderEqualTo("If-None-Match", "\"v1\"")
+            .respond()
+                .withStatus(304)
+                .withHeader("ETag", "\"v1\"");
+    }
+
+    private GoodDataHttpClient createCachingClient(GoodDataHttpClientListener listener, Executor revalidationExecutor) {
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setAuthHost(jadlerHost)
+                .setSstStrategy(new LoginSSTRetrievalStrategy(jadlerLogin, jadlerPassword))
+                .setResponseCache(1024 * 1024, revalidationExecutor)
+                .setListener(listener)
+                .build();
+        client.setTokens("SST", "TT");
+        return client;
+    }
+
+    private static void mock401OnPost(String tt) {
+        final RequestStubbing requestStubbing = onRequest()
+                .havingMethodEqualTo("POST")
+                .havingPathEqualTo(GDC_PROJECTS_PATH);
+        (tt != null ? requestStubbing.havingHeaderEqualTo(TT_HEADER, tt) : requestStubbing)
+            .respond()
+                .withStatus(401)
+                .withHeader(WWW_AUTHENTICATE_HEADER, GOODDATA_REALM + " " + TT_COOKIE)
+                .withBody(BODY_401)
+                .withEncoding(CHARSET)
+                .withContentType(CONTENT_TYPE_JSON_UTF);
+    }
+
+    private static void mock200OnPost(String tt) {
+        onRequest()
+                .havingMethodEqualTo("POST")
+                .havingPathEqualTo(GDC_PROJECTS_PATH)
+                .havingHeaderEqualTo(TT_HEADER, tt)
+                .havingBodyEqualTo(BODY_PROJECTS)
+            .respond()
+                .withStatus(201);
+    }
+
     private static void mock401OnToken() {
         onRequest()
                 .havingMethodEqualTo("GET")
@@ -319,4 +1270,37 @@ public class GoodDataHttpClientIntegrationTest {
             .respond()
                 .withStatus(204);
     }
-}
\ No newline at end of file
+
+    private static Set<Thread> evictorThreads() {
+        final Set<Thread> evictors = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("idle-connection-evictor")) {
+                evictors.add(thread);
+            }
+        }
+        return evictors;
+    }
+
+    /**
+     * Renewal executor telling how many TT renewals have been scheduled, i.e. how many TTs have been installed.
+     */
+    private static final class RenewalExecutor extends ScheduledThreadPoolExecutor {
+
+        private final Semaphore scheduled = new Semaphore(0);
+
+        private RenewalExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+            final ScheduledFuture<?> future = super.schedule(command, delay, unit);
+            scheduled.release();
+            return future;
+        }
+
+        private boolean awaitRenewals(final int renewals) throws InterruptedException {
+            return scheduled.tryAcquire(renewals, 5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class GoodDataHttpClientMetricsTest {
+
+    @Test
+    public void countsEvents() {
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+
+        metrics.challenged(GoodDataChallengeType.SST);
+        metrics.challenged(GoodDataChallengeType.TT);
+        metrics.challenged(GoodDataChallengeType.TT);
+        metrics.challenged(GoodDataChallengeType.UNKNOWN);
+        metrics.sstObtained(100, false);
+        metrics.ttRefreshed(200, true);
+        metrics.responseBuffered(10, false);
+        metrics.responseBuffered(20, true);
+
+        assertEquals(1, metrics.getSstChallenges());
+        assertEquals(2, metrics.getTtChallenges());
+        assertEquals(1, metrics.getUnknownChallenges());
+        assertEquals(1, metrics.getSstFailures());
+        assertEquals(0, metrics.getTtFailures());
+        assertEquals(100, metrics.getSstDurations().getSum());
+        assertEquals(200, metrics.getTtDurations().getSum());
+        assertEquals(30, metrics.getBufferedBytes());
+        assertEquals(1, metrics.getSpilledResponses());
+    }
+}
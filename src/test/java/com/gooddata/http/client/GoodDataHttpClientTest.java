@@ -11,6 +11,15 @@ import org.apache.hc.core5.http.io.HttpClientResponseHandler;
 import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
 import org.apache.hc.client5.http.classic.methods.HttpDelete;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HeaderElements;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.protocol.HttpContext;
@@ -20,8 +29,23 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.stubbing.Answer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
@@ -30,7 +54,6 @@ import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
-import java.lang.reflect.Field;
 import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.message.BasicHeader;
 
@@ -64,12 +87,13 @@ public class GoodDataHttpClientTest {
     private AutoCloseable mocks;
 
     @BeforeEach
-    public void setUp() {
+    public void setUp() throws IOException {
         // Initialize Mockito mocks and main GoodDataHttpClient under test
         mocks = MockitoAnnotations.openMocks(this);
         host = new HttpHost("https", "server.com", 443);
         get = new HttpGet("/url");
         goodDataHttpClient = new GoodDataHttpClient(httpClient, host, sstStrategy);
+        when(sstStrategy.obtainTokens(any(), any())).thenCallRealMethod();
 
         // Always return a valid mocked response for response401 (error), never null!
         when(response401.getCode()).thenReturn(401);
@@ -124,9 +148,6 @@ public class GoodDataHttpClientTest {
 
     @Test
     public void execute_sstExpired() throws Exception {
-        Field ttField = GoodDataHttpClient.class.getDeclaredField("tt");
-        ttField.setAccessible(true);
-
         org.apache.hc.core5.http.Header ttHeader =
             new org.apache.hc.core5.http.message.BasicHeader("X-GDC-AuthTT", TT);
         when(ttRefreshedResponse.getHeaders("X-GDC-AuthTT"))
@@ -156,8 +177,6 @@ public class GoodDataHttpClientTest {
             }
             // 2nd call: /gdc/account/token - refresh TT
             else if (count[0] == 2 && uri.equals("/gdc/account/token")) {
-                // Set TT after refresh
-                ttField.set(goodDataHttpClient, TT);
                 return handler.handleResponse(ttRefreshedResponse);
             }
             // 3rd call: /url - retry, should return OK
@@ -178,6 +197,157 @@ public class GoodDataHttpClientTest {
         assertEquals(3, count[0]); // Verify exactly 3 httpClient.execute calls occurred
     }
 
+    @Test
+    public void execute_largeBodyExpectsContinue() throws Exception {
+        final InputStreamEntity entity = new InputStreamEntity(new ByteArrayInputStream(new byte[100]), 100,
+                ContentType.APPLICATION_OCTET_STREAM);
+        final HttpPost post = new HttpPost("/url");
+        post.setEntity(entity);
+        final List<HttpEntity> sentEntities = new ArrayList<>();
+        when(httpClient.execute(any(HttpHost.class), any(ClassicHttpRequest.class), (HttpContext) any(),
+                any(HttpClientResponseHandler.class))).thenAnswer(invocation -> {
+            final HttpClientResponseHandler<?> handler = invocation.getArgument(3);
+            final ClassicHttpRequest req = invocation.getArgument(1);
+            if ("/gdc/account/token".equals(req.getRequestUri())) {
+                return handler.handleResponse(ttRefreshedResponse);
+            }
+            assertEquals(HeaderElements.CONTINUE, req.getFirstHeader(HttpHeaders.EXPECT).getValue());
+            sentEntities.add(req.getEntity());
+            // the challenge is answered before the body is read
+            return handler.handleResponse(sentEntities.size() == 1 ? ttChallengeResponse : okResponse);
+        });
+        when(sstStrategy.obtainSst(httpClient, host)).thenReturn(SST);
+        goodDataHttpClient = GoodDataHttpClientBuilder.create()
+                .setHttpClient(httpClient)
+                .setAuthHost(host)
+                .setSstStrategy(sstStrategy)
+                .setExpectContinueThreshold(10)
+                .setRequestReplayLimit(0)
+                .build();
+
+        assertEquals(okResponse, goodDataHttpClient.execute(host, post));
+
+        // the unsent body is retried as is, even though it's over the replay limit
+        assertEquals(2, sentEntities.size());
+        assertSame(entity, sentEntities.get(1));
+        assertSame(entity, post.getEntity());
+        assertFalse(post.containsHeader(HttpHeaders.EXPECT));
+    }
+
+    @Test
+    public void execute_smallBodyDoesNotExpectContinue() throws Exception {
+        final HttpPost post = new HttpPost("/url");
+        post.setEntity(new StringEntity("small"));
+        when(httpClient.execute(eq(host), any(ClassicHttpRequest.class), (HttpContext) isNull(),
+                any(HttpClientResponseHandler.class))).thenAnswer(invocation -> {
+            final ClassicHttpRequest req = invocation.getArgument(1);
+            assertFalse(req.containsHeader(HttpHeaders.EXPECT));
+            return invocation.<HttpClientResponseHandler<?>>getArgument(3).handleResponse(okResponse);
+        });
+        goodDataHttpClient = GoodDataHttpClientBuilder.create()
+                .setHttpClient(httpClient)
+                .setAuthHost(host)
+                .setSstStrategy(sstStrategy)
+                .setExpectContinueThreshold(10)
+                .build();
+
+        assertEquals(okResponse, goodDataHttpClient.execute(host, post));
+    }
+
+    @Test
+    public void execute_throttledRetriedAfterRetryAfter() throws Exception {
+        final BasicClassicHttpResponse throttled = new BasicClassicHttpResponse(HttpStatus.SC_TOO_MANY_REQUESTS);
+        throttled.addHeader(HttpHeaders.RETRY_AFTER, "0");
+        final HttpPost post = new HttpPost("/url");
+        post.setEntity(new InputStreamEntity(new ByteArrayInputStream("body".getBytes()), 4, ContentType.TEXT_PLAIN));
+        final List<String> sentBodies = new ArrayList<>();
+        when(httpClient.execute(eq(host), any(ClassicHttpRequest.class), (HttpContext) isNull(),
+                any(HttpClientResponseHandler.class))).thenAnswer(invocation -> {
+            final ClassicHttpRequest req = invocation.getArgument(1);
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            req.getEntity().writeTo(body);
+            sentBodies.add(body.toString());
+            return invocation.<HttpClientResponseHandler<?>>getArgument(3)
+                    .handleResponse(sentBodies.size() == 1 ? throttled : okResponse);
+        });
+        final GoodDataHttpClientMetrics metrics = new GoodDataHttpClientMetrics();
+        goodDataHttpClient = GoodDataHttpClientBuilder.create()
+                .setHttpClient(httpClient)
+                .setAuthHost(host)
+                .setSstStrategy(sstStrategy)
+                .setListener(metrics)
+                .setRetryThrottledNonIdempotent(true)
+                .build();
+
+        assertEquals(okResponse, goodDataHttpClient.execute(host, post));
+
+        assertEquals(List.of("body", "body"), sentBodies);
+        assertEquals(1, metrics.getThrottledRequests());
+        verifyNoInteractions(sstStrategy);
+    }
+
+    @Test
+    public void execute_throttledPostNotRetriedByDefault() throws Exception {
+        final BasicClassicHttpResponse throttled = new BasicClassicHttpResponse(HttpStatus.SC_TOO_MANY_REQUESTS);
+        throttled.addHeader(HttpHeaders.RETRY_AFTER, "0");
+        final HttpPost post = new HttpPost("/url");
+        post.setEntity(new StringEntity("body"));
+        when(httpClient.execute(eq(host), any(ClassicHttpRequest.class), (HttpContext) isNull(),
+                any(HttpClientResponseHandler.class))).thenAnswer(invocation -> invocation
+                .<HttpClientResponseHandler<?>>getArgument(3).handleResponse(throttled));
+        goodDataHttpClient = GoodDataHttpClientBuilder.create()
+                .setHttpClient(httpClient)
+                .setAuthHost(host)
+                .setSstStrategy(sstStrategy)
+                .build();
+
+        assertEquals(HttpStatus.SC_TOO_MANY_REQUESTS, goodDataHttpClient.execute(host, post).getCode());
+
+        verify(httpClient, only()).execute(eq(host), any(ClassicHttpRequest.class), (HttpContext) isNull(),
+                any(HttpClientResponseHandler.class));
+    }
+
+    @Test
+    public void execute_throttledReturnedOverMaxRetryAfter() throws Exception {
+        final BasicClassicHttpResponse throttled = new BasicClassicHttpResponse(HttpStatus.SC_SERVICE_UNAVAILABLE);
+        throttled.addHeader(HttpHeaders.RETRY_AFTER, "3600");
+        when(httpClient.execute(eq(host), eq(get), (HttpContext) isNull(), any(HttpClientResponseHandler.class)))
+                .thenAnswer(invocation -> invocation.<HttpClientResponseHandler<?>>getArgument(3)
+                        .handleResponse(throttled));
+        goodDataHttpClient = GoodDataHttpClientBuilder.create()
+                .setHttpClient(httpClient)
+                .setAuthHost(host)
+                .setSstStrategy(sstStrategy)
+                .setThrottledRetries(3, Duration.ZERO)
+                .build();
+
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, goodDataHttpClient.execute(host, get).getCode());
+
+        verify(httpClient, only())
+                .execute(eq(host), eq(get), (HttpContext) isNull(), any(HttpClientResponseHandler.class));
+    }
+
+    @Test
+    public void getRetryAfter() {
+        assertNull(GoodDataHttpClient.getRetryAfter(new BasicClassicHttpResponse(HttpStatus.SC_OK)));
+        assertNull(GoodDataHttpClient.getRetryAfter(new BasicClassicHttpResponse(HttpStatus.SC_SERVICE_UNAVAILABLE)));
+        assertEquals(GoodDataHttpClient.DEFAULT_RETRY_AFTER,
+                GoodDataHttpClient.getRetryAfter(new BasicClassicHttpResponse(HttpStatus.SC_TOO_MANY_REQUESTS)));
+
+        final BasicClassicHttpResponse seconds = new BasicClassicHttpResponse(HttpStatus.SC_TOO_MANY_REQUESTS);
+        seconds.addHeader(HttpHeaders.RETRY_AFTER, "120");
+        assertEquals(Duration.ofSeconds(120), GoodDataHttpClient.getRetryAfter(seconds));
+
+        final BasicClassicHttpResponse date = new BasicClassicHttpResponse(HttpStatus.SC_SERVICE_UNAVAILABLE);
+        date.addHeader(HttpHeaders.RETRY_AFTER, DateUtils.formatStandardDate(Instant.now().plusSeconds(60)));
+        final Duration untilDate = GoodDataHttpClient.getRetryAfter(date);
+        assertTrue(untilDate.getSeconds() > 50 && untilDate.getSeconds() <= 60, untilDate.toString());
+
+        final BasicClassicHttpResponse past = new BasicClassicHttpResponse(HttpStatus.SC_TOO_MANY_REQUESTS);
+        past.addHeader(HttpHeaders.RETRY_AFTER, DateUtils.formatStandardDate(Instant.now().minusSeconds(60)));
+        assertEquals(Duration.ZERO, GoodDataHttpClient.getRetryAfter(past));
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void execute_unableObtainSst() throws IOException {
@@ -307,13 +477,7 @@ public class GoodDataHttpClientTest {
         doThrow(new GoodDataLogoutException("Logout unsuccessful", 401, "Unauthorized"))
             .when(sstStrategy).logout(eq(httpClient), eq(host), eq(logoutUrl), eq(SST), eq(TT));
 
-        Field ttField = GoodDataHttpClient.class.getDeclaredField("tt");
-        ttField.setAccessible(true);
-        ttField.set(goodDataHttpClient, TT);
-
-        Field sstField = GoodDataHttpClient.class.getDeclaredField("sst");
-        sstField.setAccessible(true);
-        sstField.set(goodDataHttpClient, SST); // Manually set SST for the test
+        goodDataHttpClient.setTokens(SST, TT);
 
 
         // 4. Assert that executing the client will throw GoodDataHttpStatusException with expected fields:
@@ -351,13 +515,7 @@ public class GoodDataHttpClientTest {
             });
 
         when(sstStrategy.obtainSst(httpClient, host)).thenReturn(SST);
-        Field ttField = GoodDataHttpClient.class.getDeclaredField("tt");
-        ttField.setAccessible(true);
-        ttField.set(goodDataHttpClient, TT);    
-
-        Field sstField = GoodDataHttpClient.class.getDeclaredField("sst");
-        sstField.setAccessible(true);
-        sstField.set(goodDataHttpClient, SST);      
+        goodDataHttpClient.setTokens(SST, TT);
 
         final String logoutUri = "/gdc/account/login/1";
         ClassicHttpResponse response = goodDataHttpClient.execute(host, new HttpDelete(logoutUri));
@@ -391,13 +549,7 @@ public class GoodDataHttpClientTest {
         when(sstStrategy.obtainSst(httpClient, host)).thenReturn(SST);
 
         // --- PATCH: Manually set TT and SST fields before logout call ---
-        Field ttField = GoodDataHttpClient.class.getDeclaredField("tt");
-        ttField.setAccessible(true);
-        ttField.set(goodDataHttpClient, TT);
-
-        Field sstField = GoodDataHttpClient.class.getDeclaredField("sst");
-        sstField.setAccessible(true);
-        sstField.set(goodDataHttpClient, SST);
+        goodDataHttpClient.setTokens(SST, TT);
 
         // --- Prepare logout to throw exception (this is what the test is verifying) ---
         final String logoutUrl = "/gdc/account/login/1";
@@ -420,11 +572,13 @@ public class GoodDataHttpClientTest {
     @SuppressWarnings("unchecked")
     @Test
     public void execute_withResponseHandler_appliesAuthentication() throws Exception {
+        final List<ClassicHttpRequest> sent = new ArrayList<>();
         // Prepare mock response
         when(httpClient.execute(eq(host), any(ClassicHttpRequest.class), (HttpContext) isNull(), any(HttpClientResponseHandler.class)))
             .thenAnswer(new Answer<Object>() {
                 @Override
                 public Object answer(org.mockito.invocation.InvocationOnMock invocation) throws Throwable {
+                    sent.add(invocation.getArgument(1));
                     HttpClientResponseHandler<?> handler = invocation.getArgument(3);
                     return handler.handleResponse(okResponse);
                 }
@@ -433,13 +587,7 @@ public class GoodDataHttpClientTest {
         when(sstStrategy.obtainSst(httpClient, host)).thenReturn(SST);
 
         // Set up authentication state by pre-populating TT token
-        Field ttField = GoodDataHttpClient.class.getDeclaredField("tt");
-        ttField.setAccessible(true);
-        ttField.set(goodDataHttpClient, TT);
-
-        Field sstField = GoodDataHttpClient.class.getDeclaredField("sst");
-        sstField.setAccessible(true);
-        sstField.set(goodDataHttpClient, SST);
+        goodDataHttpClient.setTokens(SST, TT);
 
         // Create test request
         HttpGet request = new HttpGet("/gdc/account/profile/current");
@@ -454,11 +602,14 @@ public class GoodDataHttpClientTest {
         // Verify result
         assertEquals("success", result);
 
-        // Verify that X-GDC-AuthTT header was added to the request
+        // Verify that X-GDC-AuthTT header was added to the sent request
         // This verifies authentication was applied before sending the request
-        Header[] headers = request.getHeaders("X-GDC-AuthTT");
+        assertEquals(1, sent.size());
+        Header[] headers = sent.get(0).getHeaders("X-GDC-AuthTT");
         assertEquals(1, headers.length, "X-GDC-AuthTT header should be present");
         assertEquals(TT, headers[0].getValue(), "X-GDC-AuthTT header should contain the token");
+        // the caller's request is left untouched, so it can be sent again
+        assertEquals(0, request.getHeaders("X-GDC-AuthTT").length);
     }
 
     /**
@@ -518,4 +669,111 @@ public class GoodDataHttpClientTest {
         
         assertTrue(ex.getMessage().contains("Response handler cannot be null"));
     }
-}
\ No newline at end of file
+
+    /**
+     * Requests must not be serialized by the client - both requests have to be in flight at the same time
+     * to pass the barrier.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void execute_concurrentRequestsNotSerialized() throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        when(httpClient.execute(eq(host), any(ClassicHttpRequest.class), (HttpContext) isNull(), any(HttpClientResponseHandler.class)))
+            .thenAnswer(invocation -> {
+                barrier.await(5, TimeUnit.SECONDS);
+                HttpClientResponseHandler<?> handler = invocation.getArgument(3);
+                return handler.handleResponse(okResponse);
+            });
+        goodDataHttpClient.setTokens(SST, TT);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<ClassicHttpResponse> first = executor.submit(() -> goodDataHttpClient.execute(host, new HttpGet("/url1")));
+            final Future<ClassicHttpResponse> second = executor.submit(() -> goodDataHttpClient.execute(host, new HttpGet("/url2")));
+            assertEquals(okResponse, first.get(10, TimeUnit.SECONDS));
+            assertEquals(okResponse, second.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        verifyNoInteractions(sstStrategy);
+    }
+
+    /**
+     * Concurrent TT challenges caused by the same TT must result in a single TT refresh and no SST login.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void execute_concurrentTtChallengesRefreshOnce() throws Exception {
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final AtomicInteger tokenCalls = new AtomicInteger();
+        when(httpClient.execute(eq(host), any(ClassicHttpRequest.class), (HttpContext) isNull(), any(HttpClientResponseHandler.class)))
+            .thenAnswer(invocation -> {
+                final ClassicHttpRequest request = invocation.getArgument(1);
+                final HttpClientResponseHandler<?> handler = invocation.getArgument(3);
+                final ClassicHttpResponse response;
+                if ("/gdc/account/token".equals(request.getRequestUri())) {
+                    tokenCalls.incrementAndGet();
+                    response = new BasicClassicHttpResponse(200, "OK");
+                    response.addHeader("X-GDC-AuthTT", "newTT");
+                } else if ("newTT".equals(request.getFirstHeader("X-GDC-AuthTT").getValue())) {
+                    response = new BasicClassicHttpResponse(200, "OK");
+                } else {
+                    // let all requests fail with the old TT before any of them refreshes it
+                    barrier.await(5, TimeUnit.SECONDS);
+                    response = new BasicClassicHttpResponse(401, "Unauthorized");
+                    response.addHeader("WWW-Authenticate", "cookie=GDCAuthTT");
+                }
+                return handler.handleResponse(response);
+            });
+        goodDataHttpClient.setTokens(SST, "oldTT");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<ClassicHttpResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                responses.add(executor.submit(() -> goodDataHttpClient.execute(host, new HttpGet("/url"))));
+            }
+            for (Future<ClassicHttpResponse> response : responses) {
+                assertEquals(200, response.get(10, TimeUnit.SECONDS).getCode());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, tokenCalls.get());
+        verifyNoInteractions(sstStrategy);
+    }
+
+    /**
+     * Request failing with TT which has already been replaced is retried with the current TT without refresh.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void execute_outdatedTtChallengeRetriesWithCurrentTt() throws Exception {
+        goodDataHttpClient.setTokens(SST, "oldTT");
+        when(httpClient.execute(eq(host), any(ClassicHttpRequest.class), (HttpContext) isNull(), any(HttpClientResponseHandler.class)))
+            .thenAnswer(new Answer<Object>() {
+                private int count = 0;
+                @Override
+                public Object answer(org.mockito.invocation.InvocationOnMock invocation) throws Throwable {
+                    final ClassicHttpRequest request = invocation.getArgument(1);
+                    final HttpClientResponseHandler<?> handler = invocation.getArgument(3);
+                    count++;
+                    if (count == 1) {
+                        // another thread refreshes tokens while this request is in flight
+                        goodDataHttpClient.setTokens(SST, "newTT");
+                        return handler.handleResponse(ttChallengeResponse);
+                    }
+                    assertEquals("/url", request.getRequestUri());
+                    assertEquals(1, request.getHeaders("X-GDC-AuthTT").length);
+                    assertEquals("newTT", request.getFirstHeader("X-GDC-AuthTT").getValue());
+                    return handler.handleResponse(okResponse);
+                }
+            });
+
+        assertEquals(okResponse, goodDataHttpClient.execute(host, get));
+        verify(httpClient, org.mockito.Mockito.times(2))
+            .execute(eq(host), any(ClassicHttpRequest.class), (HttpContext) isNull(), any(HttpClientResponseHandler.class));
+        verifyNoInteractions(sstStrategy);
+    }
+}
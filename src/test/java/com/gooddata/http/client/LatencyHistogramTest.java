@@ -0,0 +1,55 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void record_powerOfTwoBuckets() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(3);
+        histogram.record(4);
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+
+        final long[] counts = histogram.getBucketCounts();
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(1, counts[2]);
+        assertEquals(1, counts[3]);
+        assertEquals(1, counts[LatencyHistogram.BUCKETS - 1]);
+        assertEquals(6, histogram.getCount());
+        assertEquals(8 + Long.MAX_VALUE, histogram.getSum());
+    }
+
+    @Test
+    public void getQuantile() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getQuantile(0.99));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(1_000_000);
+
+        assertEquals(1024, histogram.getQuantile(0.5));
+        assertEquals(1024, histogram.getQuantile(0.99));
+        assertEquals(1 << 20, histogram.getQuantile(1));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getQuantile(1.5));
+    }
+
+    @Test
+    public void getUpperBound() {
+        assertEquals(1, LatencyHistogram.getUpperBound(0));
+        assertEquals(1024, LatencyHistogram.getUpperBound(10));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getUpperBound(LatencyHistogram.BUCKETS - 1));
+    }
+}
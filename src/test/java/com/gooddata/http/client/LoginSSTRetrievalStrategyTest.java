@@ -28,15 +28,18 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.net.URISyntaxException;
 import static com.gooddata.http.client.GoodDataHttpClient.SST_HEADER;
+import static com.gooddata.http.client.GoodDataHttpClient.TT_HEADER;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 public class LoginSSTRetrievalStrategyTest {
@@ -103,6 +106,55 @@ public class LoginSSTRetrievalStrategyTest {
         }
     }
 
+    @Test
+    public void obtainTokens_withTt() throws IOException {
+        final ClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK, "OK");
+        response.addHeader(SST_HEADER, SST);
+        response.addHeader(TT_HEADER, TT);
+        when(httpClient.execute(isA(HttpHost.class), isA(HttpPost.class), any(HttpClientResponseHandler.class)))
+            .thenAnswer(invocation -> {
+                HttpClientResponseHandler<?> handler = invocation.getArgument(2);
+                return handler.handleResponse(response);
+            });
+
+        final TokenBundle tokens = sstStrategy.obtainTokens(httpClient, host);
+
+        assertEquals(SST, tokens.getSst());
+        assertEquals(TT, tokens.getTt());
+    }
+
+    @Test
+    public void obtainTokens_withoutTt() throws IOException {
+        final ClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK, "OK");
+        response.addHeader(SST_HEADER, SST);
+        when(httpClient.execute(isA(HttpHost.class), isA(HttpPost.class), any(HttpClientResponseHandler.class)))
+            .thenAnswer(invocation -> {
+                HttpClientResponseHandler<?> handler = invocation.getArgument(2);
+                return handler.handleResponse(response);
+            });
+
+        final TokenBundle tokens = sstStrategy.obtainTokens(httpClient, host);
+
+        assertEquals(SST, tokens.getSst());
+        assertNull(tokens.getTt());
+    }
+
+    @Test
+    public void obtainTokens_usesOverriddenObtainSst() throws IOException {
+        final LoginSSTRetrievalStrategy custom = new LoginSSTRetrievalStrategy(LOGIN, PASSWORD) {
+            @Override
+            public String obtainSst(final HttpClient httpClient, final HttpHost httpHost) {
+                return "customSST";
+            }
+        };
+
+        final TokenBundle tokens = custom.obtainTokens(httpClient, host);
+
+        assertEquals("customSST", tokens.getSst());
+        assertNull(tokens.getTt());
+        verifyNoInteractions(httpClient);
+    }
+
     @Test
     public void obtainSst_badLogin() throws IOException {
         statusLine = new StatusLine(new ProtocolVersion("https", 1, 1), HttpStatus.SC_BAD_REQUEST, "Bad Request");
@@ -0,0 +1,100 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class MappedFileTokenStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void load_empty() throws Exception {
+        final StoredTokens stored = new MappedFileTokenStore(directory).load("");
+
+        assertEquals(0, stored.getVersion());
+        assertNull(stored.getTokens());
+    }
+
+    @Test
+    public void compareAndSet_storesNewVersion() throws Exception {
+        final MappedFileTokenStore store = new MappedFileTokenStore(directory);
+
+        assertTrue(store.compareAndSet("alice", 0, new TokenBundle("sst", "tt", Duration.ofMinutes(10))));
+        assertFalse(store.compareAndSet("alice", 0, new TokenBundle("sst2", "tt2")));
+
+        // visible to another instance, as to another process
+        final StoredTokens stored = new MappedFileTokenStore(directory).load("alice");
+        assertEquals(1, stored.getVersion());
+        assertEquals("sst", stored.getTokens().getSst());
+        assertEquals("tt", stored.getTokens().getTt());
+        assertEquals(Duration.ofMinutes(10), stored.getTokens().getTtLifetime());
+        assertNull(store.load("bob").getTokens());
+    }
+
+    @Test
+    public void compareAndSet_removesTokens() throws Exception {
+        final MappedFileTokenStore store = new MappedFileTokenStore(directory);
+        store.compareAndSet("", 0, new TokenBundle("secret-sst", "secret-tt"));
+
+        assertTrue(store.compareAndSet("", 1, null));
+
+        final StoredTokens stored = store.load("");
+        assertEquals(2, stored.getVersion());
+        assertNull(stored.getTokens());
+        final String content = new String(Files.readAllBytes(store.getFile("")), StandardCharsets.ISO_8859_1);
+        assertFalse(content.contains("secret"));
+    }
+
+    @Test
+    public void compareAndSet_concurrentWritersSucceedOncePerVersion() throws Exception {
+        final MappedFileTokenStore store = new MappedFileTokenStore(directory);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Callable<Boolean>> writers = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                final String tt = "tt" + i;
+                writers.add(() -> store.compareAndSet("", 0, new TokenBundle("sst", tt)));
+            }
+            int stored = 0;
+            for (Future<Boolean> result : executor.invokeAll(writers)) {
+                stored += result.get() ? 1 : 0;
+            }
+            assertEquals(1, stored);
+            assertEquals(1, store.load("").getVersion());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void file_ownerOnly() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        final MappedFileTokenStore store = new MappedFileTokenStore(directory.resolve("tokens"));
+        store.compareAndSet("", 0, new TokenBundle("sst", "tt"));
+
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(store.getFile(""))));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.resolve("tokens"))));
+    }
+}
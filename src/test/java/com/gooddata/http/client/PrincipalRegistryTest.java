@@ -0,0 +1,97 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrincipalRegistryTest {
+
+    private List<String> created;
+
+    @BeforeEach
+    public void setUp() {
+        created = new ArrayList<>();
+    }
+
+    @Test
+    public void get_reusesSession() {
+        final PrincipalRegistry registry = createRegistry(10, Duration.ofHours(1));
+
+        final PrincipalSession alice = registry.get("alice");
+
+        assertSame(alice, registry.get("alice"));
+        assertNotSame(alice, registry.get("bob"));
+        assertEquals(List.of("alice", "bob"), created);
+        assertEquals("alice", alice.getPrincipal());
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() throws Exception {
+        final PrincipalRegistry registry = createRegistry(2, Duration.ofHours(1));
+        final PrincipalSession alice = registry.get("alice");
+        Thread.sleep(1);
+        registry.get("bob");
+        Thread.sleep(1);
+        registry.get("alice");
+        Thread.sleep(1);
+
+        registry.get("carol");
+
+        assertEquals(2, registry.size());
+        assertSame(alice, registry.get("alice"));
+        registry.get("bob");
+        assertEquals(List.of("alice", "bob", "carol", "bob"), created);
+    }
+
+    @Test
+    public void get_evictsIdleSessions() throws Exception {
+        final PrincipalRegistry registry = createRegistry(10, Duration.ofMillis(50));
+        registry.get("alice");
+        registry.get("bob");
+        Thread.sleep(100);
+
+        registry.get("carol");
+
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void evictIfIdle() throws Exception {
+        final PrincipalRegistry registry = createRegistry(10, Duration.ofMillis(50));
+        final PrincipalSession alice = registry.get("alice");
+
+        assertFalse(registry.evictIfIdle(alice));
+        Thread.sleep(100);
+        assertTrue(registry.evictIfIdle(alice));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void remove() {
+        final PrincipalRegistry registry = createRegistry(10, Duration.ofHours(1));
+        final PrincipalSession alice = registry.get("alice");
+
+        registry.remove(alice);
+
+        assertNotSame(alice, registry.get("alice"));
+    }
+
+    private PrincipalRegistry createRegistry(final int maxPrincipals, final Duration idleTimeout) {
+        return new PrincipalRegistry(principal -> {
+            created.add(principal);
+            return new PrincipalSession(principal, new SimpleSSTRetrievalStrategy(principal), null, null,
+                    Duration.ZERO, (session, tokens) -> { });
+        }, maxPrincipals, idleTimeout);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void reserve_unlimited() throws Exception {
+        final RateLimiter limiter = new RateLimiter(0, 1);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.acquire());
+        }
+    }
+
+    @Test
+    public void reserve_queuesOverRate() {
+        final RateLimiter limiter = new RateLimiter(10, 1);
+
+        assertEquals(0, limiter.reserve());
+        final long second = limiter.reserve();
+        final long third = limiter.reserve();
+
+        assertTrue(second > SECOND / 20 && second <= SECOND / 10, Long.toString(second));
+        assertTrue(third > SECOND / 10 && third <= SECOND / 5, Long.toString(third));
+    }
+
+    @Test
+    public void reserve_burst() {
+        final RateLimiter limiter = new RateLimiter(10, 3);
+
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        assertTrue(limiter.reserve() > 0);
+    }
+
+    @Test
+    public void throttled_pausesAndSlowsDown() {
+        final RateLimiter limiter = new RateLimiter(10, 1);
+
+        limiter.throttled(Duration.ofSeconds(2));
+
+        assertEquals(5, limiter.getRate());
+        final long first = limiter.reserve();
+        final long second = limiter.reserve();
+        assertTrue(first > SECOND && first <= 2 * SECOND, Long.toString(first));
+        // spaced by the lowered rate
+        assertTrue(second - first > SECOND / 10, Long.toString(second - first));
+    }
+
+    @Test
+    public void throttled_pausesUnlimited() {
+        final RateLimiter limiter = new RateLimiter(0, 1);
+
+        limiter.throttled(Duration.ofSeconds(2));
+
+        assertTrue(limiter.reserve() > SECOND);
+        assertEquals(0, limiter.getRate());
+    }
+
+    @Test
+    public void throttled_spreadsUnlimitedAfterPause() {
+        final RateLimiter limiter = new RateLimiter(0, 1);
+
+        limiter.throttled(Duration.ofSeconds(1));
+
+        final Set<Long> starts = new HashSet<>();
+        final long now = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            final long wait = limiter.reserve();
+            assertTrue(wait > SECOND / 2 && wait <= 2 * SECOND, Long.toString(wait));
+            starts.add((now + wait) / TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        // not released all at once when the pause ends
+        assertTrue(starts.size() > 10, starts.toString());
+    }
+
+    @Test
+    public void succeeded_recoversRate() {
+        final RateLimiter limiter = new RateLimiter(100, 1);
+        limiter.throttled(Duration.ZERO);
+        limiter.throttled(Duration.ZERO);
+        assertEquals(25, limiter.getRate());
+
+        for (int i = 0; i < 10; i++) {
+            limiter.succeeded();
+        }
+
+        assertEquals(75, limiter.getRate(), 0.001);
+        for (int i = 0; i < 10; i++) {
+            limiter.succeeded();
+        }
+        assertEquals(100, limiter.getRate());
+    }
+}
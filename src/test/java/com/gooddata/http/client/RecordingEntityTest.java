@@ -0,0 +1,138 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordingEntityTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void replay_recordedBody() throws Exception {
+        final RecordingEntity entity = new RecordingEntity(streamEntity(CONTENT, -1), 100, directory);
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        entity.writeTo(sent);
+
+        final HttpEntity replay = entity.replay();
+
+        assertArrayEquals(CONTENT, sent.toByteArray());
+        assertTrue(replay.isRepeatable());
+        assertEquals(ContentType.TEXT_PLAIN.toString(), replay.getContentType());
+        assertEquals("0123456789", EntityUtils.toString(replay));
+        entity.release();
+    }
+
+    @Test
+    public void replay_largeBodySpilledToFile() throws Exception {
+        final byte[] content = new byte[(int) RecordingEntity.MEMORY_THRESHOLD + 1];
+        Arrays.fill(content, (byte) 'x');
+        final RecordingEntity entity = new RecordingEntity(streamEntity(content, content.length), content.length,
+                directory);
+        entity.writeTo(new ByteArrayOutputStream());
+
+        final HttpEntity replay = entity.replay();
+
+        assertEquals(1, countFiles());
+        assertArrayEquals(content, EntityUtils.toByteArray(replay));
+        entity.release();
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void replay_bodyOverLimit() throws Exception {
+        final RecordingEntity entity = new RecordingEntity(streamEntity(CONTENT, -1), 5, directory);
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        entity.writeTo(sent);
+
+        // the body is sent completely even though it can't be replayed
+        assertArrayEquals(CONTENT, sent.toByteArray());
+        final GoodDataRequestReplayException e = assertThrows(GoodDataRequestReplayException.class, entity::replay);
+        assertTrue(e.getMessage().contains("max replayable size is 5 bytes"), e.getMessage());
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void replay_knownLengthOverLimitNotRecorded() throws Exception {
+        final RecordingEntity entity = new RecordingEntity(streamEntity(CONTENT, CONTENT.length), 5, directory);
+        entity.writeTo(new ByteArrayOutputStream());
+
+        final GoodDataRequestReplayException e = assertThrows(GoodDataRequestReplayException.class, entity::replay);
+        assertTrue(e.getMessage().contains("of 10 bytes"), e.getMessage());
+    }
+
+    @Test
+    public void replay_zeroLimitNotRecorded() throws Exception {
+        final BufferPool pool = new BufferPool(1024 * 1024, false, () -> { });
+        final RecordingEntity entity = new RecordingEntity(streamEntity(CONTENT, -1), 0, directory, pool);
+        entity.writeTo(new ByteArrayOutputStream());
+
+        assertThrows(GoodDataRequestReplayException.class, entity::replay);
+        assertEquals(0, pool.getAllocatedBytes());
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void replay_emptyBody() throws Exception {
+        final RecordingEntity entity = new RecordingEntity(streamEntity(new byte[0], -1), 100, directory);
+        entity.writeTo(new ByteArrayOutputStream());
+
+        assertEquals(0, EntityUtils.toByteArray(entity.replay()).length);
+        entity.release();
+    }
+
+    @Test
+    public void replay_unsentBodyReturnsOriginal() throws Exception {
+        final InputStreamEntity original = streamEntity(CONTENT, -1);
+        final RecordingEntity entity = new RecordingEntity(original, 100, directory);
+
+        assertSame(original, entity.replay());
+    }
+
+    @Test
+    public void replay_incompleteBody() throws Exception {
+        final RecordingEntity entity = new RecordingEntity(streamEntity(CONTENT, -1), 100, directory);
+
+        assertThrows(IOException.class, () -> entity.writeTo(new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("connection reset");
+            }
+        }));
+        assertThrows(GoodDataRequestReplayException.class, entity::replay);
+    }
+
+    private static InputStreamEntity streamEntity(final byte[] content, final long length) {
+        return new InputStreamEntity(new ByteArrayInputStream(content), length, ContentType.TEXT_PLAIN);
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReplayableEntityTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void fromFile_sentRepeatedly() throws Exception {
+        final Path file = Files.write(directory.resolve("data.csv"), CONTENT);
+
+        final ReplayableEntity entity = ReplayableEntity.fromFile(file, ContentType.TEXT_PLAIN);
+
+        assertTrue(entity.isRepeatable());
+        assertEquals(CONTENT.length, entity.getContentLength());
+        assertEquals(ContentType.TEXT_PLAIN.toString(), entity.getContentType());
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+            entity.writeTo(sent);
+            assertEquals("0123456789", sent.toString(StandardCharsets.US_ASCII));
+        }
+        assertEquals("0123456789", EntityUtils.toString(entity));
+    }
+
+    @Test
+    public void fromFile_truncatedFails() throws Exception {
+        final Path file = Files.write(directory.resolve("data.csv"), CONTENT);
+        final ReplayableEntity entity = ReplayableEntity.fromFile(file, ContentType.TEXT_PLAIN);
+        Files.write(file, Arrays.copyOf(CONTENT, 4));
+
+        final IOException e = assertThrows(IOException.class, () -> entity.writeTo(new ByteArrayOutputStream()));
+
+        assertTrue(e.getMessage().contains(file.toString()), e.getMessage());
+        assertTrue(e.getMessage().contains("after 4 bytes, expected 10 bytes"), e.getMessage());
+    }
+
+    @Test
+    public void fromStream_reopensStream() throws Exception {
+        final AtomicInteger opened = new AtomicInteger();
+
+        final ReplayableEntity entity = ReplayableEntity.fromStream(() -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(CONTENT);
+        }, -1, ContentType.APPLICATION_OCTET_STREAM);
+
+        assertTrue(entity.isRepeatable());
+        assertEquals(-1, entity.getContentLength());
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+            entity.writeTo(sent);
+            assertEquals("0123456789", sent.toString(StandardCharsets.US_ASCII));
+        }
+        assertEquals(2, opened.get());
+    }
+}
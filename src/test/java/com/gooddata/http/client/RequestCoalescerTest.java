@@ -0,0 +1,186 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestCoalescerTest {
+
+    private static final HttpHost HOST = new HttpHost("https", "secure.gooddata.com", 443);
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final AtomicInteger sent = new AtomicInteger();
+    private final AtomicInteger joined = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void execute_sharesResponse() throws Exception {
+        final Future<ClassicHttpResponse> first = executor.submit(() -> coalescer.execute("key", 1024, () -> {
+            sent.incrementAndGet();
+            awaitRelease();
+            return response("body");
+        }, joined::incrementAndGet));
+        awaitSent();
+        final Future<ClassicHttpResponse> second = executor.submit(() -> coalescer.execute("key", 1024,
+                () -> response("other"), joined::incrementAndGet));
+        awaitJoined();
+
+        release.countDown();
+
+        final ClassicHttpResponse firstResponse = first.get(5, TimeUnit.SECONDS);
+        final ClassicHttpResponse secondResponse = second.get(5, TimeUnit.SECONDS);
+        assertEquals("body", EntityUtils.toString(firstResponse.getEntity()));
+        assertEquals("body", EntityUtils.toString(secondResponse.getEntity()));
+        assertNotSame(firstResponse, secondResponse);
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void execute_sharesFailure() throws Exception {
+        final IOException failure = new IOException("broken");
+        final Future<ClassicHttpResponse> first = executor.submit(() -> coalescer.execute("key", 1024, () -> {
+            sent.incrementAndGet();
+            awaitRelease();
+            throw failure;
+        }, joined::incrementAndGet));
+        awaitSent();
+        final Future<ClassicHttpResponse> second = executor.submit(() -> coalescer.execute("key", 1024,
+                () -> response("other"), joined::incrementAndGet));
+        awaitJoined();
+
+        release.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS)).getCause());
+    }
+
+    @Test
+    public void execute_sharesError() throws Exception {
+        final Error failure = new Error("broken");
+        final Future<ClassicHttpResponse> first = executor.submit(() -> coalescer.execute("key", 1024, () -> {
+            sent.incrementAndGet();
+            awaitRelease();
+            throw failure;
+        }, joined::incrementAndGet));
+        awaitSent();
+        final Future<ClassicHttpResponse> second = executor.submit(() -> coalescer.execute("key", 1024,
+                () -> response("other"), joined::incrementAndGet));
+        awaitJoined();
+
+        release.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS)).getCause());
+        // the failed request is not in flight anymore
+        assertEquals("next", EntityUtils.toString(coalescer.execute("key", 1024, () -> response("next"),
+                joined::incrementAndGet).getEntity()));
+    }
+
+    @Test
+    public void execute_largeResponseNotShared() throws Exception {
+        final Future<ClassicHttpResponse> first = executor.submit(() -> coalescer.execute("key", 2, () -> {
+            sent.incrementAndGet();
+            awaitRelease();
+            return response("body");
+        }, joined::incrementAndGet));
+        awaitSent();
+        final Future<ClassicHttpResponse> second = executor.submit(() -> coalescer.execute("key", 2,
+                () -> response("other"), joined::incrementAndGet));
+        awaitJoined();
+
+        release.countDown();
+
+        assertEquals("body", EntityUtils.toString(first.get(5, TimeUnit.SECONDS).getEntity()));
+        assertEquals("other", EntityUtils.toString(second.get(5, TimeUnit.SECONDS).getEntity()));
+    }
+
+    @Test
+    public void execute_sequentialRequestsSent() throws Exception {
+        coalescer.execute("key", 1024, () -> response("first"), joined::incrementAndGet);
+
+        final ClassicHttpResponse response = coalescer.execute("key", 1024, () -> response("second"),
+                joined::incrementAndGet);
+
+        assertEquals("second", EntityUtils.toString(response.getEntity()));
+        assertEquals(0, joined.get());
+    }
+
+    @Test
+    public void key_ignoresTt() {
+        final HttpGet get = new HttpGet("/gdc/md/p/obj/1");
+        final HttpGet withTt = new HttpGet("/gdc/md/p/obj/1");
+        withTt.addHeader(GoodDataHttpClient.TT_HEADER, "tt");
+        final HttpGet withAccept = new HttpGet("/gdc/md/p/obj/1");
+        withAccept.addHeader("Accept", "application/json");
+
+        final String key = RequestCoalescer.key(null, HOST, get, GoodDataHttpClient.TT_HEADER);
+        assertEquals(key, RequestCoalescer.key(null, HOST, withTt, GoodDataHttpClient.TT_HEADER));
+        assertNotEquals(key, RequestCoalescer.key(null, HOST, withAccept, GoodDataHttpClient.TT_HEADER));
+        assertNotEquals(key, RequestCoalescer.key("alice", HOST, get, GoodDataHttpClient.TT_HEADER));
+    }
+
+    private void awaitRelease() throws IOException {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void awaitSent() throws InterruptedException {
+        while (sent.get() == 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitJoined() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (joined.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(joined.get() > 0);
+    }
+
+    private static ClassicHttpResponse response(final String body) {
+        final BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+        response.setEntity(new StringEntity(body, ContentType.TEXT_PLAIN));
+        return response;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResponseCacheTest {
+
+    private static final HttpHost HOST = new HttpHost("https", "secure.gooddata.com", 443);
+
+    @Test
+    public void put_evictsLeastRecentlyUsedOverBudget() {
+        final CachedResponse entry = entry(new byte[100], "max-age=60");
+        final ResponseCache cache = new ResponseCache(entry.size() * 2);
+        cache.put("a", entry);
+        cache.put("b", entry(new byte[100], "max-age=60"));
+        cache.get("a");
+
+        cache.put("c", entry(new byte[100], "max-age=60"));
+
+        assertSame(entry, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(entry.size() * 2, cache.size());
+    }
+
+    @Test
+    public void removePrincipal() {
+        final ResponseCache cache = new ResponseCache(1024 * 1024);
+        final String alice = ResponseCache.key("alice", HOST, new HttpGet("/gdc/md/p/obj/1"));
+        final String bob = ResponseCache.key("bob", HOST, new HttpGet("/gdc/md/p/obj/1"));
+        cache.put(alice, entry(new byte[10], "max-age=60"));
+        cache.put(bob, entry(new byte[10], "max-age=60"));
+
+        cache.removePrincipal("alice");
+
+        assertNull(cache.get(alice));
+        assertNotNull(cache.get(bob));
+    }
+
+    @Test
+    public void key_separatesPrincipalsAndAccept() {
+        final HttpGet json = new HttpGet("/gdc/projects/p");
+        json.addHeader(HttpHeaders.ACCEPT, "application/json");
+
+        assertNotEquals(ResponseCache.key(null, HOST, json), ResponseCache.key("alice", HOST, json));
+        assertNotEquals(ResponseCache.key(null, HOST, json), ResponseCache.key(null, HOST, new HttpGet("/gdc/projects/p")));
+        assertEquals(ResponseCache.key("alice", HOST, json), ResponseCache.key("alice", HOST, json));
+    }
+
+    @Test
+    public void key_separatesAcceptEncoding() {
+        final HttpGet identity = new HttpGet("/gdc/projects/p");
+        identity.addHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        final HttpGet accept = new HttpGet("/gdc/projects/p");
+        accept.addHeader(HttpHeaders.ACCEPT, "identity");
+
+        assertNotEquals(ResponseCache.key(null, HOST, new HttpGet("/gdc/projects/p")),
+                ResponseCache.key(null, HOST, identity));
+        assertNotEquals(ResponseCache.key(null, HOST, accept), ResponseCache.key(null, HOST, identity));
+    }
+
+    @Test
+    public void entry_freshness() {
+        final CachedResponse fresh = entry(new byte[0], "max-age=60");
+        final CachedResponse noCache = entry(new byte[0], "max-age=60, no-cache");
+        final CachedResponse stale = entry(new byte[0], "max-age=0, stale-while-revalidate=60");
+        final long now = System.nanoTime();
+
+        assertTrue(fresh.isFresh(now));
+        assertFalse(noCache.isFresh(now));
+        assertFalse(stale.isFresh(now));
+        assertTrue(stale.isStaleUsable(now));
+    }
+
+    @Test
+    public void entry_notCacheable() {
+        assertNull(entry(new byte[0], "no-store"));
+        final BasicClassicHttpResponse response = response(new byte[0], "no-cache");
+        response.removeHeaders(HttpHeaders.ETAG);
+        assertNull(CachedResponse.of(response, new byte[0]));
+    }
+
+    @Test
+    public void entry_varyingByKeyHeadersOnly() {
+        final BasicClassicHttpResponse accept = response(new byte[0], "max-age=60");
+        accept.addHeader(HttpHeaders.VARY, "accept, Accept-Encoding");
+        assertNotNull(CachedResponse.of(accept, new byte[0]));
+
+        for (String vary : new String[] {"*", "Accept, Authorization", "X-GDC-Request"}) {
+            final BasicClassicHttpResponse response = response(new byte[0], "max-age=60");
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            response.addHeader(HttpHeaders.VARY, vary);
+            assertNull(CachedResponse.of(response, new byte[0]), vary);
+        }
+    }
+
+    @Test
+    public void revalidated_keepsBodyUpdatesHeaders() throws Exception {
+        final byte[] body = {1, 2, 3};
+        final CachedResponse entry = entry(body, "no-cache");
+        final BasicClassicHttpResponse notModified = new BasicClassicHttpResponse(HttpStatus.SC_NOT_MODIFIED);
+        notModified.addHeader(HttpHeaders.ETAG, "\"v2\"");
+
+        final CachedResponse revalidated = entry.revalidated(notModified);
+
+        assertEquals("\"v2\"", revalidated.getETag());
+        assertEquals(HttpStatus.SC_OK, revalidated.toResponse().getCode());
+        assertArrayEquals(body, EntityUtils.toByteArray(revalidated.toResponse().getEntity()));
+    }
+
+    private static CachedResponse entry(final byte[] body, final String cacheControl) {
+        return CachedResponse.of(response(body, cacheControl), body);
+    }
+
+    private static BasicClassicHttpResponse response(final byte[] body, final String cacheControl) {
+        final BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+        response.addHeader(HttpHeaders.ETAG, "\"v1\"");
+        response.addHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+        return response;
+    }
+}
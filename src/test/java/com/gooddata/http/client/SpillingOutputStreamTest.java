@@ -0,0 +1,119 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpillingOutputStreamTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void keepsSmallContentInMemory() throws Exception {
+        final SpillingOutputStream out = new SpillingOutputStream(CONTENT.length, directory);
+        out.write(CONTENT);
+
+        final HttpEntity entity = out.toEntity(ContentType.TEXT_PLAIN, null);
+
+        assertFalse(out.isSpilled());
+        assertTrue(entity instanceof ByteArrayEntity);
+        assertEquals("0123456789", EntityUtils.toString(entity));
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void spillsLargeContentToFile() throws Exception {
+        final SpillingOutputStream out = new SpillingOutputStream(4, directory);
+        out.write(CONTENT, 0, 3);
+        out.write(CONTENT[3]);
+        out.write(CONTENT, 4, 6);
+
+        final HttpEntity entity = out.toEntity(ContentType.TEXT_PLAIN, "identity");
+
+        assertTrue(out.isSpilled());
+        assertTrue(entity instanceof FileBufferedEntity);
+        assertTrue(entity.isRepeatable());
+        assertEquals(CONTENT.length, entity.getContentLength());
+        assertEquals("identity", entity.getContentEncoding());
+        assertEquals(1, countFiles());
+
+        // repeatable - readable both as a stream and by writeTo
+        assertEquals("0123456789", EntityUtils.toString(entity));
+        final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        entity.writeTo(copy);
+        assertEquals("0123456789", copy.toString(StandardCharsets.US_ASCII));
+
+        entity.close();
+        assertEquals(0, countFiles());
+        assertThrows(IOException.class, entity::getContent);
+    }
+
+    @Test
+    public void keepsContentInPooledBuffers() throws Exception {
+        final BufferPool pool = new BufferPool(1024 * 1024, false, () -> { });
+        final SpillingOutputStream out = new SpillingOutputStream(CONTENT.length, directory, pool);
+        out.write(CONTENT);
+
+        final HttpEntity entity = out.toEntity(ContentType.TEXT_PLAIN, null);
+
+        assertFalse(out.isSpilled());
+        assertTrue(entity instanceof PooledBufferEntity);
+        assertEquals("0123456789", EntityUtils.toString(entity));
+        entity.close();
+        assertEquals(0, pool.getLeasedBytes());
+    }
+
+    @Test
+    public void spillsContentOverPoolBudget() throws Exception {
+        final BufferPool pool = new BufferPool(BufferPool.SIZE_CLASSES[0], false, () -> { });
+        final SpillingOutputStream out = new SpillingOutputStream(Long.MAX_VALUE, directory, pool);
+        for (int i = 0; i < 500; i++) {
+            out.write(CONTENT);
+        }
+
+        final HttpEntity entity = out.toEntity(ContentType.TEXT_PLAIN, null);
+
+        assertTrue(out.isSpilled());
+        assertEquals(5000, EntityUtils.toByteArray(entity).length);
+        assertEquals(0, pool.getLeasedBytes());
+        entity.close();
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void discardDeletesFile() throws IOException {
+        final SpillingOutputStream out = new SpillingOutputStream(0, directory);
+        out.write(CONTENT);
+        assertEquals(1, countFiles());
+
+        out.discard();
+
+        assertEquals(0, countFiles());
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenRefreshCoordinatorTest {
+
+    private TokenRefreshCoordinator coordinator;
+    private AtomicInteger refreshes;
+
+    @BeforeEach
+    public void setUp() {
+        coordinator = new TokenRefreshCoordinator();
+        refreshes = new AtomicInteger();
+    }
+
+    @Test
+    public void refresh_installsNewGeneration() throws Exception {
+        final AuthTokens stale = coordinator.install("sst", "tt1");
+
+        final AuthTokens refreshed = coordinator.refresh(stale, current -> {
+            refreshes.incrementAndGet();
+            assertEquals("sst", current.getSst());
+            return CompletableFuture.completedFuture(new AuthTokens(current.getSst(), "tt2"));
+        }).get();
+
+        assertEquals("tt2", refreshed.getTt());
+        assertNotEquals(stale.getGeneration(), refreshed.getGeneration());
+        assertSame(refreshed, coordinator.current());
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    public void refresh_outdatedGenerationReusesCurrentTokens() throws Exception {
+        final AuthTokens stale = coordinator.install("sst", "tt1");
+        final AuthTokens current = coordinator.install("sst", "tt2");
+
+        final AuthTokens result = coordinator.refresh(stale, tokens -> {
+            refreshes.incrementAndGet();
+            return CompletableFuture.completedFuture(new AuthTokens("sst", "tt3"));
+        }).get();
+
+        assertSame(current, result);
+        assertEquals(0, refreshes.get());
+    }
+
+    @Test
+    public void refresh_joinsRunningRefresh() throws Exception {
+        final AuthTokens stale = coordinator.install("sst", "tt1");
+        final CompletableFuture<AuthTokens> login = new CompletableFuture<>();
+
+        final CompletableFuture<AuthTokens> first = coordinator.refresh(stale, tokens -> {
+            refreshes.incrementAndGet();
+            return login;
+        });
+        final CompletableFuture<AuthTokens> second = coordinator.refresh(stale, tokens -> {
+            refreshes.incrementAndGet();
+            return CompletableFuture.completedFuture(new AuthTokens("sst", "other"));
+        });
+        login.complete(new AuthTokens("sst", "tt2"));
+
+        assertSame(first.get(), second.get());
+        assertEquals("tt2", second.get().getTt());
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    public void refresh_failureIsSharedAndNextRefreshStartsAgain() throws Exception {
+        final AuthTokens stale = coordinator.install("sst", "tt1");
+
+        final CompletableFuture<AuthTokens> failed = coordinator.refresh(stale, tokens -> {
+            refreshes.incrementAndGet();
+            return CompletableFuture.failedFuture(new GoodDataAuthException("login failed"));
+        });
+        final ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(e.getCause() instanceof GoodDataAuthException);
+        assertSame(stale, coordinator.current());
+
+        coordinator.refresh(stale, tokens -> {
+            refreshes.incrementAndGet();
+            return CompletableFuture.completedFuture(new AuthTokens("sst", "tt2"));
+        }).get();
+        assertEquals(2, refreshes.get());
+    }
+
+    @Test
+    public void refresh_afterResetObtainsNewTokens() throws Exception {
+        final AuthTokens stale = coordinator.install("sst", "tt1");
+        coordinator.reset();
+
+        final AuthTokens result = coordinator.refresh(stale, tokens -> {
+            refreshes.incrementAndGet();
+            return CompletableFuture.completedFuture(new AuthTokens("sst2", "tt2"));
+        }).get();
+
+        assertEquals("tt2", result.getTt());
+        assertEquals(1, refreshes.get());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenRenewalSchedulerTest {
+
+    private static final Duration LIFETIME = Duration.ofMillis(200);
+    private static final Duration MARGIN = Duration.ofMillis(150);
+
+    private ScheduledExecutorService executor;
+    private TokenRefreshCoordinator coordinator;
+    private List<AuthTokens> renewed;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        coordinator = new TokenRefreshCoordinator();
+        renewed = new CopyOnWriteArrayList<>();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void schedule_renewsBeforeExpiry() throws Exception {
+        final TokenRenewalScheduler scheduler = new TokenRenewalScheduler(executor, LIFETIME, MARGIN, renewed::add);
+        final AuthTokens tokens = coordinator.install("sst", "tt");
+
+        final long start = System.nanoTime();
+        scheduler.schedule(tokens);
+        awaitRenewals(1);
+
+        // renewed at half of the lifetime, as the margin is longer
+        assertTrue(System.nanoTime() - start >= LIFETIME.toNanos() / 2);
+        assertEquals(List.of(tokens), renewed);
+    }
+
+    @Test
+    public void schedule_runsRenewalOnRunner() throws Exception {
+        final ExecutorService runner = Executors.newSingleThreadExecutor(task -> new Thread(task, "renewal-runner"));
+        try {
+            final List<String> threads = new CopyOnWriteArrayList<>();
+            final TokenRenewalScheduler scheduler = new TokenRenewalScheduler(executor, runner, LIFETIME, MARGIN,
+                    tokens -> {
+                        threads.add(Thread.currentThread().getName());
+                        renewed.add(tokens);
+                    });
+
+            scheduler.schedule(coordinator.install("sst", "tt"));
+            awaitRenewals(1);
+
+            assertEquals(List.of("renewal-runner"), threads);
+        } finally {
+            runner.shutdownNow();
+        }
+    }
+
+    @Test
+    public void schedule_newerTokensReplaceScheduledRenewal() throws Exception {
+        final TokenRenewalScheduler scheduler = new TokenRenewalScheduler(executor, LIFETIME, MARGIN, renewed::add);
+        final AuthTokens first = coordinator.install("sst", "tt1");
+        final AuthTokens second = coordinator.install("sst", "tt2");
+
+        scheduler.schedule(first);
+        scheduler.schedule(second);
+        scheduler.schedule(first);
+        awaitRenewals(1);
+        Thread.sleep(LIFETIME.toMillis());
+
+        assertEquals(List.of(second), renewed);
+    }
+
+    @Test
+    public void schedule_logoutCancelsRenewal() throws Exception {
+        final TokenRenewalScheduler scheduler = new TokenRenewalScheduler(executor, LIFETIME, MARGIN, renewed::add);
+        scheduler.schedule(coordinator.install("sst", "tt"));
+        coordinator.reset();
+
+        scheduler.schedule(coordinator.current());
+        Thread.sleep(LIFETIME.toMillis());
+
+        assertTrue(renewed.isEmpty());
+    }
+
+    @Test
+    public void schedule_usesReportedLifetime() throws Exception {
+        final TokenRenewalScheduler scheduler = new TokenRenewalScheduler(executor, null, MARGIN, renewed::add);
+        final AuthTokens unknown = coordinator.install("sst", "tt1");
+        final AuthTokens reported = new AuthTokens("sst", "tt2", LIFETIME).withGeneration(unknown.getGeneration() + 1);
+
+        scheduler.schedule(unknown);
+        Thread.sleep(LIFETIME.toMillis());
+        assertTrue(renewed.isEmpty());
+
+        scheduler.schedule(reported);
+        awaitRenewals(1);
+        assertEquals(List.of(reported), renewed);
+    }
+
+    @Test
+    public void ttRejected_learnsLifetime() throws Exception {
+        final TokenRenewalScheduler scheduler = new TokenRenewalScheduler(executor, null, MARGIN, renewed::add);
+        final AuthTokens expired = coordinator.install("sst", "tt1");
+        scheduler.schedule(expired);
+        Thread.sleep(LIFETIME.toMillis());
+
+        scheduler.ttRejected(expired);
+        final AuthTokens refreshed = coordinator.install("sst", "tt2");
+        scheduler.schedule(refreshed);
+        awaitRenewals(1);
+
+        assertEquals(List.of(refreshed), renewed);
+    }
+
+    private void awaitRenewals(final int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (renewed.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, renewed.size());
+    }
+}
@@ -13,9 +13,11 @@ import static com.gooddata.http.client.GoodDataHttpClient.SST_HEADER;
 import static com.gooddata.http.client.GoodDataHttpClient.TT_HEADER;
 import static com.gooddata.http.client.TokenUtils.extractSST;
 import static com.gooddata.http.client.TokenUtils.extractTT;
+import static com.gooddata.http.client.TokenUtils.findTT;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 public class TokenUtilsTest {
     private ClassicHttpResponse response;
@@ -60,4 +62,11 @@ public class TokenUtilsTest {
         final String token = extractTT(response);
         assertThat(token, is("tt"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldFindTT() {
+        assertThat(findTT(response), is(nullValue()));
+        response.addHeader(TT_HEADER, "tt");
+        assertThat(findTT(response), is("tt"));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * (C) 2022 GoodData Corporation.
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE.txt file in the root directory of this source tree.
+ */
+package com.gooddata.http.client;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VirtualThreadsTest {
+
+    private static final int REQUESTS = 10_000;
+    private static final HttpHost HOST = new HttpHost("http", "localhost", 80);
+
+    @BeforeAll
+    public static void limitCarriers() {
+        // virtual threads pinning their carrier while waiting for the token refresh would stall with no spare
+        // carriers; effective only when no virtual thread was started in this JVM yet
+        System.setProperty("jdk.virtualThreadScheduler.parallelism", "2");
+        System.setProperty("jdk.virtualThreadScheduler.maxPoolSize", "2");
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    public void manyVirtualThreadsShareTtRefresh() throws Exception {
+        final FakeHttpClient httpClient = new FakeHttpClient();
+        final GoodDataHttpClient client = GoodDataHttpClientBuilder.create()
+                .setHttpClient(httpClient)
+                .setAuthHost(HOST)
+                .setSstStrategy(new SimpleSSTRetrievalStrategy("SST"))
+                .build();
+        client.setTokens("SST", "expired");
+
+        final List<Callable<Integer>> requests = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            requests.add(() -> {
+                try (ClassicHttpResponse response = client.execute(HOST, new HttpGet("/gdc/projects"))) {
+                    return response.getCode();
+                }
+            });
+        }
+        final ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        try {
+            final List<Future<Integer>> results = executor.invokeAll(requests, 60, TimeUnit.SECONDS);
+            for (Future<Integer> result : results) {
+                assertFalse(result.isCancelled(), "request stalled");
+                assertEquals(200, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, httpClient.tokenRequests.get());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    public void virtualThreadRenewals() {
+        assertTrue(VirtualThreads.isSupported());
+        GoodDataHttpClientBuilder.create().setVirtualThreadRenewals(true);
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    public void virtualThreadsNotSupported() {
+        assertFalse(VirtualThreads.isSupported());
+        assertThrows(UnsupportedOperationException.class, VirtualThreads::newVirtualThreadPerTaskExecutor);
+        assertThrows(IllegalStateException.class,
+                () -> GoodDataHttpClientBuilder.create().setVirtualThreadRenewals(true));
+    }
+
+    /**
+     * Serves the resource for TT "TT" only and the token resource, blocking like a real transport would.
+     */
+    private static final class FakeHttpClient extends CloseableHttpClient {
+
+        private final AtomicInteger tokenRequests = new AtomicInteger();
+
+        @Override
+        protected CloseableHttpResponse doExecute(final HttpHost target, final ClassicHttpRequest request,
+                                                  final HttpContext context) {
+            final BasicClassicHttpResponse response;
+            try {
+                if (GoodDataHttpClient.TOKEN_URL.equals(request.getRequestUri())) {
+                    tokenRequests.incrementAndGet();
+                    Thread.sleep(100);
+                    response = new BasicClassicHttpResponse(200);
+                    response.addHeader(GoodDataHttpClient.TT_HEADER, "TT");
+                } else {
+                    Thread.sleep(1);
+                    final Header tt = request.getFirstHeader(GoodDataHttpClient.TT_HEADER);
+                    if (tt != null && "TT".equals(tt.getValue())) {
+                        response = new BasicClassicHttpResponse(200);
+                        response.setEntity(new StringEntity("{}", ContentType.APPLICATION_JSON));
+                    } else {
+                        response = new BasicClassicHttpResponse(401);
+                        response.addHeader("WWW-Authenticate", "GoodData realm=\"GoodData API\" cookie=GDCAuthTT");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return CloseableHttpResponse.adapt(response);
+        }
+
+        @Override
+        public void close(final CloseMode closeMode) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}